@@ -0,0 +1,167 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Write throughput of {@link Database} against the old layout (every thread writing on its own
+ * auto-commit connection), on a scratch database file.
+ *
+ * The mix mirrors a busy server: mostly gameplay events, with account links and session start/end
+ * in between:
+ *
+ *   ./gradlew benchmark -Pbench=com.example.bwqueue.db.DatabaseBenchmark -PbenchArgs="[operations] [threads]"
+ */
+public final class DatabaseBenchmark {
+
+    // The benchmark always runs on a scratch SQLite file
+    private static final String USER_UPSERT = new SqliteDialect().upsert("users",
+            new String[]{"discord_id"}, new String[]{"discord_id", "uuid", "name", "linked_at"}, 1);
+
+    private DatabaseBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+
+        File file = File.createTempFile("bwqueue-bench", ".db");
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.set("storage.sqliteFile", file.getAbsolutePath());
+        PluginConfig config = new PluginConfig(yaml);
+        try {
+            Database db = new Database(config, Logger.getLogger("DatabaseBenchmark"));
+            db.init(); // creates the schema for both runs
+            report("per-thread auto-commit", operations, runBaseline(file, operations, threads));
+            report("single writer", operations, runWriter(db, operations, threads));
+            System.out.println("  " + db.getTransactions() + " transactions for " + db.getWrites() + " writes");
+            db.shutdown();
+        } finally {
+            for (String suffix : new String[]{"", "-wal", "-shm"}) new File(file.getAbsolutePath() + suffix).delete();
+        }
+    }
+
+    // Operation i of the mix: 1 in 20 links an account, 1 in 20 starts or ends a session, the rest are events
+    private static void apply(Sql sql, int i) throws SQLException {
+        if (i % 20 == 0) {
+            PreparedStatement ps = sql.prepare(USER_UPSERT);
+            ps.setString(1, String.valueOf(100000 + i % 500));
+            ps.setString(2, UUID.randomUUID().toString());
+            ps.setString(3, "Player" + i);
+            ps.setLong(4, System.currentTimeMillis() / 1000L);
+            ps.executeUpdate();
+        } else if (i % 20 == 1) {
+            PreparedStatement ps = sql.prepare("INSERT INTO sessions(arena, group_name, started_at) VALUES(?,?,?)");
+            ps.setString(1, "bench");
+            ps.setString(2, "4v4v4v4");
+            ps.setLong(3, System.currentTimeMillis() / 1000L);
+            ps.executeUpdate();
+        } else if (i % 20 == 2) {
+            PreparedStatement ps = sql.prepare("UPDATE sessions SET ended_at=?, winner_team=? WHERE id=(SELECT MAX(id) FROM sessions)");
+            ps.setLong(1, System.currentTimeMillis() / 1000L);
+            ps.setString(2, "RED");
+            ps.executeUpdate();
+        } else {
+            PreparedStatement ps = sql.prepare("INSERT INTO events(session_id, type, player_id, target_id, material_id, amount, ts) VALUES(?,?,?,?,?,?,?)");
+            ps.setLong(1, i / 1000);
+            ps.setInt(2, EventType.BLOCK_PLACE.getCode());
+            ps.setInt(3, i % 10);
+            ps.setNull(4, java.sql.Types.INTEGER);
+            ps.setInt(5, 1);
+            ps.setInt(6, 1);
+            ps.setLong(7, System.currentTimeMillis() / 1000L);
+            ps.executeUpdate();
+        }
+    }
+
+    private static Result runWriter(Database db, int operations, int threads) throws InterruptedException {
+        long[] latencies = new long[operations];
+        AtomicLong failures = new AtomicLong();
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(operations);
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            workers.add(new Thread(() -> {
+                for (int i = first; i < operations; i += threads) {
+                    final int op = i;
+                    final long submitted = System.nanoTime();
+                    CompletableFuture<Integer> f = db.write(sql -> {
+                        apply(sql, op);
+                        return op;
+                    });
+                    f.whenComplete((v, err) -> {
+                        if (err != null) failures.incrementAndGet();
+                        latencies[op] = System.nanoTime() - submitted;
+                        done.countDown();
+                    });
+                }
+            }));
+        }
+        for (Thread w : workers) w.start();
+        done.await();
+        return new Result(System.nanoTime() - start, latencies, failures.get());
+    }
+
+    private static Result runBaseline(File file, int operations, int threads) throws InterruptedException {
+        long[] latencies = new long[operations];
+        AtomicLong failures = new AtomicLong();
+        long start = System.nanoTime();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int first = t;
+            workers.add(new Thread(() -> {
+                Properties props = new Properties();
+                props.setProperty("busy_timeout", "5000");
+                try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath(), props)) {
+                    Sql sql = new Sql(c, 16);
+                    for (int i = first; i < operations; i += threads) {
+                        long began = System.nanoTime();
+                        try {
+                            apply(sql, i);
+                        } catch (SQLException e) {
+                            failures.incrementAndGet(); // SQLITE_BUSY after the busy timeout
+                        }
+                        latencies[i] = System.nanoTime() - began;
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        return new Result(System.nanoTime() - start, latencies, failures.get());
+    }
+
+    private static void report(String name, int operations, Result r) {
+        long[] sorted = r.latencies.clone();
+        Arrays.sort(sorted);
+        double seconds = r.elapsedNanos / 1e9;
+        System.out.printf("%-24s %8.0f ops/s  p50 %6.2fms  p99 %7.2fms  failed %d%n", name, operations / seconds,
+                sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6, r.failures);
+    }
+
+    private static final class Result {
+        final long elapsedNanos;
+        final long[] latencies;
+        final long failures;
+        Result(long elapsedNanos, long[] latencies, long failures) {
+            this.elapsedNanos = elapsedNanos; this.latencies = latencies; this.failures = failures;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.bwqueue.db;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Bytes per event and insert throughput of the old text event rows against the compact encoding, each
+ * with its indexes, on scratch SQLite files:
+ *
+ *   ./gradlew benchmark -Pbench=com.example.bwqueue.db.EventEncodingBenchmark -PbenchArgs="[events]"
+ */
+public final class EventEncodingBenchmark {
+
+    private static final String[] MATERIALS = {"WOOL", "SANDSTONE", "ENDER_STONE", "WOOD", "IRON_INGOT", "GOLD_INGOT", "DIAMOND", "EMERALD"};
+
+    private EventEncodingBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        UUID[] players = new UUID[16];
+        for (int i = 0; i < players.length; i++) players[i] = UUID.randomUUID();
+        Class.forName("org.sqlite.JDBC");
+
+        run("text", events, players, false);
+        run("compact", events, players, true);
+    }
+
+    private static void run(String name, int events, UUID[] players, boolean compact) throws SQLException, java.io.IOException {
+        File file = File.createTempFile("bwqueue-events-" + name, ".db");
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath())) {
+            try (Statement st = c.createStatement()) {
+                st.execute("PRAGMA journal_mode=WAL");
+                st.execute("PRAGMA synchronous=NORMAL");
+                if (compact) {
+                    st.execute("CREATE TABLE event_players (id INTEGER PRIMARY KEY AUTOINCREMENT, uuid TEXT NOT NULL UNIQUE)");
+                    st.execute("CREATE TABLE event_materials (id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL UNIQUE)");
+                    st.execute("CREATE TABLE events (id INTEGER PRIMARY KEY AUTOINCREMENT, session_id INTEGER, type INTEGER, player_id INTEGER, target_id INTEGER, material_id INTEGER, amount INTEGER, ts INTEGER)");
+                    st.execute("CREATE INDEX idx_events_session ON events(session_id)");
+                    st.execute("CREATE INDEX idx_events_player_type ON events(player_id, type)");
+                } else {
+                    st.execute("CREATE TABLE events (id INTEGER PRIMARY KEY AUTOINCREMENT, session_id INTEGER, type TEXT, player_uuid TEXT, value TEXT, ts INTEGER)");
+                    st.execute("CREATE INDEX idx_events_session ON events(session_id)");
+                    st.execute("CREATE INDEX idx_events_player_type ON events(player_uuid, type)");
+                }
+            }
+
+            Sql sql = new Sql(c, 16);
+            EventDictionary dictionary = new EventDictionary();
+            Random random = new Random(42);
+            PreparedStatement ps = compact
+                    ? sql.prepare("INSERT INTO events(session_id, type, player_id, target_id, material_id, amount, ts) VALUES(?,?,?,?,?,?,?)")
+                    : sql.prepare("INSERT INTO events(session_id, type, player_uuid, value, ts) VALUES(?,?,?,?,?)");
+            long start = System.nanoTime();
+            c.setAutoCommit(false);
+            for (int i = 0; i < events; i++) {
+                long session = i / 2000;
+                UUID player = players[random.nextInt(players.length)];
+                int roll = random.nextInt(100);
+                EventType type = roll < 45 ? EventType.BLOCK_PLACE : roll < 70 ? EventType.BLOCK_BREAK : roll < 97 ? EventType.PICKUP : EventType.KILL;
+                String material = type == EventType.KILL ? null : MATERIALS[type == EventType.PICKUP ? 4 + random.nextInt(4) : random.nextInt(4)];
+                int amount = type == EventType.PICKUP ? 1 + random.nextInt(16) : 1;
+                UUID victim = type == EventType.KILL ? players[random.nextInt(players.length)] : null;
+                long ts = 1700000000L + i / 10;
+                if (compact) {
+                    ps.setLong(1, session);
+                    ps.setInt(2, type.getCode());
+                    EventDictionary.setId(ps, 3, dictionary.playerId(sql, player));
+                    EventDictionary.setId(ps, 4, dictionary.playerId(sql, victim));
+                    EventDictionary.setId(ps, 5, dictionary.materialId(sql, material));
+                    ps.setInt(6, amount);
+                    ps.setLong(7, ts);
+                } else {
+                    ps.setLong(1, session);
+                    ps.setString(2, type.name());
+                    ps.setString(3, player.toString());
+                    ps.setString(4, type == EventType.KILL ? "victim=" + victim : type == EventType.PICKUP ? material + ":" + amount : material);
+                    ps.setLong(5, ts);
+                }
+                ps.addBatch();
+                if (i % 1000 == 999) {
+                    ps.executeBatch();
+                    c.commit();
+                }
+            }
+            ps.executeBatch();
+            c.commit();
+            c.setAutoCommit(true);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            sql.releaseStatements();
+
+            try (Statement st = c.createStatement()) {
+                st.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+                st.execute("VACUUM");
+            }
+            System.out.printf("%-8s %8.0f events/s  %6.1f bytes/event  (%d KiB)%n", name, events / seconds,
+                    (double) file.length() / events, file.length() / 1024);
+        } finally {
+            for (String suffix : new String[]{"", "-wal", "-shm"}) new File(file.getAbsolutePath() + suffix).delete();
+        }
+    }
+}
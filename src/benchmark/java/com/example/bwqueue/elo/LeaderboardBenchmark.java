@@ -0,0 +1,93 @@
+package com.example.bwqueue.elo;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * {@link Leaderboard} with a realistic number of rated players: build time, rating updates as games
+ * settle, and the three queries, against re-sorting all players per query (what {@code ORDER BY elo}
+ * over {@code users} amounts to):
+ *
+ *   ./gradlew benchmark -Pbench=com.example.bwqueue.elo.LeaderboardBenchmark -PbenchArgs="[players] [operations]"
+ */
+public final class LeaderboardBenchmark {
+
+    // Query results end up here, so the JIT cannot drop the calls being measured
+    private static volatile long consumed;
+
+    private LeaderboardBenchmark() {}
+
+    public static void main(String[] args) {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        Random random = new Random(42);
+        UUID[] uuids = new UUID[players];
+        Map<UUID, Integer> ratings = new HashMap<>();
+        for (int i = 0; i < players; i++) {
+            uuids[i] = new UUID(random.nextLong(), random.nextLong());
+            ratings.put(uuids[i], rating(random));
+        }
+
+        Leaderboard board = new Leaderboard();
+        long start = System.nanoTime();
+        for (UUID u : uuids) board.update(u, ratings.get(u));
+        report("build", players, start);
+
+        // Warm up, then measure
+        for (int round = 0; round < 2; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                UUID u = uuids[random.nextInt(players)];
+                int r = Math.max(0, ratings.get(u) + random.nextInt(91) - 45);
+                ratings.put(u, r);
+                board.update(u, r);
+            }
+            if (round == 1) report("update", operations, start);
+
+            start = System.nanoTime();
+            long sink = 0;
+            for (int i = 0; i < operations; i++) sink += board.rank(uuids[random.nextInt(players)]);
+            if (round == 1) report("rank", operations, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) sink += board.top(10).size();
+            if (round == 1) report("top 10", operations, start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < operations; i++) sink += board.around(uuids[random.nextInt(players)], 2).size();
+            if (round == 1) report("around 2", operations, start);
+            consumed += sink;
+        }
+
+        // The old way: sort everyone for each query
+        int sorts = Math.max(1, Math.min(50, operations / 1000));
+        Comparator<UUID> order = (a, b) -> {
+            int c = Integer.compare(ratings.get(b), ratings.get(a));
+            return c != 0 ? c : a.compareTo(b);
+        };
+        start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < sorts; i++) {
+            List<UUID> all = new ArrayList<>(ratings.keySet());
+            all.sort(order);
+            sink += all.indexOf(uuids[random.nextInt(players)]);
+        }
+        report("sort+rank", sorts, start);
+        consumed += sink;
+    }
+
+    // Roughly bell-shaped around 1000, like a settled ladder
+    private static int rating(Random random) {
+        return Math.max(0, (int) (1000 + random.nextGaussian() * 350));
+    }
+
+    private static void report(String name, int ops, long startNanos) {
+        double nanos = System.nanoTime() - startNanos;
+        System.out.printf("%-10s %10.0f ops/s  %8.2f us/op%n", name, ops / (nanos / 1e9), nanos / ops / 1000.0);
+    }
+}
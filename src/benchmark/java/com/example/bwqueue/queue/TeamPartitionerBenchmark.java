@@ -0,0 +1,84 @@
+package com.example.bwqueue.queue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Split time of {@link TeamPartitioner} over random batches: solo players in 4v4 (exhaustive search),
+ * 8v8 and 16v16 (greedy plus swaps), and a 4v4 with two parties of two. Also reports how far apart the
+ * teams' rating sums end up, against the gap left by alternating players.
+ *
+ *   ./gradlew benchmark -Pbench=com.example.bwqueue.queue.TeamPartitionerBenchmark -PbenchArgs="[runs] [budgetMicros]"
+ */
+public final class TeamPartitionerBenchmark {
+
+    // Splits end up here, so the JIT cannot drop the calls being measured
+    private static volatile long consumed;
+
+    private TeamPartitionerBenchmark() {}
+
+    public static void main(String[] args) {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long budgetMicros = args.length > 1 ? Long.parseLong(args[1]) : 500L;
+        TeamPartitioner partitioner = new TeamPartitioner(budgetMicros);
+        Random random = new Random(42);
+
+        // Warm up, then measure
+        for (int round = 0; round < 2; round++) {
+            boolean print = round == 1;
+            run("4v4", partitioner, random, runs, 4, new int[] {1}, print);
+            run("8v8", partitioner, random, runs, 8, new int[] {1}, print);
+            run("16v16", partitioner, random, runs, 16, new int[] {1}, print);
+            run("4v4 party", partitioner, random, runs, 4, new int[] {2, 2, 1, 1, 1, 1}, print);
+        }
+    }
+
+    // groups: sizes to fill two teams with, repeated until both are full
+    private static void run(String name, TeamPartitioner partitioner, Random random, int runs, int teamSize,
+                            int[] groups, boolean print) {
+        int[] sizes = sizes(groups, 2 * teamSize);
+        int[] ratings = new int[sizes.length];
+        long totalNanos = 0;
+        long maxNanos = 0;
+        long totalGap = 0;
+        long alternatingGap = 0;
+        for (int run = 0; run < runs; run++) {
+            for (int i = 0; i < sizes.length; i++) {
+                int sum = 0;
+                for (int p = 0; p < sizes[i]; p++) sum += Math.max(0, (int) (1000 + random.nextGaussian() * 350));
+                ratings[i] = sum;
+            }
+            long start = System.nanoTime();
+            boolean[] red = partitioner.partition(sizes, ratings, teamSize);
+            long took = System.nanoTime() - start;
+            totalNanos += took;
+            if (took > maxNanos) maxNanos = took;
+            if (red == null) continue;
+            long gap = 0;
+            long alternating = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                gap += red[i] ? ratings[i] : -ratings[i];
+                alternating += i % 2 == 0 ? ratings[i] : -ratings[i];
+            }
+            totalGap += Math.abs(gap);
+            alternatingGap += Math.abs(alternating);
+            consumed += gap;
+        }
+        if (print) {
+            System.out.printf("%-10s %8.1f us avg  %8.1f us max  gap %6.1f  (alternating %6.1f)%n", name,
+                    totalNanos / 1000.0 / runs, maxNanos / 1000.0, (double) totalGap / runs, (double) alternatingGap / runs);
+        }
+    }
+
+    private static int[] sizes(int[] groups, int players) {
+        int n = 0;
+        int filled = 0;
+        int[] out = new int[players];
+        for (int i = 0; filled < players; i++) {
+            int s = Math.min(groups[i % groups.length], players - filled);
+            out[n++] = s;
+            filled += s;
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
@@ -2,8 +2,17 @@ package com.example.bwqueue;
 
 import com.example.bwqueue.config.PluginConfig;
 import com.example.bwqueue.db.Database;
+import com.example.bwqueue.db.EventSink;
+import com.example.bwqueue.db.EventWriter;
+import com.example.bwqueue.db.RetentionJob;
 import com.example.bwqueue.discord.DiscordBot;
+import com.example.bwqueue.elo.EloService;
+import com.example.bwqueue.elo.RatingStore;
+import com.example.bwqueue.eventlog.SegmentEventLog;
 import com.example.bwqueue.link.LinkingService;
+import com.example.bwqueue.listeners.BWListeners;
+import com.example.bwqueue.listeners.PresenceListener;
+import com.example.bwqueue.presence.PresenceIndex;
 import com.example.bwqueue.queue.QueueManager;
 import com.example.bwqueue.party.PartyService;
 import com.example.bwqueue.bw.BedWarsService;
@@ -21,9 +30,13 @@ public class BWQueuePlugin extends JavaPlugin {
 
     private PluginConfig configModel;
     private Database database;
+    private EventSink eventSink;
+    private RetentionJob retentionJob;
+    private RatingStore ratings;
     private DiscordBot discordBot;
     private LinkingService linkingService;
     private QueueManager queueManager;
+    private PresenceIndex presence;
 
     public static BWQueuePlugin get() { return instance; }
 
@@ -36,8 +49,11 @@ public class BWQueuePlugin extends JavaPlugin {
         this.configModel = new PluginConfig(getConfig());
 
         try {
-            this.database = new Database(configModel);
+            this.database = new Database(configModel, log);
             this.database.init();
+            // Settlements compute from these; starting without them would overwrite stored ratings
+            this.ratings = new RatingStore(database, new EloService(getConfig()), log);
+            this.ratings.load();
         } catch (Exception e) {
             getLogger().severe("Failed to initialize database: " + e.getMessage());
             e.printStackTrace();
@@ -45,8 +61,15 @@ public class BWQueuePlugin extends JavaPlugin {
             return;
         }
 
-        this.linkingService = new LinkingService(database, configModel);
-        this.discordBot = new DiscordBot(configModel, linkingService);
+        this.eventSink = "segments".equalsIgnoreCase(configModel.getEventSink())
+                ? new SegmentEventLog(configModel, log)
+                : new EventWriter(database, configModel, log);
+        this.linkingService = new LinkingService(database, configModel, ratings);
+        linkingService.warmUp();
+        // Join/quit keep it current from here on; seed with whoever is already online (e.g. after /reload)
+        this.presence = new PresenceIndex();
+        for (org.bukkit.entity.Player p : Bukkit.getOnlinePlayers()) presence.playerOnline(p.getUniqueId(), p.getName());
+        this.discordBot = new DiscordBot(configModel, linkingService, ratings, presence);
         try {
             this.discordBot.start();
         } catch (Exception e) {
@@ -55,9 +78,15 @@ public class BWQueuePlugin extends JavaPlugin {
             // Don't hard fail server, but most features won't work
         }
 
-        this.queueManager = new QueueManager(configModel, discordBot, database, linkingService);
+        this.queueManager = new QueueManager(configModel, discordBot, database, ratings, presence);
         this.discordBot.setQueueManager(queueManager);
 
+        if (configModel.isRetentionEnabled()) {
+            this.retentionJob = new RetentionJob(database, configModel, log,
+                    () -> queueManager.getActiveGames() == 0 && eventSink.getPending() == 0);
+            retentionJob.start();
+        }
+
         // Register commands
         PluginCommand linkCmd = getCommand("link");
         if (linkCmd != null) {
@@ -75,7 +104,12 @@ public class BWQueuePlugin extends JavaPlugin {
                     p.sendMessage("§cYou must be online to link.");
                     return true;
                 }
-                String code = linkingService.generateCode(p.getUniqueId(), p.getName());
+                String address = p.getAddress() != null ? p.getAddress().getAddress().getHostAddress() : null;
+                String code = linkingService.generateCode(p.getUniqueId(), p.getName(), address);
+                if (code == null) {
+                    p.sendMessage("§cYou've requested too many link codes. Please try again later.");
+                    return true;
+                }
                 p.sendMessage("§aUse this code in Discord: §e=link " + code + " §7(in any server channel where the bot can read).");
                 return true;
             });
@@ -85,17 +119,28 @@ public class BWQueuePlugin extends JavaPlugin {
             adminCmd.setExecutor(new com.example.bwqueue.admin.AdminCommands());
         }
 
-        // Hook into BW1058 events (optional now). We'll register listeners in a dedicated class later when needed.
-        // getServer().getPluginManager().registerEvents(new BWListeners(database, queueManager), this);
+        // Gameplay event recording for players in a running game
+        getServer().getPluginManager().registerEvents(new BWListeners(eventSink, queueManager.getSessions(), queueManager.getStats()), this);
+        getServer().getPluginManager().registerEvents(new PresenceListener(presence, queueManager), this);
 
         log.info("BWQueue enabled.");
     }
 
     @Override
     public void onDisable() {
+        try {
+            if (queueManager != null) queueManager.shutdown();
+        } catch (Exception ignored) {}
         try {
             if (discordBot != null) discordBot.shutdown();
         } catch (Exception ignored) {}
+        try {
+            if (retentionJob != null) retentionJob.shutdown();
+        } catch (Exception ignored) {}
+        try {
+            // Flushes buffered events, so it has to go before the database
+            if (eventSink != null) eventSink.shutdown();
+        } catch (Exception ignored) {}
         try {
             if (database != null) database.shutdown();
         } catch (Exception ignored) {}
@@ -105,7 +150,11 @@ public class BWQueuePlugin extends JavaPlugin {
 
     public PluginConfig getConfigModel() { return configModel; }
     public Database getDatabase() { return database; }
+    public EventSink getEventSink() { return eventSink; }
+    public RetentionJob getRetentionJob() { return retentionJob; }
     public DiscordBot getDiscordBot() { return discordBot; }
     public LinkingService getLinkingService() { return linkingService; }
+    public RatingStore getRatings() { return ratings; }
     public QueueManager getQueueManager() { return queueManager; }
+    public PresenceIndex getPresence() { return presence; }
 }
@@ -16,6 +16,8 @@ public class AdminCommands implements CommandExecutor {
         if (args.length == 0) {
             sender.sendMessage("§e/bwqueue reload §7- Reloads config");
             sender.sendMessage("§e/bwqueue status §7- Shows queue status");
+            sender.sendMessage("§e/bwqueue top [n] §7- Shows the best rated players");
+            sender.sendMessage("§e/bwqueue rank <player> §7- Shows a player's rank and neighbours");
             return true;
         }
         String sub = args[0].toLowerCase();
@@ -27,11 +29,97 @@ public class AdminCommands implements CommandExecutor {
             case "status":
                 int queued = BWQueuePlugin.get().getQueueManager().getQueuedCount();
                 int active = BWQueuePlugin.get().getQueueManager().getActiveGames();
-                sender.sendMessage("§eQueued: §b" + queued + " §7| Active games: §b" + active);
+                int leased = BWQueuePlugin.get().getQueueManager().getLeasedArenas();
+                sender.sendMessage("§eQueued: §b" + queued + " §7| Active games: §b" + active + " §7| Leased arenas: §b" + leased);
+                for (com.example.bwqueue.queue.QueueShard shard : BWQueuePlugin.get().getQueueManager().getShards()) {
+                    com.example.bwqueue.queue.MatchScheduler ms = shard.getMatchScheduler();
+                    sender.sendMessage("§e" + shard.getName() + ": §b" + shard.getQueuedCount() + " §7queued, §b" + ms.getMatches() + " §7matches, latency §b"
+                            + (ms.getLastLatencyMicros() / 1000L) + "ms §7last, §b" + (ms.getAvgLatencyMicros() / 1000L) + "ms §7avg, §b"
+                            + (ms.getMaxLatencyMicros() / 1000L) + "ms §7max");
+                }
+                com.example.bwqueue.discord.ChannelPool pool = BWQueuePlugin.get().getDiscordBot() != null ? BWQueuePlugin.get().getDiscordBot().getChannelPool() : null;
+                if (pool != null && pool.isEnabled()) {
+                    sender.sendMessage("§eChannel pool: §b" + pool.getIdleCount() + " §7idle, §b" + pool.getHits() + " §7warm / §b" + pool.getMisses() + " §7created on demand");
+                }
+                if (BWQueuePlugin.get().getDiscordBot() != null) {
+                    com.example.bwqueue.discord.VoiceMoveService mv = BWQueuePlugin.get().getDiscordBot().getVoiceMoves();
+                    sender.sendMessage("§eVoice moves: §b" + mv.getMoved() + " §7ok, §b" + mv.getFailed() + " §7not moved, §b" + mv.getRetries() + " §7retries, latency §b"
+                            + mv.getAvgLatencyMillis() + "ms §7avg, §b" + mv.getMaxLatencyMillis() + "ms §7max");
+                }
+                if (BWQueuePlugin.get().getDiscordBot() != null) {
+                    com.example.bwqueue.discord.RestScheduler rest = BWQueuePlugin.get().getDiscordBot().getRest();
+                    StringBuilder lanes = new StringBuilder("§eDiscord REST §7(window §b" + rest.getWindow() + "§7, coalesced §b" + rest.getCoalesced()
+                            + "§7, dropped §b" + rest.getRejected() + "§7):");
+                    for (com.example.bwqueue.discord.RestScheduler.Lane lane : com.example.bwqueue.discord.RestScheduler.Lane.values()) {
+                        lanes.append(" §e").append(lane.name().toLowerCase()).append(" §b").append(rest.getDepth(lane)).append("§7q/§b")
+                                .append(rest.getAvgLatencyMillis(lane)).append("ms");
+                    }
+                    sender.sendMessage(lanes.toString());
+                }
+                com.example.bwqueue.link.LinkCache<String, java.util.UUID> lc = BWQueuePlugin.get().getLinkingService().getUuidCache();
+                sender.sendMessage("§eLink cache: §b" + lc.size() + " §7entries, hit rate §b" + Math.round(lc.getHitRate() * 100) + "% §7(§b"
+                        + lc.getHits() + " §7hits, §b" + lc.getNegativeHits() + " §7unlinked, §b" + lc.getMisses() + " §7misses)");
+                sender.sendMessage("§ePending link codes: §b" + BWQueuePlugin.get().getLinkingService().getPendingCodeCount());
+                com.example.bwqueue.db.Database db = BWQueuePlugin.get().getDatabase();
+                sender.sendMessage("§eDatabase: §b" + db.getQueuedWrites() + " §7writes queued, §b" + db.getWrites() + " §7written in §b"
+                        + db.getTransactions() + " §7transactions, §b" + db.getFailedWrites() + " §7failed, §b"
+                        + db.getIdleReadConnections() + "§7/§b" + db.getReadConnections() + " §7read connections idle");
+                com.example.bwqueue.db.EventSink es = BWQueuePlugin.get().getEventSink();
+                if (es instanceof com.example.bwqueue.db.EventWriter) {
+                    com.example.bwqueue.db.EventWriter ew = (com.example.bwqueue.db.EventWriter) es;
+                    sender.sendMessage("§eEvents: §b" + ew.getPending() + "§7/§b" + ew.getCapacity() + " §7buffered, §b" + ew.getWritten()
+                            + " §7written, §b" + ew.getDropped() + " §7dropped, §b" + ew.getFailed() + " §7failed");
+                } else if (es instanceof com.example.bwqueue.eventlog.SegmentEventLog) {
+                    com.example.bwqueue.eventlog.SegmentEventLog el = (com.example.bwqueue.eventlog.SegmentEventLog) es;
+                    sender.sendMessage("§eEvent log: §b" + el.getOpenSessions() + " §7sessions open, §b" + el.getWritten()
+                            + " §7written, §b" + el.getDropped() + " §7dropped, §b" + el.getFailed() + " §7failed");
+                }
+                com.example.bwqueue.db.RetentionJob rj = BWQueuePlugin.get().getRetentionJob();
+                if (rj != null) {
+                    sender.sendMessage("§eRetention: §b" + rj.getRolledUpSessions() + " §7sessions rolled up, §b" + rj.getDeletedEvents()
+                            + " §7events deleted" + (rj.getLastRunMillis() > 0 ? ", last run §b" + ((System.currentTimeMillis() - rj.getLastRunMillis()) / 60000L) + "m §7ago" : ""));
+                }
+                com.example.bwqueue.queue.TeamPartitioner tp = BWQueuePlugin.get().getQueueManager().getPartitioner();
+                sender.sendMessage("§eTeam split: §b" + (tp.getLastNanos() / 1000L) + "us §7last, §b" + (tp.getMaxNanos() / 1000L) + "us §7max");
                 return true;
+            case "top": {
+                com.example.bwqueue.elo.Leaderboard lb = BWQueuePlugin.get().getRatings().getLeaderboard();
+                int n = 10;
+                try {
+                    if (args.length > 1) n = Math.max(1, Math.min(100, Integer.parseInt(args[1])));
+                } catch (NumberFormatException ignored) {}
+                sender.sendMessage("§eTop §b" + Math.min(n, lb.size()) + " §7of §b" + lb.size());
+                sendEntries(sender, lb.top(n), null);
+                return true;
+            }
+            case "rank": {
+                if (args.length < 2) {
+                    sender.sendMessage("§cUsage: /bwqueue rank <player>");
+                    return true;
+                }
+                com.example.bwqueue.elo.RatingStore ratings = BWQueuePlugin.get().getRatings();
+                Player online = org.bukkit.Bukkit.getPlayerExact(args[1]);
+                java.util.UUID uuid = online != null ? online.getUniqueId() : ratings.findByName(args[1]);
+                int rank = uuid != null ? ratings.getLeaderboard().rank(uuid) : 0;
+                if (rank == 0) {
+                    sender.sendMessage("§c" + args[1] + " is not ranked.");
+                    return true;
+                }
+                sender.sendMessage("§e" + args[1] + ": §b#" + rank + " §7of §b" + ratings.getLeaderboard().size());
+                sendEntries(sender, ratings.getLeaderboard().around(uuid, 2), uuid);
+                return true;
+            }
             default:
                 sender.sendMessage("§cUnknown subcommand.");
                 return true;
         }
     }
+
+    private static void sendEntries(CommandSender sender, java.util.List<com.example.bwqueue.elo.Leaderboard.Entry> entries, java.util.UUID highlight) {
+        com.example.bwqueue.elo.RatingStore ratings = BWQueuePlugin.get().getRatings();
+        for (com.example.bwqueue.elo.Leaderboard.Entry e : entries) {
+            String name = ratings.getName(e.uuid);
+            sender.sendMessage((e.uuid.equals(highlight) ? "§a" : "§7") + "#" + e.rank + " §f" + (name != null ? name : e.uuid.toString()) + " §b" + e.rating);
+        }
+    }
 }
@@ -4,9 +4,19 @@ import com.example.bwqueue.BWQueuePlugin;
 import com.example.bwqueue.config.PluginConfig;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.logging.Logger;
 
 /**
@@ -15,8 +25,9 @@ import java.util.logging.Logger;
  *
  * This class provides only the minimal surface BWQueue needs:
  * - Check if an arena from a given group is free
- * - Start a match on a free arena with two teams (Red/Green) and given players
- * - Detect end-of-game via a Bukkit event listener registered elsewhere (BWListeners)
+ * - Reserve (lease) a specific free arena so two batches can never pick the same one
+ * - Start a match on the leased arena with two teams (Red/Green) and given players
+ * - Detect end-of-game via the BW1058 GameEndEvent, registered reflectively
  *
  * NOTE: The actual method names may differ across BW1058 builds. The reflection calls here are
  * implemented with best-effort names and logging. On your server, please check console logs on
@@ -54,28 +65,137 @@ public class BedWarsService {
         }
     }
 
+    public boolean isApiAvailable() {
+        return bwAPIClass != null;
+    }
+
+    /**
+     * Calls {@code handler(arenaName, winners)} on the main thread whenever a BW1058 game ends.
+     * Arena names match those returned by {@link #startMatch}. No-op without the API.
+     */
+    @SuppressWarnings("unchecked")
+    public void onGameEnd(BiConsumer<String, List<UUID>> handler) {
+        if (bwAPIClass == null) return;
+        try {
+            Class<? extends Event> endEvent = (Class<? extends Event>) Class.forName("com.andrei1058.bedwars.api.events.gameplay.GameEndEvent");
+            Method getArena = endEvent.getMethod("getArena");
+            Method getWinners = endEvent.getMethod("getWinners");
+            Bukkit.getPluginManager().registerEvent(endEvent, new Listener() {}, EventPriority.MONITOR, (listener, event) -> {
+                if (!endEvent.isInstance(event)) return;
+                try {
+                    String arena = extractArenaName(getArena.invoke(event));
+                    Object winners = getWinners.invoke(event);
+                    List<UUID> list = winners instanceof List ? (List<UUID>) winners : Collections.<UUID>emptyList();
+                    handler.accept(arena, list);
+                } catch (Throwable t) {
+                    log.warning("[BWQueue] Failed to handle GameEndEvent: " + t.getMessage());
+                }
+            }, BWQueuePlugin.get());
+        } catch (Throwable t) {
+            log.warning("[BWQueue] Could not hook BW1058 GameEndEvent; games will end on timeout: " + t.getMessage());
+        }
+    }
+
     /**
-     * Returns true if there is at least one free arena for the group.
+     * A claim on one specific free arena, held from batch formation until the game ends.
+     * Until the match starts the claim expires on its own, so a crashed start cannot leak the arena.
+     */
+    public static final class ArenaLease {
+        private final long id;
+        private final String group;
+        private final String arenaName;
+        private volatile long expiresAtMillis; // Long.MAX_VALUE once the match is starting
+
+        private ArenaLease(long id, String group, String arenaName, long expiresAtMillis) {
+            this.id = id; this.group = group; this.arenaName = arenaName; this.expiresAtMillis = expiresAtMillis;
+        }
+
+        public String getGroup() { return group; }
+        public String getArenaName() { return arenaName; }
+        boolean isExpired(long now) { return now >= expiresAtMillis; }
+    }
+
+    // arena name -> current lease
+    private final Map<String, ArenaLease> leases = new ConcurrentHashMap<>();
+    private final AtomicLong leaseSeq = new AtomicLong();
+
+    /**
+     * Atomically claims a free, unleased arena of the group for {@code leaseMillis}.
+     * Returns null if none is free right now.
+     */
+    public synchronized ArenaLease reserveArena(String group, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        expireLeases(now);
+        long id = leaseSeq.incrementAndGet();
+        if (bwAPIClass == null) {
+            // Stub mode: every "arena" is free; give each game its own name
+            ArenaLease lease = new ArenaLease(id, group, "stub-arena-" + id, now + leaseMillis);
+            leases.put(lease.arenaName, lease);
+            return lease;
+        }
+        java.util.Collection<?> arenas = arenasOf(group);
+        if (arenas == null) return null;
+        for (Object arena : arenas) {
+            String name = extractArenaName(arena);
+            if (name == null || leases.containsKey(name) || !isArenaFree(arena)) continue;
+            ArenaLease lease = new ArenaLease(id, group, name, now + leaseMillis);
+            leases.put(name, lease);
+            return lease;
+        }
+        return null;
+    }
+
+    /**
+     * Gives the arena back, after a failed start or when the game is over. Safe to call twice.
+     */
+    public void release(ArenaLease lease) {
+        if (lease != null) leases.remove(lease.arenaName, lease);
+    }
+
+    public int getLeaseCount() {
+        return leases.size();
+    }
+
+    private void expireLeases(long now) {
+        Iterator<Map.Entry<String, ArenaLease>> it = leases.entrySet().iterator();
+        while (it.hasNext()) {
+            ArenaLease l = it.next().getValue();
+            if (l.isExpired(now)) {
+                it.remove();
+                log.warning("[BWQueue] Arena lease on " + l.arenaName + " expired before the match started.");
+            }
+        }
+    }
+
+    /**
+     * Returns true if there is at least one free, unleased arena for the group.
      */
     public boolean isArenaAvailable(String group) {
         if (bwAPIClass == null) return true; // allow flow; QueueManager also handles pending
+        java.util.Collection<?> arenas = arenasOf(group);
+        if (arenas == null) return true; // Fall back to optimistic; reserveArena decides
+        long now = System.currentTimeMillis();
+        for (Object arena : arenas) {
+            String name = extractArenaName(arena);
+            ArenaLease l = name != null ? leases.get(name) : null;
+            if ((l == null || l.isExpired(now)) && isArenaFree(arena)) return true;
+        }
+        return false;
+    }
+
+    private java.util.Collection<?> arenasOf(String group) {
         try {
             // Hypothetical: BedWarsAPI.getArenasByGroup(String)
             Method inst = bwAPIClass.getMethod("getInstance");
             Object api = inst.invoke(null);
             Method getArenasByGroup = bwAPIClass.getMethod("getArenasByGroup", String.class);
             Object list = getArenasByGroup.invoke(api, group);
-            if (list instanceof java.util.Collection) {
-                for (Object arena : ((java.util.Collection<?>) list)) {
-                    if (isArenaFree(arena)) return true;
-                }
-                return false;
-            }
+            if (list instanceof java.util.Collection) return (java.util.Collection<?>) list;
+            log.warning("[BWQueue] Unexpected response type from getArenasByGroup.");
         } catch (Throwable t) {
-            // Fall back to optimistic assume available but warn
-            log.fine("[BWQueue] isArenaAvailable reflection failed: " + t.getMessage());
+            log.fine("[BWQueue] getArenasByGroup reflection failed: " + t.getMessage());
         }
-        return true;
+        return null;
     }
 
     private boolean isArenaFree(Object arena) {
@@ -99,32 +219,30 @@ public class BedWarsService {
     }
 
     /**
-     * Attempt to pick a free arena in the group and start the match with two teams.
-     * Returns an arena identifier (name) if started, otherwise null.
+     * Start the match with two teams on the leased arena. Returns the arena name if started, otherwise null;
+     * the lease stops expiring as soon as the start begins and is held until {@link #release}.
      */
-    public String startMatch(String group, List<Player> red, List<Player> green) {
+    public String startMatch(ArenaLease lease, List<Player> red, List<Player> green) {
+        if (!claim(lease)) {
+            log.warning("[BWQueue] Lease on " + lease.arenaName + " is no longer held; not starting.");
+            return null;
+        }
         if (bwAPIClass == null) {
             log.warning("[BWQueue] BedWarsAPI not detected; starting in stub mode (no real match will start).");
-            return "stub-arena";
+            return lease.arenaName;
         }
         try {
-            Method inst = bwAPIClass.getMethod("getInstance");
-            Object api = inst.invoke(null);
-            Method getArenasByGroup = bwAPIClass.getMethod("getArenasByGroup", String.class);
-            Object arenas = getArenasByGroup.invoke(api, group);
-            if (!(arenas instanceof java.util.Collection)) {
-                log.warning("[BWQueue] Unexpected response type from getArenasByGroup.");
-                return null;
-            }
+            java.util.Collection<?> arenas = arenasOf(lease.group);
             Object chosen = null;
-            for (Object a : ((java.util.Collection<?>) arenas)) {
-                if (isArenaFree(a)) { chosen = a; break; }
+            if (arenas != null) {
+                for (Object a : arenas) {
+                    if (lease.arenaName.equals(extractArenaName(a))) { chosen = a; break; }
+                }
             }
-            if (chosen == null) {
-                log.info("[BWQueue] No free arena for group " + group);
+            if (chosen == null || !isArenaFree(chosen)) {
+                log.info("[BWQueue] Leased arena " + lease.arenaName + " is gone or no longer free");
                 return null;
             }
-            String arenaName = extractArenaName(chosen);
 
             // Hypothetical: add players to teams
             addPlayersToTeam(chosen, "RED", red);
@@ -132,15 +250,32 @@ public class BedWarsService {
 
             // Hypothetical: start the arena
             startArena(chosen);
-            return arenaName != null ? arenaName : "unknown";
+            return lease.arenaName;
         } catch (Throwable t) {
             log.warning("[BWQueue] Failed to start BW1058 match: " + t.getMessage());
             return null;
         }
     }
 
+    /**
+     * Checks the lease is still held and stops it expiring, under the lock that
+     * {@link #reserveArena} expires leases with, so it cannot be expired and handed out again
+     * while the match is being started. A failed start is released by the caller.
+     */
+    private synchronized boolean claim(ArenaLease lease) {
+        if (leases.get(lease.arenaName) != lease || lease.isExpired(System.currentTimeMillis())) return false;
+        lease.expiresAtMillis = Long.MAX_VALUE;
+        return true;
+    }
+
     private String extractArenaName(Object arena) {
         try {
+            // Internal name first: unique per arena, unlike display names
+            try {
+                Method getName = arena.getClass().getMethod("getArenaName");
+                Object r = getName.invoke(arena);
+                if (r != null) return String.valueOf(r);
+            } catch (NoSuchMethodException ignored) {}
             try {
                 Method getName = arena.getClass().getMethod("getDisplayName");
                 Object r = getName.invoke(arena);
@@ -2,6 +2,11 @@ package com.example.bwqueue.config;
 
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 public class PluginConfig {
     private final String discordToken;
     private final String queueVoiceId;
@@ -9,6 +14,14 @@ public class PluginConfig {
     private final String gamesCategoryId;
     private final int textChannelTtlSeconds;
     private final boolean deleteTeamVoiceAtEnd;
+    private final int channelPoolSize;
+    private final String discordCacheMode;
+    private final int moveConcurrency;
+    private final int moveMaxAttempts;
+    private final int moveTimeoutSeconds;
+    private final int restMaxInFlight;
+    private final long restSlowMillis;
+    private final int restMaxQueuedPerLane;
 
     private final int minPlayers;
     private final int teamSize;
@@ -18,6 +31,17 @@ public class PluginConfig {
     private final String groupFor4;
     private final int startTimeoutSeconds;
     private final int maxConcurrentGames;
+    private final long matchDebounceMillis;
+    private final int sweepIntervalSeconds;
+    private final String matchmakingMode;
+    private final int eloBaseSpread;
+    private final int eloSpreadPerSecond;
+    private final int eloMaxSpread;
+    private final long partitionBudgetMicros;
+    private final List<ShardConfig> shards;
+    private final int matchmakerThreads;
+    private final int gameTimeoutMinutes;
+    private final int arenaLeaseSeconds;
 
     private final boolean partyEnabled;
     private final int partyMaxMembers;
@@ -25,11 +49,49 @@ public class PluginConfig {
     private final int codeLength;
     private final int codeTtlSeconds;
     private final boolean requireOnlineForCode;
+    private final int linkCacheMaxSize;
+    private final int linkCacheTtlSeconds;
+    private final int linkCacheNegativeTtlSeconds;
+    private final boolean linkCacheWarmUp;
+    private final int linkThrottleWindowSeconds;
+    private final int linkThrottlePerPlayer;
+    private final int linkThrottlePerAddress;
 
     private final int eloDefault;
 
+    private final String storageType;
+    private final String storageHost;
+    private final int storagePort;
+    private final String storageDatabase;
+    private final String storageUser;
+    private final String storagePassword;
+    private final String storageParams;
     private final String sqliteFile;
     private final int maxPoolSize;
+    private final int connectionTimeoutMillis;
+    private final int poolMinIdle;
+    private final int poolIdleTimeoutMinutes;
+    private final int poolMaxLifetimeMinutes;
+    private final int poolLeakDetectionMillis;
+    private final String sqliteSynchronous;
+    private final int sqliteCacheSizeKb;
+    private final int sqliteMmapSizeMb;
+    private final int statementCacheSize;
+    private final int writeBatchSize;
+    private final int eventBufferSize;
+    private final int eventBatchSize;
+    private final int eventFlushMillis;
+    private final String eventOverflow;
+    private final String eventSink;
+    private final String eventSegmentDirectory;
+    private final int eventSegmentSizeKb;
+    private final boolean retentionEnabled;
+    private final int retentionMaxAgeDays;
+    private final int retentionIntervalMinutes;
+    private final int retentionChunkSize;
+    private final int retentionPauseMillis;
+    private final int retentionVacuumPages;
+    private final boolean retentionConvertAutoVacuum;
 
     private final boolean debug;
 
@@ -40,6 +102,14 @@ public class PluginConfig {
         this.gamesCategoryId = cfg.getString("discord.gamesCategoryId", "");
         this.textChannelTtlSeconds = cfg.getInt("discord.textChannelTtlSeconds", 120);
         this.deleteTeamVoiceAtEnd = cfg.getBoolean("discord.deleteTeamVoiceAtEnd", true);
+        this.channelPoolSize = cfg.getInt("discord.channelPoolSize", -1);
+        this.discordCacheMode = cfg.getString("discord.cacheMode", "lean");
+        this.moveConcurrency = cfg.getInt("discord.moves.concurrency", 8);
+        this.moveMaxAttempts = cfg.getInt("discord.moves.maxAttempts", 3);
+        this.moveTimeoutSeconds = cfg.getInt("discord.moves.timeoutSeconds", 10);
+        this.restMaxInFlight = cfg.getInt("discord.rest.maxInFlight", 10);
+        this.restSlowMillis = cfg.getLong("discord.rest.slowMillis", 2000L);
+        this.restMaxQueuedPerLane = cfg.getInt("discord.rest.maxQueuedPerLane", 500);
 
         this.queueType = cfg.getString("queue.type", "4");
         this.groupFor3 = cfg.getString("queue.groups.3", "3v3v3v3");
@@ -49,6 +119,17 @@ public class PluginConfig {
         this.maxTeams = cfg.getInt("queue.maxTeams", 2);
         this.startTimeoutSeconds = cfg.getInt("queue.startTimeoutSeconds", 60);
         this.maxConcurrentGames = cfg.getInt("queue.maxConcurrentGames", 5);
+        this.matchDebounceMillis = cfg.getLong("queue.matchDebounceMillis", 250L);
+        this.sweepIntervalSeconds = cfg.getInt("queue.sweepIntervalSeconds", 15);
+        this.matchmakingMode = cfg.getString("queue.matchmaking.mode", "fifo");
+        this.eloBaseSpread = cfg.getInt("queue.matchmaking.baseSpread", 100);
+        this.eloSpreadPerSecond = cfg.getInt("queue.matchmaking.spreadPerSecond", 5);
+        this.eloMaxSpread = cfg.getInt("queue.matchmaking.maxSpread", 1000);
+        this.partitionBudgetMicros = cfg.getLong("queue.partitionBudgetMicros", 500L);
+        this.matchmakerThreads = cfg.getInt("queue.matchmakerThreads", 2);
+        this.gameTimeoutMinutes = cfg.getInt("queue.gameTimeoutMinutes", 60);
+        this.arenaLeaseSeconds = cfg.getInt("queue.arenaLeaseSeconds", 60);
+        this.shards = Collections.unmodifiableList(parseShards(cfg));
 
         this.partyEnabled = cfg.getBoolean("party.enabled", false);
         this.partyMaxMembers = cfg.getInt("party.maxMembers", 4);
@@ -56,11 +137,50 @@ public class PluginConfig {
         this.codeLength = cfg.getInt("linking.codeLength", 6);
         this.codeTtlSeconds = cfg.getInt("linking.codeTtlSeconds", 300);
         this.requireOnlineForCode = cfg.getBoolean("linking.requireOnlineForCode", true);
+        this.linkCacheMaxSize = cfg.getInt("linking.cache.maxSize", 10000);
+        this.linkCacheTtlSeconds = cfg.getInt("linking.cache.ttlSeconds", 3600);
+        this.linkCacheNegativeTtlSeconds = cfg.getInt("linking.cache.negativeTtlSeconds", 60);
+        this.linkCacheWarmUp = cfg.getBoolean("linking.cache.warmUp", true);
+        this.linkThrottleWindowSeconds = Math.max(1, cfg.getInt("linking.throttle.windowSeconds", 600));
+        this.linkThrottlePerPlayer = cfg.getInt("linking.throttle.perPlayer", 5);
+        this.linkThrottlePerAddress = cfg.getInt("linking.throttle.perAddress", 15);
 
         this.eloDefault = cfg.getInt("elo.default", 0);
 
+        this.storageType = cfg.getString("storage.type", "sqlite");
+        this.storageHost = cfg.getString("storage.host", "localhost");
+        this.storagePort = cfg.getInt("storage.port", 0);
+        this.storageDatabase = cfg.getString("storage.database", "bwqueue");
+        this.storageUser = cfg.getString("storage.username", "");
+        this.storagePassword = cfg.getString("storage.password", "");
+        this.storageParams = cfg.getString("storage.params", "");
         this.sqliteFile = cfg.getString("storage.sqliteFile", "plugins/BWQueue/bwqueue.db");
         this.maxPoolSize = cfg.getInt("storage.maxPoolSize", 4);
+        this.connectionTimeoutMillis = Math.max(1, cfg.getInt("storage.connectionTimeoutMillis", 5000));
+        int minIdle = cfg.getInt("storage.pool.minIdle", -1);
+        this.poolMinIdle = minIdle < 0 ? maxPoolSize : Math.min(minIdle, maxPoolSize);
+        this.poolIdleTimeoutMinutes = Math.max(1, cfg.getInt("storage.pool.idleTimeoutMinutes", 10));
+        this.poolMaxLifetimeMinutes = Math.max(0, cfg.getInt("storage.pool.maxLifetimeMinutes", 30));
+        this.poolLeakDetectionMillis = Math.max(0, cfg.getInt("storage.pool.leakDetectionMillis", 10000));
+        this.sqliteSynchronous = cfg.getString("storage.sqlite.synchronous", "NORMAL");
+        this.sqliteCacheSizeKb = Math.max(0, cfg.getInt("storage.sqlite.cacheSizeKb", 16384));
+        this.sqliteMmapSizeMb = Math.max(0, cfg.getInt("storage.sqlite.mmapSizeMb", 128));
+        this.statementCacheSize = Math.max(1, cfg.getInt("storage.statementCacheSize", 64));
+        this.writeBatchSize = Math.max(1, cfg.getInt("storage.writeBatchSize", 256));
+        this.eventBufferSize = cfg.getInt("storage.events.bufferSize", 8192);
+        this.eventBatchSize = cfg.getInt("storage.events.batchSize", 200);
+        this.eventFlushMillis = cfg.getInt("storage.events.flushMillis", 1000);
+        this.eventOverflow = cfg.getString("storage.events.overflow", "drop");
+        this.eventSink = cfg.getString("storage.events.sink", "database");
+        this.eventSegmentDirectory = cfg.getString("storage.events.segments.directory", "plugins/BWQueue/events");
+        this.eventSegmentSizeKb = Math.max(64, cfg.getInt("storage.events.segments.segmentSizeKb", 4096));
+        this.retentionEnabled = cfg.getBoolean("storage.retention.enabled", true);
+        this.retentionMaxAgeDays = Math.max(1, cfg.getInt("storage.retention.maxAgeDays", 30));
+        this.retentionIntervalMinutes = Math.max(1, cfg.getInt("storage.retention.intervalMinutes", 15));
+        this.retentionChunkSize = Math.max(1, cfg.getInt("storage.retention.chunkSize", 1000));
+        this.retentionPauseMillis = Math.max(0, cfg.getInt("storage.retention.pauseMillis", 250));
+        this.retentionVacuumPages = Math.max(0, cfg.getInt("storage.retention.vacuumPages", 2000));
+        this.retentionConvertAutoVacuum = cfg.getBoolean("storage.retention.convertAutoVacuum", false);
 
         this.debug = cfg.getBoolean("logging.debug", false);
     }
@@ -71,6 +191,15 @@ public class PluginConfig {
     public String getGamesCategoryId() { return gamesCategoryId; }
     public int getTextChannelTtlSeconds() { return textChannelTtlSeconds; }
     public boolean isDeleteTeamVoiceAtEnd() { return deleteTeamVoiceAtEnd; }
+    public int getChannelPoolSize() { return channelPoolSize; }
+    public String getDiscordCacheMode() { return discordCacheMode; }
+    public boolean isLeanDiscordCache() { return !"full".equalsIgnoreCase(discordCacheMode); }
+    public int getMoveConcurrency() { return moveConcurrency; }
+    public int getMoveMaxAttempts() { return moveMaxAttempts; }
+    public int getMoveTimeoutSeconds() { return moveTimeoutSeconds; }
+    public int getRestMaxInFlight() { return restMaxInFlight; }
+    public long getRestSlowMillis() { return restSlowMillis; }
+    public int getRestMaxQueuedPerLane() { return restMaxQueuedPerLane; }
 
     public String getQueueType() { return queueType; }
     public String getGroupFor3() { return groupFor3; }
@@ -80,6 +209,18 @@ public class PluginConfig {
     public int getMaxTeams() { return maxTeams; }
     public int getStartTimeoutSeconds() { return startTimeoutSeconds; }
     public int getMaxConcurrentGames() { return maxConcurrentGames; }
+    public long getMatchDebounceMillis() { return matchDebounceMillis; }
+    public int getSweepIntervalSeconds() { return sweepIntervalSeconds; }
+    public String getMatchmakingMode() { return matchmakingMode; }
+    public boolean isEloMatchmaking() { return "elo".equalsIgnoreCase(matchmakingMode); }
+    public int getEloBaseSpread() { return eloBaseSpread; }
+    public int getEloSpreadPerSecond() { return eloSpreadPerSecond; }
+    public int getEloMaxSpread() { return eloMaxSpread; }
+    public long getPartitionBudgetMicros() { return partitionBudgetMicros; }
+    public List<ShardConfig> getShards() { return shards; }
+    public int getMatchmakerThreads() { return matchmakerThreads; }
+    public int getGameTimeoutMinutes() { return gameTimeoutMinutes; }
+    public int getArenaLeaseSeconds() { return arenaLeaseSeconds; }
 
     public boolean isPartyEnabled() { return partyEnabled; }
     public int getPartyMaxMembers() { return partyMaxMembers; }
@@ -87,11 +228,94 @@ public class PluginConfig {
     public int getCodeLength() { return codeLength; }
     public int getCodeTtlSeconds() { return codeTtlSeconds; }
     public boolean isRequireOnlineForCode() { return requireOnlineForCode; }
+    public int getLinkCacheMaxSize() { return linkCacheMaxSize; }
+    public int getLinkCacheTtlSeconds() { return linkCacheTtlSeconds; }
+    public int getLinkCacheNegativeTtlSeconds() { return linkCacheNegativeTtlSeconds; }
+    public boolean isLinkCacheWarmUp() { return linkCacheWarmUp; }
+    public int getLinkThrottleWindowSeconds() { return linkThrottleWindowSeconds; }
+    public int getLinkThrottlePerPlayer() { return linkThrottlePerPlayer; }
+    public int getLinkThrottlePerAddress() { return linkThrottlePerAddress; }
 
     public int getEloDefault() { return eloDefault; }
 
+    public String getStorageType() { return storageType; }
+    public String getStorageHost() { return storageHost; }
+    public int getStoragePort() { return storagePort; }
+    public String getStorageDatabase() { return storageDatabase; }
+    public String getStorageUser() { return storageUser; }
+    public String getStoragePassword() { return storagePassword; }
+    public String getStorageParams() { return storageParams; }
     public String getSqliteFile() { return sqliteFile; }
     public int getMaxPoolSize() { return maxPoolSize; }
+    public int getConnectionTimeoutMillis() { return connectionTimeoutMillis; }
+    public int getPoolMinIdle() { return poolMinIdle; }
+    public int getPoolIdleTimeoutMinutes() { return poolIdleTimeoutMinutes; }
+    public int getPoolMaxLifetimeMinutes() { return poolMaxLifetimeMinutes; }
+    public int getPoolLeakDetectionMillis() { return poolLeakDetectionMillis; }
+    public String getSqliteSynchronous() { return sqliteSynchronous; }
+    public int getSqliteCacheSizeKb() { return sqliteCacheSizeKb; }
+    public int getSqliteMmapSizeMb() { return sqliteMmapSizeMb; }
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public int getWriteBatchSize() { return writeBatchSize; }
+    public int getEventBufferSize() { return eventBufferSize; }
+    public int getEventBatchSize() { return eventBatchSize; }
+    public int getEventFlushMillis() { return eventFlushMillis; }
+    public String getEventOverflow() { return eventOverflow; }
+    public String getEventSink() { return eventSink; }
+    public String getEventSegmentDirectory() { return eventSegmentDirectory; }
+    public int getEventSegmentSizeKb() { return eventSegmentSizeKb; }
+    public boolean isRetentionEnabled() { return retentionEnabled; }
+    public int getRetentionMaxAgeDays() { return retentionMaxAgeDays; }
+    public int getRetentionIntervalMinutes() { return retentionIntervalMinutes; }
+    public int getRetentionChunkSize() { return retentionChunkSize; }
+    public int getRetentionPauseMillis() { return retentionPauseMillis; }
+    public int getRetentionVacuumPages() { return retentionVacuumPages; }
+    public boolean isRetentionConvertAutoVacuum() { return retentionConvertAutoVacuum; }
 
     public boolean isDebug() { return debug; }
+
+    /**
+     * One independent queue: players joining {@code queueVoiceId} in {@code guildId} are matched into
+     * {@code teamSize}v{@code teamSize} games on arenas of {@code arenaGroup}. An empty guild id matches any guild.
+     */
+    public static class ShardConfig {
+        public final String guildId;
+        public final String queueVoiceId;
+        public final String type;
+        public final int teamSize;
+        public final String arenaGroup;
+        public ShardConfig(String guildId, String queueVoiceId, String type, int teamSize, String arenaGroup) {
+            this.guildId = guildId; this.queueVoiceId = queueVoiceId; this.type = type; this.teamSize = teamSize; this.arenaGroup = arenaGroup;
+        }
+    }
+
+    private List<ShardConfig> parseShards(FileConfiguration cfg) {
+        List<ShardConfig> out = new ArrayList<>();
+        for (Map<?, ?> m : cfg.getMapList("queue.shards")) {
+            String vc = str(m.get("queueVoiceChannelId"), "");
+            if (vc.isEmpty()) continue;
+            String type = str(m.get("type"), queueType);
+            String group = str(m.get("group"), groupForType(type));
+            out.add(new ShardConfig(str(m.get("guild"), ""), vc, type, teamSizeForType(type), group));
+        }
+        if (out.isEmpty() && queueVoiceId != null && !queueVoiceId.isEmpty()) {
+            // Legacy single-queue setup
+            out.add(new ShardConfig("", queueVoiceId, queueType, teamSizeForType(queueType), groupForType(queueType)));
+        }
+        return out;
+    }
+
+    private String groupForType(String type) {
+        return "3".equals(type) ? groupFor3 : groupFor4;
+    }
+
+    private int teamSizeForType(String type) {
+        if ("3".equals(type)) return 3;
+        if ("4".equals(type)) return 4;
+        return Math.max(1, teamSize);
+    }
+
+    private static String str(Object o, String def) {
+        return o == null ? def : String.valueOf(o);
+    }
 }
@@ -1,76 +1,285 @@
 package com.example.bwqueue.db;
 
 import com.example.bwqueue.config.PluginConfig;
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
 
 import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
 
+/**
+ * Storage access: one writer connection owned by a dedicated thread, plus a small pool of read-only connections.
+ *
+ * SQLite allows a single writer at a time, so several pooled writers only take turns failing with
+ * SQLITE_BUSY. All writes are queued as commands instead; the writer thread runs whatever is queued in one
+ * transaction (each command under its own savepoint, so a failing command only undoes itself) and completes
+ * the callers' futures once it has committed. In WAL mode readers never wait for the writer.
+ *
+ * The same layout serves the networked backends (see {@link Dialect}), where it keeps each server to one
+ * write connection on a database shared by several servers. Their connections are checked before reuse
+ * after sitting idle, reopened if the server dropped them, and replaced once older than
+ * {@code storage.pool.maxLifetimeMinutes}. The read pool is sized and aged by {@link ReadPool}.
+ *
+ * Every connection keeps its own prepared statements (see {@link Sql}).
+ */
 public class Database {
+
+    // Networked connections idle longer than this are validated before use (HikariCP's default)
+    private static final long VALIDATE_AFTER_MILLIS = 500L;
+
+    private static final class Command<T> {
+        final Sql.Work<T> work;
+        final boolean transactional;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        Command(Sql.Work<T> work, boolean transactional) { this.work = work; this.transactional = transactional; }
+    }
+
     private final PluginConfig config;
-    private HikariDataSource ds;
+    private final Logger log;
+    private final Dialect dialect;
+    private final BlockingQueue<Command<?>> commands = new LinkedBlockingQueue<>();
+    private ReadPool readers;
+    private Sql writer;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
 
-    public Database(PluginConfig config) {
+    public Database(PluginConfig config, Logger log) {
         this.config = config;
+        this.log = log;
+        this.dialect = Dialect.forType(config.getStorageType());
     }
 
     public void init() throws SQLException {
-        HikariConfig hc = new HikariConfig();
-        hc.setJdbcUrl("jdbc:sqlite:" + config.getSqliteFile());
-        hc.setMaximumPoolSize(config.getMaxPoolSize());
-        hc.setPoolName("BWQueue-SQLite");
-        hc.setDriverClassName("org.sqlite.JDBC");
-        this.ds = new HikariDataSource(hc);
-
-        try (Connection c = ds.getConnection(); Statement st = c.createStatement()) {
-            st.execute("PRAGMA journal_mode=WAL");
-            st.execute("CREATE TABLE IF NOT EXISTS users (" +
-                    "discord_id TEXT PRIMARY KEY, " +
-                    "uuid TEXT, " +
-                    "name TEXT, " +
-                    "linked_at INTEGER" +
-                    ")");
-            // Add ELO column if missing
+        try {
+            Class.forName(dialect.driverClass());
+        } catch (ClassNotFoundException e) {
+            throw new SQLException(dialect.getName() + " driver not found", e);
+        }
+
+        this.writer = open(false, true);
+        Migrations.migrate(writer.connection(), dialect, log);
+
+        int readPoolSize = Math.max(1, config.getMaxPoolSize());
+        boolean networked = !dialect.isEmbedded();
+        this.readers = new ReadPool(() -> open(true, false), log, readPoolSize, config.getPoolMinIdle(),
+                TimeUnit.MINUTES.toMillis(config.getPoolIdleTimeoutMinutes()),
+                networked ? maxLifetimeMillis() : 0L,
+                networked ? VALIDATE_AFTER_MILLIS : -1L,
+                config.getConnectionTimeoutMillis(), config.getPoolLeakDetectionMillis());
+        readers.fill();
+
+        this.running = true;
+        this.writerThread = new Thread(this::runWriter, "BWQueue-DB-Writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        log.info("[BWQueue] Storage: " + dialect.getName() + ", up to " + readPoolSize + " read connections");
+    }
+
+    private Sql open(boolean readOnly, boolean first) throws SQLException {
+        Connection c = DriverManager.getConnection(dialect.jdbcUrl(config), dialect.connectionProperties(config, readOnly));
+        try {
+            dialect.configure(c, config, readOnly, first);
+        } catch (SQLException e) {
+            c.close();
+            throw e;
+        }
+        return new Sql(c, config.getStatementCacheSize());
+    }
+
+    private long maxLifetimeMillis() {
+        return TimeUnit.MINUTES.toMillis(config.getPoolMaxLifetimeMinutes());
+    }
+
+    // Replaces the networked writer connection once it is past its lifetime, or if the server has closed
+    // it on us (idle timeout, restart)
+    private Sql revalidate(Sql sql) throws SQLException {
+        if (dialect.isEmbedded()) return sql;
+        boolean expired = maxLifetimeMillis() > 0 && sql.ageMillis() > maxLifetimeMillis();
+        if (!expired && (sql.idleMillis() < VALIDATE_AFTER_MILLIS || sql.connection().isValid(2))) return sql;
+        if (!expired) log.info("[BWQueue] Reopening stale " + dialect.getName() + " connection");
+        Sql fresh = open(false, false);
+        sql.close();
+        return fresh;
+    }
+
+    /**
+     * Runs the work on a pooled read-only connection (see {@link ReadPool}), waiting for one to become
+     * free. Fails with an SQLException if none frees up within {@code storage.connectionTimeoutMillis}.
+     */
+    public <T> T read(Sql.Work<T> work) throws SQLException {
+        Sql sql = readers.borrow();
+        try {
+            return work.run(sql);
+        } finally {
+            readers.giveBack(sql);
+        }
+    }
+
+    /**
+     * Queues the work for the writer thread. The future completes after the transaction it ran in has
+     * committed, or exceptionally if the work failed.
+     */
+    public <T> CompletableFuture<T> write(Sql.Work<T> work) {
+        return enqueue(new Command<>(work, true));
+    }
+
+    /**
+     * Runs the work on the writer connection outside any transaction (auto-commit), between two write
+     * batches. For statements that refuse to run in a transaction: VACUUM, WAL checkpoints.
+     */
+    public <T> CompletableFuture<T> maintenance(Sql.Work<T> work) {
+        return enqueue(new Command<>(work, false));
+    }
+
+    private <T> CompletableFuture<T> enqueue(Command<T> cmd) {
+        if (!running) {
+            cmd.future.completeExceptionally(new SQLException("Database is closed"));
+            return cmd.future;
+        }
+        commands.add(cmd);
+        return cmd.future;
+    }
+
+    /**
+     * {@link #write} and wait for the commit. Not for the server thread.
+     */
+    public <T> T writeAndWait(Sql.Work<T> work) throws SQLException {
+        try {
+            return write(work).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    private void runWriter() {
+        List<Command<?>> batch = new ArrayList<>();
+        while (running || !commands.isEmpty()) {
             try {
-                st.execute("ALTER TABLE users ADD COLUMN elo INTEGER DEFAULT 0");
-            } catch (SQLException ignored) {}
+                Command<?> first = commands.poll(250, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+            } catch (InterruptedException e) {
+                // shutdown() interrupts a writer that is only waiting; drain whatever is left
+                running = false;
+                continue;
+            }
+            commands.drainTo(batch, config.getWriteBatchSize() - 1);
+            // Transactional runs go out as batches; maintenance commands run alone in between
+            int from = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.get(i).transactional) continue;
+                if (i > from) runBatch(batch.subList(from, i));
+                runMaintenance(batch.get(i));
+                from = i + 1;
+            }
+            if (from < batch.size()) runBatch(batch.subList(from, batch.size()));
+            batch.clear();
+        }
+    }
 
-            st.execute("CREATE TABLE IF NOT EXISTS sessions (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "arena TEXT, " +
-                    "group_name TEXT, " +
-                    "started_at INTEGER, " +
-                    "ended_at INTEGER, " +
-                    "winner_team TEXT" +
-                    ")");
-
-            st.execute("CREATE TABLE IF NOT EXISTS session_players (" +
-                    "session_id INTEGER, " +
-                    "uuid TEXT, " +
-                    "name TEXT, " +
-                    "team TEXT, " +
-                    "stats_json TEXT, " +
-                    "PRIMARY KEY(session_id, uuid)" +
-                    ")");
-
-            st.execute("CREATE TABLE IF NOT EXISTS events (" +
-                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                    "session_id INTEGER, " +
-                    "type TEXT, " +
-                    "player_uuid TEXT, " +
-                    "value TEXT, " +
-                    "ts INTEGER" +
-                    ")");
+    // Writer thread only
+    private void runMaintenance(Command<?> cmd) {
+        Object result = null;
+        Throwable error = null;
+        try {
+            writer = revalidate(writer);
+            writer.touch();
+            result = cmd.work.run(writer);
+        } catch (Exception e) {
+            error = e;
         }
+        complete(cmd, result, error);
     }
 
-    public Connection getConnection() throws SQLException {
-        return ds.getConnection();
+    // Writer thread only
+    private void runBatch(List<Command<?>> batch) {
+        Object[] results = new Object[batch.size()];
+        Throwable[] errors = new Throwable[batch.size()];
+        try {
+            writer = revalidate(writer);
+        } catch (SQLException e) {
+            for (int i = 0; i < batch.size(); i++) complete(batch.get(i), null, e);
+            return;
+        }
+        writer.touch();
+        Connection c = writer.connection();
+        try {
+            c.setAutoCommit(false);
+            for (int i = 0; i < batch.size(); i++) {
+                Savepoint sp = c.setSavepoint();
+                try {
+                    results[i] = batch.get(i).work.run(writer);
+                    c.releaseSavepoint(sp);
+                } catch (Exception e) {
+                    c.rollback(sp);
+                    errors[i] = e;
+                }
+            }
+            c.commit();
+            transactions.incrementAndGet();
+        } catch (SQLException e) {
+            try {
+                c.rollback();
+            } catch (SQLException ignored) {}
+            for (int i = 0; i < errors.length; i++) if (errors[i] == null) errors[i] = e;
+        } finally {
+            try {
+                c.setAutoCommit(true);
+            } catch (SQLException ignored) {}
+        }
+        for (int i = 0; i < batch.size(); i++) complete(batch.get(i), results[i], errors[i]);
     }
 
+    @SuppressWarnings("unchecked")
+    private <T> void complete(Command<T> cmd, Object result, Throwable error) {
+        if (error == null) {
+            writes.incrementAndGet();
+            cmd.future.complete((T) result);
+        } else {
+            failedWrites.incrementAndGet();
+            cmd.future.completeExceptionally(error);
+        }
+    }
+
+    /**
+     * Finishes the queued writes, then closes every connection.
+     */
     public void shutdown() {
-        if (ds != null) ds.close();
+        running = false;
+        if (writerThread != null) {
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (writerThread.isAlive()) writerThread.interrupt();
+        }
+        Command<?> cmd;
+        while ((cmd = commands.poll()) != null) cmd.future.completeExceptionally(new SQLException("Database is closed"));
+        if (writer != null) writer.close();
+        if (readers != null) readers.close();
     }
+
+    public Dialect getDialect() { return dialect; }
+    public int getQueuedWrites() { return commands.size(); }
+    public long getWrites() { return writes.get(); }
+    public long getFailedWrites() { return failedWrites.get(); }
+    public long getTransactions() { return transactions.get(); }
+    public int getReadConnections() { return readers != null ? readers.getTotal() : 0; }
+    public int getIdleReadConnections() { return readers != null ? readers.getIdle() : 0; }
 }
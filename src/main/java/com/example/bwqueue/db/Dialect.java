@@ -0,0 +1,118 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+
+/**
+ * What differs between the storage backends: driver and URL, per-connection setup, column types in DDL
+ * and upsert syntax. Everything else the plugin writes is plain SQL that all of them accept.
+ *
+ * DDL is written once with placeholders: {@code {id}} for an auto-increment primary key, {@code {key}} for
+ * short indexable text (ids, uuids, names), {@code {long}} for 64-bit integers.
+ */
+public abstract class Dialect {
+
+    public static Dialect forType(String type) {
+        String t = type == null ? "sqlite" : type.trim().toLowerCase();
+        switch (t) {
+            case "sqlite":
+                return new SqliteDialect();
+            case "mysql":
+                return new MySqlDialect(false);
+            case "mariadb":
+                return new MySqlDialect(true);
+            case "postgres":
+            case "postgresql":
+                return new PostgresDialect();
+            default:
+                throw new IllegalArgumentException("Unknown storage.type '" + type + "' (sqlite, mysql, mariadb, postgresql)");
+        }
+    }
+
+    public abstract String getName();
+
+    abstract String driverClass();
+
+    abstract String jdbcUrl(PluginConfig config);
+
+    /**
+     * True for file databases living in this process; networked connections can go stale and are
+     * validated before reuse.
+     */
+    boolean isEmbedded() { return false; }
+
+    Properties connectionProperties(PluginConfig config, boolean readOnly) {
+        Properties p = new Properties();
+        if (!config.getStorageUser().isEmpty()) p.setProperty("user", config.getStorageUser());
+        if (!config.getStoragePassword().isEmpty()) p.setProperty("password", config.getStoragePassword());
+        return p;
+    }
+
+    /**
+     * Session setup for a freshly opened connection.
+     */
+    void configure(Connection c, PluginConfig config, boolean readOnly, boolean first) throws SQLException {
+        if (readOnly) c.setReadOnly(true);
+    }
+
+    abstract String autoIncrementPrimaryKey();
+
+    String keyType() { return "VARCHAR(64)"; }
+
+    String longType() { return "BIGINT"; }
+
+    public String ddl(String template) {
+        return template.replace("{id}", autoIncrementPrimaryKey())
+                .replace("{key}", keyType())
+                .replace("{long}", longType());
+    }
+
+    /**
+     * Most bind parameters the backend takes in one statement.
+     */
+    public int maxBindParameters() { return 32767; }
+
+    /**
+     * The larger of two numeric expressions.
+     */
+    public String greatest(String a, String b) {
+        return "GREATEST(" + a + ", " + b + ")";
+    }
+
+    /**
+     * Multi-row INSERT of {@code rows} rows into {@code columns} that updates the non-key columns of rows
+     * whose {@code keys} already exist.
+     */
+    public String upsert(String table, String[] keys, String[] columns, int rows) {
+        StringBuilder sb = insert(table, columns, rows);
+        sb.append(" ON CONFLICT(").append(String.join(", ", keys)).append(") DO UPDATE SET ");
+        boolean first = true;
+        for (String col : columns) {
+            if (contains(keys, col)) continue;
+            if (!first) sb.append(", ");
+            sb.append(col).append("=excluded.").append(col);
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    static StringBuilder insert(String table, String[] columns, int rows) {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append('(')
+                .append(String.join(", ", columns)).append(") VALUES ");
+        for (int r = 0; r < rows; r++) {
+            if (r > 0) sb.append(',');
+            sb.append('(');
+            for (int i = 0; i < columns.length; i++) sb.append(i == 0 ? "?" : ",?");
+            sb.append(')');
+        }
+        return sb;
+    }
+
+    static boolean contains(String[] array, String s) {
+        for (String a : array) if (a.equals(s)) return true;
+        return false;
+    }
+}
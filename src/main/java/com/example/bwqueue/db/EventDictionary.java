@@ -0,0 +1,92 @@
+package com.example.bwqueue.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Interns player UUIDs and material names into small integer ids ({@code event_players},
+ * {@code event_materials}), so an event row holds a few integers instead of ~100 bytes of text.
+ *
+ * Used only from database work on the writer connection. Ids handed out inside a transaction that is
+ * then rolled back are forgotten again via {@link #rollback}.
+ */
+public final class EventDictionary {
+
+    private final Map<UUID, Integer> players = new HashMap<>();
+    private final Map<String, Integer> materials = new HashMap<>();
+    private final List<Object> added = new ArrayList<>();
+
+    /**
+     * Id for the player, inserting it if new. Null in, null out.
+     */
+    public Integer playerId(Sql sql, UUID uuid) throws SQLException {
+        if (uuid == null) return null;
+        Integer id = players.get(uuid);
+        if (id == null) {
+            id = intern(sql, "event_players", "uuid", uuid.toString());
+            players.put(uuid, id);
+            added.add(uuid);
+        }
+        return id;
+    }
+
+    /**
+     * Id for the material name, inserting it if new. Null in, null out.
+     */
+    public Integer materialId(Sql sql, String material) throws SQLException {
+        if (material == null) return null;
+        Integer id = materials.get(material);
+        if (id == null) {
+            id = intern(sql, "event_materials", "name", material);
+            materials.put(material, id);
+            added.add(material);
+        }
+        return id;
+    }
+
+    // Select first: another server sharing the database may have added it already
+    private static int intern(Sql sql, String table, String column, String value) throws SQLException {
+        PreparedStatement select = sql.prepare("SELECT id FROM " + table + " WHERE " + column + "=?");
+        select.setString(1, value);
+        try (ResultSet rs = select.executeQuery()) {
+            if (rs.next()) return rs.getInt(1);
+        }
+        PreparedStatement insert = sql.prepareReturningKeys("INSERT INTO " + table + "(" + column + ") VALUES(?)");
+        insert.setString(1, value);
+        insert.executeUpdate();
+        try (ResultSet rs = insert.getGeneratedKeys()) {
+            if (rs.next()) return rs.getInt(1);
+        }
+        throw new SQLException("No id generated for " + table + " " + value);
+    }
+
+    static void setId(PreparedStatement ps, int index, Integer id) throws SQLException {
+        if (id == null) ps.setNull(index, Types.INTEGER);
+        else ps.setInt(index, id);
+    }
+
+    /**
+     * The ids handed out since the last call are now committed.
+     */
+    public void commit() {
+        added.clear();
+    }
+
+    /**
+     * The ids handed out since the last commit were rolled back; look them up again next time.
+     */
+    public void rollback() {
+        for (Object o : added) {
+            if (o instanceof UUID) players.remove(o);
+            else materials.remove(o);
+        }
+        added.clear();
+    }
+}
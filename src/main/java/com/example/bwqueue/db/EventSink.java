@@ -0,0 +1,35 @@
+package com.example.bwqueue.db;
+
+import java.util.UUID;
+
+/**
+ * Where the listeners send raw gameplay events: the database ({@link EventWriter}) or the segment files
+ * of {@link com.example.bwqueue.eventlog.SegmentEventLog}, chosen by {@code storage.events.sink}.
+ *
+ * {@link #record} is called on the server thread and must never block on I/O.
+ */
+public interface EventSink {
+
+    /**
+     * Records one event; returns false if it was dropped.
+     *
+     * @param player   acting player, or null (e.g. a death without a killer)
+     * @param target   other player involved (the victim of a kill), or null
+     * @param material material name (Material.name()), or null
+     */
+    boolean record(long sessionId, EventType type, UUID player, UUID target, String material, int amount, long ts);
+
+    /** Events accepted but not yet written out. */
+    long getPending();
+
+    long getWritten();
+
+    long getDropped();
+
+    long getFailed();
+
+    /**
+     * Writes out whatever is still buffered and stops accepting events.
+     */
+    void shutdown();
+}
@@ -0,0 +1,46 @@
+package com.example.bwqueue.db;
+
+/**
+ * Gameplay event kinds, stored by {@link #getCode()} in {@code events.type}. Codes are persisted; never
+ * renumber or reuse one.
+ */
+public enum EventType {
+    UNKNOWN(0),
+    BLOCK_PLACE(1),
+    BLOCK_BREAK(2),
+    PICKUP(3),
+    KILL(4);
+
+    private static final EventType[] BY_CODE;
+
+    static {
+        int max = 0;
+        for (EventType t : values()) max = Math.max(max, t.code);
+        BY_CODE = new EventType[max + 1];
+        for (EventType t : values()) BY_CODE[t.code] = t;
+    }
+
+    private final int code;
+
+    EventType(int code) {
+        this.code = code;
+    }
+
+    public int getCode() { return code; }
+
+    public static EventType fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length && BY_CODE[code] != null ? BY_CODE[code] : UNKNOWN;
+    }
+
+    /**
+     * Type for a name from the old text layout.
+     */
+    public static EventType fromName(String name) {
+        if (name == null) return UNKNOWN;
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return UNKNOWN;
+        }
+    }
+}
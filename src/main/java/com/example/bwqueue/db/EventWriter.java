@@ -0,0 +1,222 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind buffer for gameplay events, so the listeners never touch the database on the main thread.
+ *
+ * Events go into a preallocated ring (bounded multi-producer, single-consumer; each slot carries a sequence
+ * number, producers claim slots with one CAS) and a dedicated thread drains it into multi-row INSERTs, one
+ * database transaction per flush, every {@code flushMillis} or as soon as {@code batchSize} events are waiting.
+ *
+ * When the ring is full the configured overflow policy applies: "drop" discards the event and counts it,
+ * "block" makes the producer wait for the writer. {@link #shutdown} writes out whatever is still buffered.
+ */
+public class EventWriter implements EventSink {
+
+    public enum Overflow { DROP, BLOCK }
+
+    // SQLite binds at most 999 parameters per statement by default (7 per row). Chunks are powers of two
+    // so the writer connection only ever caches a handful of distinct INSERTs
+    private static final int MAX_ROWS_PER_INSERT = 128;
+    private static final String[] INSERT_SQL = new String[MAX_ROWS_PER_INSERT + 1];
+    private static final String[] COLUMNS = {"session_id", "type", "player_id", "target_id", "material_id", "amount", "ts"};
+
+    private final Database db;
+    private final Logger log;
+    private final int capacity;
+    private final int mask;
+    private final int batchSize;
+    private final long flushNanos;
+    private final Overflow overflow;
+
+    // Ring slots; a slot is free for position p when its sequence is p, readable when it is p + 1
+    private final AtomicLongArray sequence;
+    private final long[] sessionIds;
+    private final int[] types;
+    private final UUID[] players;
+    private final UUID[] targets;
+    private final String[] materials;
+    private final int[] amounts;
+    private final long[] timestamps;
+    // Player and material ids; used inside the flush's database work only
+    private final EventDictionary dictionary = new EventDictionary();
+    private final AtomicLong tail = new AtomicLong(); // next position to claim
+    private volatile long head;                        // next position the writer reads; writer thread only
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long lastFlushMillis;
+
+    public EventWriter(Database db, PluginConfig config, Logger log) {
+        this.db = db;
+        this.log = log;
+        int size = 1;
+        while (size < Math.max(2, config.getEventBufferSize())) size <<= 1;
+        this.capacity = size;
+        this.mask = size - 1;
+        this.batchSize = Math.max(1, Math.min(config.getEventBatchSize(), size));
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, config.getEventFlushMillis()));
+        this.overflow = "block".equalsIgnoreCase(config.getEventOverflow()) ? Overflow.BLOCK : Overflow.DROP;
+
+        this.sequence = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequence.set(i, i);
+        this.sessionIds = new long[size];
+        this.types = new int[size];
+        this.players = new UUID[size];
+        this.targets = new UUID[size];
+        this.materials = new String[size];
+        this.amounts = new int[size];
+        this.timestamps = new long[size];
+
+        this.writer = new Thread(this::run, "BWQueue-EventWriter");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues one event. Never touches the database or allocates; returns false if the event was dropped.
+     */
+    @Override
+    public boolean record(long sessionId, EventType type, UUID player, UUID target, String material, int amount, long ts) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        long pos;
+        while (true) {
+            pos = tail.get();
+            int slot = (int) (pos & mask);
+            long seq = sequence.get(slot);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (seq < pos) {
+                // Full: the writer has not freed this slot from the previous lap yet
+                if (overflow == Overflow.DROP) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                LockSupport.unpark(writer);
+                LockSupport.parkNanos(50_000L);
+            }
+            // seq > pos: another producer claimed it first; retry with the new tail
+        }
+        int slot = (int) (pos & mask);
+        sessionIds[slot] = sessionId;
+        types[slot] = type.getCode();
+        players[slot] = player;
+        targets[slot] = target;
+        materials[slot] = material;
+        amounts[slot] = amount;
+        timestamps[slot] = ts;
+        sequence.set(slot, pos + 1); // publish
+        if (((pos + 1) % batchSize) == 0) LockSupport.unpark(writer);
+        return true;
+    }
+
+    private void run() {
+        long lastFlush = System.nanoTime();
+        while (running) {
+            long waiting = tail.get() - head;
+            long now = System.nanoTime();
+            if (waiting >= batchSize || (waiting > 0 && now - lastFlush >= flushNanos)) {
+                flush();
+                lastFlush = System.nanoTime();
+            } else {
+                LockSupport.parkNanos(waiting > 0 ? flushNanos - (now - lastFlush) : flushNanos);
+            }
+        }
+        flush();
+    }
+
+    // Writer thread only: writes everything published so far in one transaction
+    private void flush() {
+        final long from = head;
+        long end = from;
+        while (end - from < capacity && sequence.get((int) (end & mask)) == end + 1) end++;
+        final long to = end;
+        final int count = (int) (to - from);
+        if (count == 0) return;
+
+        try {
+            db.writeAndWait(sql -> {
+                long pos = from;
+                while (pos < to) {
+                    int rows = Integer.highestOneBit((int) Math.min(MAX_ROWS_PER_INSERT, to - pos));
+                    PreparedStatement ps = sql.prepare(insertSql(rows));
+                    int p = 1;
+                    for (int r = 0; r < rows; r++, pos++) {
+                        int slot = (int) (pos & mask);
+                        ps.setLong(p++, sessionIds[slot]);
+                        ps.setInt(p++, types[slot]);
+                        EventDictionary.setId(ps, p++, dictionary.playerId(sql, players[slot]));
+                        EventDictionary.setId(ps, p++, dictionary.playerId(sql, targets[slot]));
+                        EventDictionary.setId(ps, p++, dictionary.materialId(sql, materials[slot]));
+                        ps.setInt(p++, amounts[slot]);
+                        ps.setLong(p++, timestamps[slot]);
+                    }
+                    ps.executeUpdate();
+                }
+                return count;
+            });
+            dictionary.commit();
+            written.addAndGet(count);
+        } catch (SQLException e) {
+            dictionary.rollback();
+            failed.addAndGet(count);
+            log.warning("[BWQueue] Failed to write " + count + " events: " + e.getMessage());
+        }
+
+        // Free the slots whether or not the write succeeded; a broken database must not stall the game
+        for (long pos = from; pos < to; pos++) {
+            int slot = (int) (pos & mask);
+            players[slot] = null;
+            targets[slot] = null;
+            materials[slot] = null;
+            sequence.set(slot, pos + capacity);
+        }
+        head = to;
+        lastFlushMillis = System.currentTimeMillis();
+    }
+
+    private static String insertSql(int rows) {
+        String cached = INSERT_SQL[rows];
+        if (cached != null) return cached;
+        return INSERT_SQL[rows] = Dialect.insert("events", COLUMNS, rows).toString();
+    }
+
+    /**
+     * Stops the writer after it has written out everything still buffered. Call before closing the database.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) log.warning("[BWQueue] Event writer did not finish flushing; " + getPending() + " events lost");
+    }
+
+    public int getCapacity() { return capacity; }
+    public long getPending() { return tail.get() - head; }
+    public long getWritten() { return written.get(); }
+    public long getDropped() { return dropped.get(); }
+    public long getFailed() { return failed.get(); }
+    public long getLastFlushMillis() { return lastFlushMillis; }
+}
@@ -0,0 +1,311 @@
+package com.example.bwqueue.db;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Ordered schema migrations, tracked in {@code schema_version}.
+ *
+ * Each migration runs in its own transaction together with the row recording it, so a failed migration
+ * leaves the schema at the previous version. An up-to-date database costs one query at startup.
+ * New migrations are appended with the next version number; released ones are never edited.
+ *
+ * DDL goes through {@link Dialect#ddl} so one migration serves every backend. MySQL commits DDL
+ * implicitly, so there a failed migration may leave part of its work behind; migrations are written to
+ * be re-runnable (IF NOT EXISTS, column and index checks) for that reason.
+ */
+public final class Migrations {
+
+    interface Step {
+        void apply(Connection c, Dialect d) throws SQLException;
+    }
+
+    static final class Migration {
+        final int version;
+        final String description;
+        final Step step;
+        Migration(int version, String description, Step step) {
+            this.version = version; this.description = description; this.step = step;
+        }
+    }
+
+    private static final List<Migration> ALL;
+
+    static {
+        List<Migration> m = new ArrayList<>();
+        // Databases from before versioning already have some or all of this, hence IF NOT EXISTS throughout
+        m.add(new Migration(1, "base tables", (c, d) -> {
+            try (Statement st = c.createStatement()) {
+                st.execute(d.ddl("CREATE TABLE IF NOT EXISTS users (" +
+                        "discord_id {key} PRIMARY KEY, " +
+                        "uuid {key}, " +
+                        "name {key}, " +
+                        "linked_at {long}" +
+                        ")"));
+                if (!hasColumn(c, "users", "elo")) st.execute("ALTER TABLE users ADD COLUMN elo INTEGER DEFAULT 0");
+
+                st.execute(d.ddl("CREATE TABLE IF NOT EXISTS sessions (" +
+                        "id {id}, " +
+                        "arena {key}, " +
+                        "group_name {key}, " +
+                        "started_at {long}, " +
+                        "ended_at {long}, " +
+                        "winner_team {key}" +
+                        ")"));
+
+                st.execute(d.ddl("CREATE TABLE IF NOT EXISTS session_players (" +
+                        "session_id {long}, " +
+                        "uuid {key}, " +
+                        "name {key}, " +
+                        "team {key}, " +
+                        "stats_json TEXT, " +
+                        "PRIMARY KEY(session_id, uuid)" +
+                        ")"));
+
+                st.execute(d.ddl("CREATE TABLE IF NOT EXISTS events (" +
+                        "id {id}, " +
+                        "session_id {long}, " +
+                        "type {key}, " +
+                        "player_uuid {key}, " +
+                        "value TEXT, " +
+                        "ts {long}" +
+                        ")"));
+            }
+        }));
+        m.add(new Migration(2, "indexes for link lookups and stats queries", (c, d) -> {
+            createIndex(c, "idx_users_uuid", "users", "uuid");
+            createIndex(c, "idx_events_session", "events", "session_id");
+            createIndex(c, "idx_events_player_type", "events", "player_uuid, type");
+            createIndex(c, "idx_session_players_uuid", "session_players", "uuid");
+        }));
+        m.add(new Migration(3, "compact event encoding", Migrations::compactEvents));
+        // Missing player/target/material are stored as 0 so the key columns stay NOT NULL everywhere
+        m.add(new Migration(4, "per-session event rollups", (c, d) -> {
+            try (Statement st = c.createStatement()) {
+                st.execute(d.ddl("CREATE TABLE IF NOT EXISTS event_rollups (" +
+                        "session_id {long} NOT NULL, " +
+                        "type INTEGER NOT NULL, " +
+                        "player_id INTEGER NOT NULL, " +
+                        "target_id INTEGER NOT NULL, " +
+                        "material_id INTEGER NOT NULL, " +
+                        "events INTEGER, " +
+                        "amount {long}, " +
+                        "PRIMARY KEY(session_id, type, player_id, target_id, material_id)" +
+                        ")"));
+            }
+        }));
+        // A row per game whose ratings have been applied; settling the same game twice is a no-op
+        m.add(new Migration(5, "rating settlements", (c, d) -> {
+            try (Statement st = c.createStatement()) {
+                st.execute(d.ddl("CREATE TABLE IF NOT EXISTS elo_settlements (" +
+                        "session_id {long} NOT NULL PRIMARY KEY, " +
+                        "players INTEGER, " +
+                        "settled_at {long}" +
+                        ")"));
+            }
+        }));
+        // Games that never got going are closed with failed=1 and no winner, so they do not look like running games
+        m.add(new Migration(6, "failed session marker", (c, d) -> {
+            if (hasColumn(c, "sessions", "failed")) return;
+            try (Statement st = c.createStatement()) {
+                st.execute("ALTER TABLE sessions ADD COLUMN failed INTEGER DEFAULT 0");
+            }
+        }));
+        ALL = Collections.unmodifiableList(m);
+    }
+
+    private Migrations() {}
+
+    public static int latestVersion() {
+        return ALL.get(ALL.size() - 1).version;
+    }
+
+    /**
+     * Brings the schema up to the latest version. Returns the number of migrations applied.
+     */
+    static int migrate(Connection c, Dialect dialect, Logger log) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version INTEGER PRIMARY KEY, " +
+                    "description TEXT, " +
+                    "applied_at INTEGER" +
+                    ")");
+        }
+        int current = currentVersion(c);
+        if (current >= latestVersion()) return 0;
+
+        int applied = 0;
+        boolean auto = c.getAutoCommit();
+        c.setAutoCommit(false);
+        try {
+            for (Migration m : ALL) {
+                if (m.version <= current) continue;
+                long start = System.currentTimeMillis();
+                try {
+                    m.step.apply(c, dialect);
+                    try (PreparedStatement ps = c.prepareStatement("INSERT INTO schema_version(version, description, applied_at) VALUES(?,?,?)")) {
+                        ps.setInt(1, m.version);
+                        ps.setString(2, m.description);
+                        ps.setLong(3, System.currentTimeMillis() / 1000L);
+                        ps.executeUpdate();
+                    }
+                    c.commit();
+                } catch (SQLException e) {
+                    c.rollback();
+                    throw new SQLException("Schema migration " + m.version + " (" + m.description + ") failed: " + e.getMessage(), e);
+                }
+                applied++;
+                log.info("[BWQueue] Applied schema migration " + m.version + ": " + m.description
+                        + " (" + (System.currentTimeMillis() - start) + "ms)");
+            }
+        } finally {
+            c.setAutoCommit(auto);
+        }
+        return applied;
+    }
+
+    // Text events (type name, uuid string, "IRON_INGOT:4" / "victim=<uuid>") become integer columns, with
+    // players and materials interned in their own tables. Existing rows are converted in id order.
+    private static void compactEvents(Connection c, Dialect d) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            st.execute(d.ddl("CREATE TABLE IF NOT EXISTS event_players (id {id}, uuid {key} NOT NULL UNIQUE)"));
+            st.execute(d.ddl("CREATE TABLE IF NOT EXISTS event_materials (id {id}, name {key} NOT NULL UNIQUE)"));
+            if (hasColumn(c, "events", "player_id")) return; // converted by an earlier, partly recorded run
+            st.execute("DROP TABLE IF EXISTS events_compact");
+            st.execute(d.ddl("CREATE TABLE events_compact (" +
+                    "id {id}, " +
+                    "session_id {long}, " +
+                    "type INTEGER, " +
+                    "player_id INTEGER, " +
+                    "target_id INTEGER, " +
+                    "material_id INTEGER, " +
+                    "amount INTEGER, " +
+                    "ts {long}" +
+                    ")"));
+        }
+
+        Sql sql = new Sql(c, 8);
+        EventDictionary dictionary = new EventDictionary();
+        try {
+            PreparedStatement select = sql.prepare("SELECT id, session_id, type, player_uuid, value, ts FROM events WHERE id > ? ORDER BY id LIMIT 5000");
+            PreparedStatement insert = sql.prepare("INSERT INTO events_compact(session_id, type, player_id, target_id, material_id, amount, ts) VALUES(?,?,?,?,?,?,?)");
+            long lastId = 0;
+            while (true) {
+                List<Object[]> rows = new ArrayList<>();
+                select.setLong(1, lastId);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new Object[]{rs.getLong(1), rs.getLong(2), rs.getString(3), rs.getString(4), rs.getString(5), rs.getLong(6)});
+                    }
+                }
+                if (rows.isEmpty()) break;
+                for (Object[] row : rows) {
+                    lastId = (Long) row[0];
+                    EventType type = EventType.fromName((String) row[2]);
+                    String value = (String) row[4];
+                    UUID target = null;
+                    String material = null;
+                    int amount = 1;
+                    if (type == EventType.KILL) {
+                        target = value != null && value.startsWith("victim=") ? parseUuid(value.substring(7)) : null;
+                    } else if (type == EventType.PICKUP && value != null) {
+                        int colon = value.lastIndexOf(':');
+                        material = colon < 0 ? value : value.substring(0, colon);
+                        amount = colon < 0 ? 1 : parseInt(value.substring(colon + 1));
+                    } else if (type == EventType.UNKNOWN) {
+                        amount = 0;
+                    } else {
+                        material = value;
+                    }
+                    insert.setLong(1, (Long) row[1]);
+                    insert.setInt(2, type.getCode());
+                    EventDictionary.setId(insert, 3, dictionary.playerId(sql, parseUuid((String) row[3])));
+                    EventDictionary.setId(insert, 4, dictionary.playerId(sql, target));
+                    EventDictionary.setId(insert, 5, dictionary.materialId(sql, material));
+                    insert.setInt(6, amount);
+                    insert.setLong(7, (Long) row[5]);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+        } finally {
+            sql.releaseStatements();
+        }
+
+        try (Statement st = c.createStatement()) {
+            st.execute("DROP TABLE events");
+            st.execute("ALTER TABLE events_compact RENAME TO events");
+        }
+        createIndex(c, "idx_events_session", "events", "session_id");
+        createIndex(c, "idx_events_player_type", "events", "player_id, type");
+    }
+
+    private static UUID parseUuid(String s) {
+        if (s == null || s.isEmpty()) return null;
+        try {
+            return UUID.fromString(s);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    static int currentVersion(Connection c) throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    static boolean hasColumn(Connection c, String table, String column) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        // Unquoted identifiers are folded to upper case by some backends and lower case by others
+        for (String t : new String[]{table, table.toUpperCase(), table.toLowerCase()}) {
+            try (ResultSet rs = md.getColumns(c.getCatalog(), null, t, null)) {
+                boolean any = false;
+                while (rs.next()) {
+                    any = true;
+                    if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) return true;
+                }
+                if (any) return false;
+            }
+        }
+        return false;
+    }
+
+    static boolean hasIndex(Connection c, String table, String index) throws SQLException {
+        DatabaseMetaData md = c.getMetaData();
+        for (String t : new String[]{table, table.toUpperCase(), table.toLowerCase()}) {
+            try (ResultSet rs = md.getIndexInfo(c.getCatalog(), null, t, false, true)) {
+                while (rs.next()) {
+                    if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS
+    static void createIndex(Connection c, String name, String table, String columns) throws SQLException {
+        if (hasIndex(c, table, name)) return;
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE INDEX " + name + " ON " + table + "(" + columns + ")");
+        }
+    }
+}
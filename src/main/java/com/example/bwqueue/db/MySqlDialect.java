@@ -0,0 +1,55 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+
+import java.util.Properties;
+
+/**
+ * MySQL and MariaDB. Same SQL; only the driver differs.
+ */
+class MySqlDialect extends Dialect {
+
+    private final boolean mariadb;
+
+    MySqlDialect(boolean mariadb) {
+        this.mariadb = mariadb;
+    }
+
+    @Override public String getName() { return mariadb ? "mariadb" : "mysql"; }
+    @Override String driverClass() { return mariadb ? "org.mariadb.jdbc.Driver" : "com.mysql.cj.jdbc.Driver"; }
+
+    @Override
+    String jdbcUrl(PluginConfig config) {
+        int port = config.getStoragePort() > 0 ? config.getStoragePort() : 3306;
+        String url = "jdbc:" + getName() + "://" + config.getStorageHost() + ":" + port + "/" + config.getStorageDatabase();
+        return config.getStorageParams().isEmpty() ? url : url + "?" + config.getStorageParams();
+    }
+
+    @Override
+    Properties connectionProperties(PluginConfig config, boolean readOnly) {
+        Properties p = super.connectionProperties(config, readOnly);
+        // Multi-row inserts are already batched; let the driver cache statements server-side as well
+        p.setProperty("useServerPrepStmts", "true");
+        p.setProperty("cachePrepStmts", "true");
+        p.setProperty("characterEncoding", "UTF-8");
+        return p;
+    }
+
+    @Override String autoIncrementPrimaryKey() { return "BIGINT AUTO_INCREMENT PRIMARY KEY"; }
+
+    @Override public int maxBindParameters() { return 65535; }
+
+    @Override
+    public String upsert(String table, String[] keys, String[] columns, int rows) {
+        StringBuilder sb = insert(table, columns, rows);
+        sb.append(" ON DUPLICATE KEY UPDATE ");
+        boolean first = true;
+        for (String col : columns) {
+            if (contains(keys, col)) continue;
+            if (!first) sb.append(", ");
+            sb.append(col).append("=VALUES(").append(col).append(')');
+            first = false;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+
+import java.util.Properties;
+
+/**
+ * PostgreSQL. Upserts use the same ON CONFLICT ... excluded form as SQLite.
+ */
+class PostgresDialect extends Dialect {
+
+    @Override public String getName() { return "postgresql"; }
+    @Override String driverClass() { return "org.postgresql.Driver"; }
+
+    @Override
+    String jdbcUrl(PluginConfig config) {
+        int port = config.getStoragePort() > 0 ? config.getStoragePort() : 5432;
+        String url = "jdbc:postgresql://" + config.getStorageHost() + ":" + port + "/" + config.getStorageDatabase();
+        return config.getStorageParams().isEmpty() ? url : url + "?" + config.getStorageParams();
+    }
+
+    @Override
+    Properties connectionProperties(PluginConfig config, boolean readOnly) {
+        Properties p = super.connectionProperties(config, readOnly);
+        // Server-side prepare on the first execution; statements are reused through Sql anyway
+        p.setProperty("prepareThreshold", "1");
+        p.setProperty("reWriteBatchedInserts", "true");
+        return p;
+    }
+
+    @Override String autoIncrementPrimaryKey() { return "BIGSERIAL PRIMARY KEY"; }
+}
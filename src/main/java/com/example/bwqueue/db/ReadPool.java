@@ -0,0 +1,208 @@
+package com.example.bwqueue.db;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The read-only connections behind {@link Database#read}, sized and aged the way HikariCP does it.
+ *
+ * Connections are opened on demand up to {@code maxSize}. Idle ones above {@code minIdle} are closed
+ * after {@code idleTimeout}, and every connection is retired once it is older than {@code maxLifetime},
+ * so a networked server's own connection timeout never closes one under us. A connection that sat idle
+ * is validated before it is handed out. There is no housekeeping thread: all of this happens as
+ * connections are borrowed and returned.
+ *
+ * A read holding its connection longer than {@code leakDetection} is logged when it returns it; a
+ * borrower that times out waiting logs who holds every connection and where they are stuck.
+ */
+final class ReadPool {
+
+    interface Opener {
+        Sql open() throws SQLException;
+    }
+
+    private static final class Borrow {
+        final Thread thread;
+        final long sinceNanos = System.nanoTime();
+        Borrow(Thread thread) { this.thread = thread; }
+    }
+
+    private final Opener opener;
+    private final Logger log;
+    private final int maxSize;
+    private final int minIdle;
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;     // 0 = unlimited
+    private final long validateAfterMillis;   // < 0 = never
+    private final long timeoutMillis;
+    private final long leakDetectionMillis;   // 0 = off
+
+    // All guarded by this; the most recently returned connection is at the tail
+    private final ArrayDeque<Sql> idle = new ArrayDeque<>();
+    private final Map<Sql, Borrow> inUse = new IdentityHashMap<>();
+    private int opening;
+    private boolean closed;
+    private long opened;
+    private long retired;
+
+    ReadPool(Opener opener, Logger log, int maxSize, int minIdle, long idleTimeoutMillis, long maxLifetimeMillis,
+             long validateAfterMillis, long timeoutMillis, long leakDetectionMillis) {
+        this.opener = opener;
+        this.log = log;
+        this.maxSize = Math.max(1, maxSize);
+        this.minIdle = Math.max(0, Math.min(minIdle, this.maxSize));
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxLifetimeMillis = maxLifetimeMillis;
+        this.validateAfterMillis = validateAfterMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.leakDetectionMillis = leakDetectionMillis;
+    }
+
+    /**
+     * Opens {@code minIdle} connections up front, so a bad configuration fails at startup.
+     */
+    void fill() throws SQLException {
+        for (int i = 0; i < minIdle; i++) {
+            Sql sql = opener.open();
+            synchronized (this) {
+                opened++;
+                idle.addLast(sql);
+            }
+        }
+    }
+
+    Sql borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            Sql sql;
+            boolean open = false;
+            List<Sql> stale = new ArrayList<>();
+            synchronized (this) {
+                if (closed) throw new SQLException("Database is closed");
+                evict(stale);
+                sql = idle.pollLast();
+                if (sql == null && inUse.size() + idle.size() + opening < maxSize) {
+                    opening++;
+                    open = true;
+                } else if (sql == null) {
+                    long waitNanos = deadline - System.nanoTime();
+                    if (waitNanos <= 0) throw timedOut();
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted waiting for a database connection", e);
+                    }
+                    continue;
+                }
+            }
+            for (Sql s : stale) s.close();
+            if (open) {
+                try {
+                    sql = opener.open();
+                } finally {
+                    synchronized (this) {
+                        opening--;
+                        if (sql != null) opened++;
+                        notifyAll();
+                    }
+                }
+            } else if (!isUsable(sql)) {
+                log.info("[BWQueue] Reopening stale read connection");
+                retire(sql);
+                continue;
+            }
+            synchronized (this) {
+                inUse.put(sql, new Borrow(Thread.currentThread()));
+            }
+            return sql;
+        }
+    }
+
+    void giveBack(Sql sql) {
+        sql.touch();
+        Borrow b;
+        boolean keep;
+        synchronized (this) {
+            b = inUse.remove(sql);
+            keep = !closed && !isExpired(sql);
+            if (keep) idle.addLast(sql);
+            notifyAll();
+        }
+        if (!keep) retire(sql);
+        if (b != null && leakDetectionMillis > 0) {
+            long held = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - b.sinceNanos);
+            if (held > leakDetectionMillis) log.warning("[BWQueue] A read held its database connection for " + held + " ms");
+        }
+    }
+
+    void close() {
+        List<Sql> all;
+        synchronized (this) {
+            closed = true;
+            all = new ArrayList<>(idle);
+            idle.clear();
+            notifyAll();
+        }
+        // Connections still in use are closed as they come back
+        for (Sql s : all) s.close();
+    }
+
+    // Caller holds the lock. Takes out idle connections that are too old, or idle too long above minIdle
+    private void evict(List<Sql> out) {
+        Iterator<Sql> it = idle.iterator(); // oldest returned first
+        while (it.hasNext()) {
+            Sql s = it.next();
+            boolean surplus = idle.size() + inUse.size() > minIdle && s.idleMillis() > idleTimeoutMillis;
+            if (surplus || isExpired(s)) {
+                it.remove();
+                out.add(s);
+                retired++;
+            }
+        }
+    }
+
+    private boolean isExpired(Sql sql) {
+        return maxLifetimeMillis > 0 && sql.ageMillis() > maxLifetimeMillis;
+    }
+
+    private boolean isUsable(Sql sql) {
+        if (validateAfterMillis < 0 || sql.idleMillis() < validateAfterMillis) return true;
+        try {
+            return sql.connection().isValid(2);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void retire(Sql sql) {
+        synchronized (this) { retired++; }
+        sql.close();
+    }
+
+    // Caller holds the lock
+    private SQLException timedOut() {
+        StringBuilder sb = new StringBuilder("[BWQueue] No free database connection after " + timeoutMillis + " ms; held by:");
+        long now = System.nanoTime();
+        for (Borrow b : inUse.values()) {
+            sb.append("\n  ").append(b.thread.getName()).append(" for ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(now - b.sinceNanos)).append(" ms");
+            StackTraceElement[] stack = b.thread.getStackTrace();
+            for (int i = 0; i < Math.min(stack.length, 8); i++) sb.append("\n      at ").append(stack[i]);
+        }
+        log.warning(sb.toString());
+        return new SQLException("No free database connection after " + timeoutMillis + " ms");
+    }
+
+    synchronized int getTotal() { return idle.size() + inUse.size(); }
+    synchronized int getIdle() { return idle.size(); }
+    synchronized long getOpened() { return opened; }
+    synchronized long getRetired() { return retired; }
+}
@@ -0,0 +1,265 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the events table bounded: raw events of games older than {@code maxAgeDays} are summed into
+ * {@code event_rollups} (one row per session, type, player, target and material) and then deleted.
+ *
+ * The job is a background citizen of the single writer. Every delete is a short transaction of at most
+ * {@code chunkSize} rows; between chunks it sleeps {@code pauseMillis} and then waits until no live write
+ * is queued, so game and event writes never sit behind it for more than one chunk. A session's rollup and
+ * its deletes are separate commands; the rollup is only written while the session has none, so a run
+ * interrupted halfway simply carries on deleting next time.
+ *
+ * On SQLite, when the server is quiet (no running games, no buffered events) it also hands freed pages
+ * back to the file system with {@code incremental_vacuum} and truncates the WAL with a checkpoint.
+ * Freeing pages needs incremental auto-vacuum; a database without it is only switched over (a full
+ * {@code VACUUM}, which holds up every write) when {@code convertAutoVacuum} is set.
+ */
+public class RetentionJob {
+
+    private static final long WAIT_MILLIS = 50L;
+
+    private final Database db;
+    private final Logger log;
+    private final BooleanSupplier quiet;
+    private final long maxAgeSeconds;
+    private final int intervalMinutes;
+    private final int chunkSize;
+    private final int pauseMillis;
+    private final int vacuumPages;
+    private final boolean convertAutoVacuum;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "BWQueue-Retention");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean running = true;
+    // Retention thread only
+    private boolean autoVacuumChecked;
+    private boolean incrementalVacuum;
+
+    private final AtomicLong rolledUpSessions = new AtomicLong();
+    private final AtomicLong deletedEvents = new AtomicLong();
+    private volatile long lastRunMillis;
+
+    /**
+     * @param quiet true while nothing latency-sensitive is going on; gates vacuum and checkpoints
+     */
+    public RetentionJob(Database db, PluginConfig config, Logger log, BooleanSupplier quiet) {
+        this.db = db;
+        this.log = log;
+        this.quiet = quiet;
+        this.maxAgeSeconds = TimeUnit.DAYS.toSeconds(config.getRetentionMaxAgeDays());
+        this.intervalMinutes = config.getRetentionIntervalMinutes();
+        this.chunkSize = config.getRetentionChunkSize();
+        this.pauseMillis = config.getRetentionPauseMillis();
+        this.vacuumPages = config.getRetentionVacuumPages();
+        this.convertAutoVacuum = config.isRetentionConvertAutoVacuum();
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::run, 1, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    private void run() {
+        try {
+            long cutoff = System.currentTimeMillis() / 1000L - maxAgeSeconds;
+            pruneSessions(cutoff);
+            pruneOrphans(cutoff);
+            if (running && db.getDialect().isEmbedded() && quiet.getAsBoolean()) compact();
+            lastRunMillis = System.currentTimeMillis();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warning("[BWQueue] Event retention failed: " + e.getMessage());
+        }
+    }
+
+    // Session ids grow with time, so everything up to the newest old session is a candidate; the few
+    // longer games still running at the cutoff are checked one by one
+    private void pruneSessions(long cutoff) throws SQLException, InterruptedException {
+        Long newest = db.read(sql -> {
+            PreparedStatement ps = sql.prepare("SELECT MAX(id) FROM sessions WHERE COALESCE(ended_at, started_at) < ?");
+            ps.setLong(1, cutoff);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? nullableLong(rs, 1) : null;
+            }
+        });
+        if (newest == null) return;
+
+        long after = 0;
+        while (running) {
+            final long from = after;
+            Long session = db.read(sql -> {
+                PreparedStatement ps = sql.prepare("SELECT MIN(session_id) FROM events WHERE session_id > ? AND session_id <= ?");
+                ps.setLong(1, from);
+                ps.setLong(2, newest);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? nullableLong(rs, 1) : null;
+                }
+            });
+            if (session == null) return;
+            after = session;
+            if (!isOld(session, cutoff)) continue;
+
+            throttle();
+            if (rollUp(session)) rolledUpSessions.incrementAndGet();
+            while (running && deleteChunk("session_id=?", session) > 0) throttle();
+        }
+    }
+
+    // Events recorded without a session (its row could not be written) have nothing to roll up into
+    private void pruneOrphans(long cutoff) throws SQLException, InterruptedException {
+        while (running && deleteChunk("(session_id IS NULL OR session_id <= 0) AND ts < ?", cutoff) > 0) throttle();
+    }
+
+    private boolean isOld(long session, long cutoff) throws SQLException {
+        return db.read(sql -> {
+            PreparedStatement ps = sql.prepare("SELECT COALESCE(ended_at, started_at) FROM sessions WHERE id=?");
+            ps.setLong(1, session);
+            try (ResultSet rs = ps.executeQuery()) {
+                // Events of a session whose row is gone are old by definition here (id below an old session)
+                if (!rs.next()) return true;
+                Long at = nullableLong(rs, 1);
+                return at == null || at < cutoff;
+            }
+        });
+    }
+
+    private boolean rollUp(long session) throws SQLException {
+        return db.writeAndWait(sql -> {
+            PreparedStatement done = sql.prepare("SELECT 1 FROM event_rollups WHERE session_id=? LIMIT 1");
+            done.setLong(1, session);
+            try (ResultSet rs = done.executeQuery()) {
+                if (rs.next()) return false;
+            }
+            PreparedStatement ps = sql.prepare("INSERT INTO event_rollups(session_id, type, player_id, target_id, material_id, events, amount) " +
+                    "SELECT session_id, COALESCE(type, 0), COALESCE(player_id, 0), COALESCE(target_id, 0), COALESCE(material_id, 0), COUNT(*), SUM(amount) " +
+                    "FROM events WHERE session_id=? " +
+                    "GROUP BY session_id, COALESCE(type, 0), COALESCE(player_id, 0), COALESCE(target_id, 0), COALESCE(material_id, 0)");
+            ps.setLong(1, session);
+            return ps.executeUpdate() > 0;
+        });
+    }
+
+    // Not every backend has DELETE ... LIMIT; find the chunk's last id first, then delete up to it
+    private int deleteChunk(String where, long param) throws SQLException {
+        String select = "SELECT id FROM events WHERE " + where + " ORDER BY id LIMIT " + chunkSize;
+        String delete = "DELETE FROM events WHERE " + where + " AND id <= ?";
+        int deleted = db.writeAndWait(sql -> {
+            PreparedStatement ps = sql.prepare(select);
+            ps.setLong(1, param);
+            long last = -1;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) last = rs.getLong(1);
+            }
+            if (last < 0) return 0;
+            PreparedStatement del = sql.prepare(delete);
+            del.setLong(1, param);
+            del.setLong(2, last);
+            return del.executeUpdate();
+        });
+        deletedEvents.addAndGet(deleted);
+        return deleted;
+    }
+
+    // Yields the writer to live traffic: a fixed pause, then as long as anything else is queued
+    private void throttle() throws InterruptedException {
+        if (pauseMillis > 0) Thread.sleep(pauseMillis);
+        while (running && db.getQueuedWrites() > 0) Thread.sleep(WAIT_MILLIS);
+    }
+
+    // SQLite only. Both statements refuse to run inside a transaction, hence maintenance()
+    private void compact() throws SQLException, InterruptedException {
+        boolean enableAutoVacuum = false;
+        if (!autoVacuumChecked && vacuumPages > 0) {
+            incrementalVacuum = incrementalAutoVacuum();
+            if (!incrementalVacuum && convertAutoVacuum) {
+                // Tried once per start, whatever the outcome
+                enableAutoVacuum = true;
+                incrementalVacuum = true;
+                log.info("[BWQueue] Switching the database to incremental auto-vacuum (one-time full VACUUM)");
+            } else if (!incrementalVacuum) {
+                log.info("[BWQueue] Database is not in incremental auto-vacuum mode, so storage.retention.vacuumPages has no effect;"
+                        + " set storage.retention.convertAutoVacuum to switch it over (one full VACUUM)");
+            }
+        }
+        autoVacuumChecked = true;
+        final boolean convert = enableAutoVacuum;
+        final boolean vacuum = vacuumPages > 0 && incrementalVacuum;
+        try {
+            db.maintenance(sql -> {
+                try (Statement st = sql.connection().createStatement()) {
+                    if (convert) {
+                        // Only takes effect through a full VACUUM
+                        st.execute("PRAGMA auto_vacuum=INCREMENTAL");
+                        st.execute("VACUUM");
+                    }
+                    if (vacuum) drain(st, "PRAGMA incremental_vacuum(" + vacuumPages + ")");
+                    drain(st, "PRAGMA wal_checkpoint(TRUNCATE)");
+                }
+                return null;
+            }).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException(cause);
+        }
+    }
+
+    private boolean incrementalAutoVacuum() throws SQLException {
+        return db.read(sql -> {
+            try (Statement st = sql.connection().createStatement();
+                 ResultSet rs = st.executeQuery("PRAGMA auto_vacuum")) {
+                return rs.next() && rs.getInt(1) == 2;
+            }
+        });
+    }
+
+    // A pragma that returns rows does its work only as far as it has been stepped
+    private static void drain(Statement st, String pragma) throws SQLException {
+        if (!st.execute(pragma)) return;
+        try (ResultSet rs = st.getResultSet()) {
+            while (rs.next()) {
+                // step to completion
+            }
+        }
+    }
+
+    private static Long nullableLong(ResultSet rs, int column) throws SQLException {
+        long v = rs.getLong(column);
+        return rs.wasNull() ? null : v;
+    }
+
+    /**
+     * Stops the job between two chunks. Call before the database and event writer shut down.
+     */
+    public void shutdown() {
+        running = false;
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getRolledUpSessions() { return rolledUpSessions.get(); }
+    public long getDeletedEvents() { return deletedEvents.get(); }
+    public long getLastRunMillis() { return lastRunMillis; }
+}
@@ -0,0 +1,104 @@
+package com.example.bwqueue.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One pooled connection together with its prepared statements, handed to database work.
+ *
+ * Statements from {@link #prepare} are cached per connection and reused across calls, so callers must not
+ * close them (result sets they open, they do close). A handle is only ever used by one thread at a time.
+ */
+public final class Sql {
+
+    /**
+     * Database work run against a handle: a read on a pooled reader, or a write on the writer thread.
+     */
+    public interface Work<T> {
+        T run(Sql sql) throws SQLException;
+    }
+
+    // Cache key prefix for statements prepared to return generated keys
+    private static final String KEYS = "keys\u0000";
+
+    private final Connection connection;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private final long openedAt = System.currentTimeMillis();
+    private long lastUsed = openedAt;
+
+    Sql(Connection connection, final int maxStatements) {
+        this.connection = connection;
+        this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= maxStatements) return false;
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Cached prepared statement for the SQL, parameters cleared. Do not close it.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(sql);
+        if (ps == null) {
+            ps = connection.prepareStatement(sql);
+            statements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+        }
+        return ps;
+    }
+
+    /**
+     * Like {@link #prepare}, for an INSERT whose generated keys are read back with
+     * {@link PreparedStatement#getGeneratedKeys()}.
+     */
+    public PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+        PreparedStatement ps = statements.get(KEYS + sql);
+        if (ps == null) {
+            ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            statements.put(KEYS + sql, ps);
+        } else {
+            ps.clearParameters();
+        }
+        return ps;
+    }
+
+    public Connection connection() { return connection; }
+
+    long idleMillis() { return System.currentTimeMillis() - lastUsed; }
+
+    long ageMillis() { return System.currentTimeMillis() - openedAt; }
+
+    void touch() { lastUsed = System.currentTimeMillis(); }
+
+    int cachedStatements() { return statements.size(); }
+
+    /**
+     * Closes the cached statements but leaves the connection open.
+     */
+    void releaseStatements() {
+        for (PreparedStatement ps : statements.values()) closeQuietly(ps);
+        statements.clear();
+    }
+
+    void close() {
+        releaseStatements();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {}
+    }
+
+    private static void closeQuietly(PreparedStatement ps) {
+        try {
+            ps.close();
+        } catch (SQLException ignored) {}
+    }
+}
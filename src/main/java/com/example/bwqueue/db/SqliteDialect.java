@@ -0,0 +1,55 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Local SQLite file, the default. Read-only connections are opened read-only at the file level.
+ */
+class SqliteDialect extends Dialect {
+
+    private static final int OPEN_READONLY = 0x00000001; // SQLITE_OPEN_READONLY
+
+    @Override public String getName() { return "sqlite"; }
+    @Override String driverClass() { return "org.sqlite.JDBC"; }
+    @Override String jdbcUrl(PluginConfig config) { return "jdbc:sqlite:" + config.getSqliteFile(); }
+    @Override boolean isEmbedded() { return true; }
+
+    @Override
+    Properties connectionProperties(PluginConfig config, boolean readOnly) {
+        Properties p = new Properties();
+        if (readOnly) p.setProperty("open_mode", String.valueOf(OPEN_READONLY));
+        p.setProperty("busy_timeout", "5000");
+        return p;
+    }
+
+    @Override
+    void configure(Connection c, PluginConfig config, boolean readOnly, boolean first) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            if (first) {
+                // Only takes effect on a new, empty file; existing ones are converted by RetentionJob on request
+                st.execute("PRAGMA auto_vacuum=INCREMENTAL");
+                // Persistent in the database file; readers opened afterwards see WAL mode too
+                st.execute("PRAGMA journal_mode=WAL");
+            }
+            st.execute("PRAGMA synchronous=" + config.getSqliteSynchronous());
+            st.execute("PRAGMA cache_size=-" + config.getSqliteCacheSizeKb()); // negative: KiB rather than pages
+            st.execute("PRAGMA mmap_size=" + config.getSqliteMmapSizeMb() * 1024L * 1024L);
+            st.execute("PRAGMA temp_store=MEMORY");
+        }
+    }
+
+    // INTEGER PRIMARY KEY is the rowid; the exact spelling matters
+    @Override String autoIncrementPrimaryKey() { return "INTEGER PRIMARY KEY AUTOINCREMENT"; }
+    @Override String keyType() { return "TEXT"; }
+    @Override String longType() { return "INTEGER"; }
+
+    @Override public int maxBindParameters() { return 999; }
+
+    // The multi-argument MAX is SQLite's scalar max
+    @Override public String greatest(String a, String b) { return "MAX(" + a + ", " + b + ")"; }
+}
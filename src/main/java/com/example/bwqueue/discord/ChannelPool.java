@@ -0,0 +1,340 @@
+package com.example.bwqueue.discord;
+
+import com.example.bwqueue.config.PluginConfig;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.PermissionOverride;
+import net.dv8tion.jda.api.entities.channel.attribute.IPermissionContainer;
+import net.dv8tion.jda.api.entities.channel.concrete.Category;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Warm game channel slots (text + Red VC + Green VC) under the configured games category.
+ *
+ * Games lease a slot instead of creating three channels and hand it back when they are done. A returned
+ * slot is reset (member permission overrides removed, messages purged, voice emptied) and kept for the
+ * next game rather than deleted. Slots left under the category by a previous run are adopted by name.
+ *
+ * Per guild the pool holds up to {@code size} slots, idle plus leased (by default {@code maxConcurrentGames}).
+ * When none is idle a slot is created on demand; extra slots are deleted again when they come back.
+ * Resets go through the RESET lane, which never rejects; a slot lost anyway (deleted by hand, or a reset
+ * that failed) is replaced in the background.
+ */
+public class ChannelPool {
+
+    private static final String PREFIX = "bw-slot-";
+
+    public static final class Slot {
+        private final int number;
+        private final TextChannel text;
+        private final VoiceChannel red;
+        private final VoiceChannel green;
+
+        private Slot(int number, TextChannel text, VoiceChannel red, VoiceChannel green) {
+            this.number = number; this.text = text; this.red = red; this.green = green;
+        }
+
+        public int getNumber() { return number; }
+        public TextChannel getText() { return text; }
+        public VoiceChannel getRed() { return red; }
+        public VoiceChannel getGreen() { return green; }
+    }
+
+    // One per guild; all fields guarded by the instance
+    private static final class GuildPool {
+        final Deque<Slot> idle = new ArrayDeque<>();
+        final Set<Integer> numbers = new HashSet<>();
+        int leased;
+        int creating;
+        Category category; // where slots are created, once known
+    }
+
+    private final PluginConfig config;
+    private final RestScheduler rest;
+    private final Logger log;
+    private final int size;
+    private final Map<String, GuildPool> pools = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ChannelPool(PluginConfig config, RestScheduler rest, Logger log) {
+        this.config = config;
+        this.rest = rest;
+        this.log = log;
+        this.size = config.getChannelPoolSize() < 0 ? config.getMaxConcurrentGames() : config.getChannelPoolSize();
+    }
+
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Adopts slots from a previous run found under the category, then creates the missing ones.
+     */
+    public void warm(Guild guild, Category category) {
+        if (!isEnabled()) return;
+        GuildPool pool = pool(guild);
+        synchronized (pool) { pool.category = category; }
+        Map<Integer, TextChannel> texts = new HashMap<>();
+        Map<Integer, VoiceChannel> reds = new HashMap<>();
+        Map<Integer, VoiceChannel> greens = new HashMap<>();
+        for (TextChannel t : category.getTextChannels()) {
+            int n = slotNumber(t.getName(), "-chat");
+            if (n > 0) texts.put(n, t);
+        }
+        for (VoiceChannel v : category.getVoiceChannels()) {
+            int n = slotNumber(v.getName(), "-red");
+            if (n > 0) reds.put(n, v);
+            n = slotNumber(v.getName(), "-green");
+            if (n > 0) greens.put(n, v);
+        }
+        List<Slot> adopted = new ArrayList<>();
+        for (Map.Entry<Integer, TextChannel> e : texts.entrySet()) {
+            VoiceChannel r = reds.get(e.getKey());
+            VoiceChannel g = greens.get(e.getKey());
+            if (r == null || g == null) continue;
+            adopted.add(new Slot(e.getKey(), e.getValue(), r, g));
+        }
+        synchronized (pool) {
+            for (Slot s : adopted) {
+                pool.numbers.add(s.number);
+                pool.creating++; // counted as on its way in while the reset runs
+            }
+        }
+        for (Slot s : adopted) {
+            reset(s).whenComplete((v, t) -> {
+                synchronized (pool) { pool.creating--; }
+                if (t != null) discard(pool, s, t);
+                else offer(pool, s);
+            });
+        }
+        log.info("[BWQueue] Channel pool for " + guild.getName() + ": adopted " + adopted.size() + " slot(s), target " + size);
+        fill(guild, category, pool);
+    }
+
+    /**
+     * A slot for a new game: a warm one if available, otherwise one created now.
+     */
+    public CompletableFuture<Slot> acquire(Guild guild, Category category) {
+        GuildPool pool = pool(guild);
+        synchronized (pool) { pool.category = category; }
+        while (true) {
+            Slot slot;
+            synchronized (pool) {
+                slot = pool.idle.pollFirst();
+                if (slot != null) pool.leased++;
+            }
+            if (slot == null) break;
+            if (exists(guild, slot)) {
+                hits.incrementAndGet();
+                fill(guild, category, pool);
+                return CompletableFuture.completedFuture(slot);
+            }
+            // Deleted by hand while idle; forget it and try the next one
+            synchronized (pool) {
+                pool.leased--;
+                pool.numbers.remove(slot.number);
+            }
+            destroy(slot);
+        }
+        misses.incrementAndGet();
+        int number;
+        synchronized (pool) {
+            number = nextNumber(pool);
+            pool.leased++;
+        }
+        // Slots lost while idle are replaced; this one is already counted as leased
+        fill(guild, category, pool);
+        return create(guild, category, number).whenComplete((s, t) -> {
+            if (t == null) return;
+            synchronized (pool) {
+                pool.leased--;
+                pool.numbers.remove(number);
+            }
+        });
+    }
+
+    /**
+     * Returns a slot once its game is over. It is reset and kept warm, or deleted if the pool is full.
+     */
+    public void release(Slot slot) {
+        GuildPool pool = pools.get(slot.text.getGuild().getId());
+        if (pool == null) {
+            destroy(slot);
+            return;
+        }
+        synchronized (pool) { pool.leased--; }
+        if (!exists(slot.text.getGuild(), slot)) {
+            synchronized (pool) { pool.numbers.remove(slot.number); }
+            destroy(slot);
+            refill(pool);
+            return;
+        }
+        synchronized (pool) { pool.creating++; }
+        reset(slot).whenComplete((v, t) -> {
+            synchronized (pool) { pool.creating--; }
+            if (t != null) discard(pool, slot, t);
+            else offer(pool, slot);
+        });
+    }
+
+    private void offer(GuildPool pool, Slot slot) {
+        boolean keep;
+        synchronized (pool) {
+            keep = pool.idle.size() + pool.leased < size;
+            if (keep) pool.idle.addLast(slot);
+            else pool.numbers.remove(slot.number);
+        }
+        if (!keep) destroy(slot);
+    }
+
+    private void discard(GuildPool pool, Slot slot, Throwable t) {
+        log.warning("[BWQueue] Could not reset channel slot " + slot.number + ", deleting it: " + t.getMessage());
+        synchronized (pool) { pool.numbers.remove(slot.number); }
+        destroy(slot);
+        refill(pool);
+    }
+
+    // Replaces lost slots, once the pool knows its category
+    private void refill(GuildPool pool) {
+        Category category;
+        synchronized (pool) { category = pool.category; }
+        if (category != null) fill(category.getGuild(), category, pool);
+    }
+
+    // Tops the guild up to `size` slots in the background
+    private void fill(Guild guild, Category category, GuildPool pool) {
+        List<Integer> numbers = new ArrayList<>();
+        synchronized (pool) {
+            int missing = size - pool.idle.size() - pool.leased - pool.creating;
+            for (int i = 0; i < missing; i++) numbers.add(nextNumber(pool));
+            pool.creating += numbers.size();
+        }
+        for (int n : numbers) {
+            create(guild, category, n).whenComplete((s, t) -> {
+                synchronized (pool) { pool.creating--; }
+                if (t != null) {
+                    log.warning("[BWQueue] Could not create channel slot " + n + ": " + t.getMessage());
+                    synchronized (pool) { pool.numbers.remove(n); }
+                } else {
+                    offer(pool, s);
+                }
+            });
+        }
+    }
+
+    private CompletableFuture<Slot> create(Guild guild, Category category, int number) {
+        CompletableFuture<TextChannel> t = rest.submit(RestScheduler.Lane.CHANNEL, guild.createTextChannel(PREFIX + number + "-chat", category));
+        CompletableFuture<VoiceChannel> r = rest.submit(RestScheduler.Lane.CHANNEL, guild.createVoiceChannel(PREFIX + number + "-red", category));
+        CompletableFuture<VoiceChannel> g = rest.submit(RestScheduler.Lane.CHANNEL, guild.createVoiceChannel(PREFIX + number + "-green", category));
+        return CompletableFuture.allOf(t, r, g)
+                .thenApply(v -> new Slot(number, t.join(), r.join(), g.join()))
+                .whenComplete((s, err) -> {
+                    if (err == null) return;
+                    // Don't leave half a slot behind
+                    t.thenAccept(rest::delete);
+                    r.thenAccept(rest::delete);
+                    g.thenAccept(rest::delete);
+                });
+    }
+
+    // Strips what a game left behind: per-member overrides, messages and anyone still in voice
+    private CompletableFuture<Void> reset(Slot slot) {
+        Guild guild = slot.text.getGuild();
+        List<CompletableFuture<?>> steps = new ArrayList<>();
+        clearMemberOverrides(slot.text, steps);
+        clearMemberOverrides(slot.red, steps);
+        clearMemberOverrides(slot.green, steps);
+        VoiceChannel waiting = config.getWaitingVoiceId().isEmpty() ? null : guild.getVoiceChannelById(config.getWaitingVoiceId());
+        for (VoiceChannel vc : new VoiceChannel[] { slot.red, slot.green }) {
+            for (Member m : vc.getMembers()) steps.add(rest.submit(RestScheduler.Lane.RESET, guild.moveVoiceMember(m, waiting)));
+        }
+        steps.add(purge(slot.text));
+        return CompletableFuture.allOf(steps.toArray(new CompletableFuture[0]));
+    }
+
+    // Deletes the channel's messages 100 at a time: bulk where Discord allows it (2+ messages, under two weeks old)
+    private CompletableFuture<Void> purge(TextChannel text) {
+        return rest.submit(RestScheduler.Lane.RESET, text.getHistory().retrievePast(100)).thenCompose(messages -> {
+            if (messages.isEmpty()) return CompletableFuture.completedFuture(null);
+            OffsetDateTime bulkCutoff = OffsetDateTime.now().minusDays(13);
+            List<Message> bulk = new ArrayList<>();
+            List<CompletableFuture<?>> deletes = new ArrayList<>();
+            for (Message m : messages) {
+                if (m.getTimeCreated().isAfter(bulkCutoff)) bulk.add(m);
+                else deletes.add(rest.submit(RestScheduler.Lane.RESET, "message:" + m.getId(), m.delete()));
+            }
+            if (bulk.size() == 1) deletes.add(rest.submit(RestScheduler.Lane.RESET, "message:" + bulk.get(0).getId(), bulk.get(0).delete()));
+            else if (bulk.size() > 1) deletes.add(rest.submit(RestScheduler.Lane.RESET, text.deleteMessages(bulk)));
+            CompletableFuture<Void> all = CompletableFuture.allOf(deletes.toArray(new CompletableFuture[0]));
+            return messages.size() < 100 ? all : all.thenCompose(v -> purge(text));
+        });
+    }
+
+    private void clearMemberOverrides(IPermissionContainer channel, List<CompletableFuture<?>> steps) {
+        for (PermissionOverride o : channel.getMemberPermissionOverrides()) {
+            steps.add(rest.submit(RestScheduler.Lane.RESET, o.delete()));
+        }
+    }
+
+    private void destroy(Slot slot) {
+        rest.delete(slot.text);
+        rest.delete(slot.red);
+        rest.delete(slot.green);
+    }
+
+    private static boolean exists(Guild guild, Slot slot) {
+        return guild.getTextChannelById(slot.text.getIdLong()) != null
+                && guild.getVoiceChannelById(slot.red.getIdLong()) != null
+                && guild.getVoiceChannelById(slot.green.getIdLong()) != null;
+    }
+
+    // Caller holds the pool lock
+    private static int nextNumber(GuildPool pool) {
+        int n = 1;
+        while (pool.numbers.contains(n)) n++;
+        pool.numbers.add(n);
+        return n;
+    }
+
+    private static int slotNumber(String name, String suffix) {
+        if (!name.startsWith(PREFIX) || !name.endsWith(suffix)) return -1;
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private GuildPool pool(Guild guild) {
+        return pools.computeIfAbsent(guild.getId(), k -> new GuildPool());
+    }
+
+    public int getIdleCount() {
+        int n = 0;
+        for (GuildPool p : pools.values()) {
+            synchronized (p) { n += p.idle.size(); }
+        }
+        return n;
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+}
@@ -2,11 +2,15 @@ package com.example.bwqueue.discord;
 
 import com.example.bwqueue.BWQueuePlugin;
 import com.example.bwqueue.config.PluginConfig;
+import com.example.bwqueue.elo.Leaderboard;
+import com.example.bwqueue.elo.RatingStore;
 import com.example.bwqueue.link.LinkingService;
+import com.example.bwqueue.presence.PresenceIndex;
 import com.example.bwqueue.queue.QueueManager;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.OnlineStatus;
+import net.dv8tion.jda.api.entities.GuildVoiceState;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.channel.attribute.IAgeRestrictedChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.Category;
@@ -19,26 +23,39 @@ import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.events.guild.voice.GuildVoiceUpdateEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.utils.ChunkingFilter;
 import net.dv8tion.jda.api.utils.MemberCachePolicy;
-import org.bukkit.Bukkit;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import org.jetbrains.annotations.NotNull;
 
 import javax.security.auth.login.LoginException;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 public class DiscordBot extends ListenerAdapter {
     private final PluginConfig config;
     private final LinkingService linkingService;
+    private final RatingStore ratings;
+    private final PresenceIndex presence;
     private JDA jda;
     private QueueManager queueManager;
+    private ChannelPool channelPool;
+    private final RestScheduler rest;
+    private final VoiceMoveService voiceMoves;
     private final Logger log = BWQueuePlugin.get().getLogger();
 
-    public DiscordBot(PluginConfig config, LinkingService linkingService) {
+    public DiscordBot(PluginConfig config, LinkingService linkingService, RatingStore ratings, PresenceIndex presence) {
         this.config = config;
         this.linkingService = linkingService;
+        this.ratings = ratings;
+        this.presence = presence;
+        this.rest = new RestScheduler(config, log);
+        this.voiceMoves = new VoiceMoveService(config, rest, log);
     }
 
     public void setQueueManager(QueueManager queueManager) {
@@ -56,22 +73,71 @@ public class DiscordBot extends ListenerAdapter {
                 GatewayIntent.MESSAGE_CONTENT,
                 GatewayIntent.GUILD_VOICE_STATES
         );
-        this.jda = JDABuilder.create(config.getDiscordToken(), intents)
-                .setMemberCachePolicy(MemberCachePolicy.ALL)
+        long startNanos = System.nanoTime();
+        long heapBefore = usedHeap();
+        JDABuilder builder = JDABuilder.create(config.getDiscordToken(), intents)
                 .setBulkDeleteSplittingEnabled(false)
                 .setStatus(OnlineStatus.ONLINE)
-                .addEventListeners(this)
-                .build();
+                .addEventListeners(this);
+        boolean lean = config.isLeanDiscordCache();
+        if (lean) {
+            // Only members we act on: anyone in voice (queue, team channels) and linked players.
+            // Everyone else arrives with the event that needs them (messages, mentions, voice updates).
+            builder.setMemberCachePolicy(MemberCachePolicy.VOICE.or(m -> linkingService.isLinked(m.getId())))
+                    .setChunkingFilter(ChunkingFilter.NONE)
+                    .disableCache(CacheFlag.ACTIVITY, CacheFlag.CLIENT_STATUS, CacheFlag.ONLINE_STATUS,
+                            CacheFlag.EMOJI, CacheFlag.STICKER, CacheFlag.SCHEDULED_EVENTS, CacheFlag.ROLE_TAGS);
+        } else {
+            builder.setMemberCachePolicy(MemberCachePolicy.ALL);
+        }
+        this.jda = builder.build();
         this.jda.awaitReady();
         log.info("Discord bot connected as " + jda.getSelfUser().getAsTag());
+        long members = 0;
+        for (net.dv8tion.jda.api.entities.Guild guild : jda.getGuilds()) members += guild.getMemberCache().size();
+        // Same line in both modes, so the two can be compared on the same server
+        log.info("Discord cache mode " + (lean ? "lean" : "full") + ": ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)
+                + "ms, " + members + " members cached in " + jda.getGuilds().size() + " guild(s), heap +" + ((usedHeap() - heapBefore) >> 20)
+                + " MB (approximate, before GC)");
+        // Voice updates keep the index current from here on; seed it with who is already in voice
+        for (net.dv8tion.jda.api.entities.Guild guild : jda.getGuilds()) {
+            for (GuildVoiceState vs : guild.getVoiceStates()) {
+                if (vs.getChannel() != null) presence.voiceJoined(vs.getMember().getIdLong(), vs.getChannel().getIdLong());
+            }
+        }
+        this.channelPool = new ChannelPool(config, rest, log);
+        if (channelPool.isEnabled()) {
+            for (net.dv8tion.jda.api.entities.Guild guild : jda.getGuilds()) {
+                Category c = getGamesCategory(guild);
+                if (c != null) channelPool.warm(guild, c);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
     }
 
     public void shutdown() {
         if (jda != null) jda.shutdownNow();
+        voiceMoves.shutdown();
     }
 
     public JDA getJda() { return jda; }
 
+    /**
+     * Warm game channel slots, or null if the bot is not running.
+     */
+    public ChannelPool getChannelPool() { return channelPool; }
+
+    public VoiceMoveService getVoiceMoves() { return voiceMoves; }
+
+    /**
+     * All outbound Discord requests go through here rather than {@code queue()}/{@code complete()}.
+     */
+    public RestScheduler getRest() { return rest; }
+
     @Override
     public void onReady(@NotNull ReadyEvent event) {
         log.info("Discord bot is ready; guilds=" + event.getJDA().getGuilds().size());
@@ -85,12 +151,30 @@ public class DiscordBot extends ListenerAdapter {
             String code = content.substring("=link ".length()).trim();
             boolean ok = linkingService.consumeCodeAndLink(code, event.getAuthor().getId());
             if (ok) {
-                event.getMessage().reply("Linked successfully. You can now join the queue voice channel.").queue();
+                rest.submit(RestScheduler.Lane.GAME_MESSAGE, event.getMessage().reply("Linked successfully. You can now join the queue voice channel."));
             } else {
-                event.getMessage().reply("Invalid or expired code. Use /link in-game to get a fresh code.").queue();
+                rest.submit(RestScheduler.Lane.GAME_MESSAGE, event.getMessage().reply("Invalid or expired code. Use /link in-game to get a fresh code."));
             }
             return;
         }
+        if (content.equals("=top") || content.startsWith("=top ")) {
+            int n = 10;
+            try {
+                if (content.length() > 4) n = Math.max(1, Math.min(25, Integer.parseInt(content.substring(5).trim())));
+            } catch (NumberFormatException ignored) {}
+            List<Leaderboard.Entry> top = ratings.getLeaderboard().top(n);
+            String text = top.isEmpty() ? "Nobody is ranked yet." : formatBoard("Top " + top.size() + " of " + ratings.getLeaderboard().size(), top);
+            rest.submit(RestScheduler.Lane.GAME_MESSAGE, event.getMessage().reply(text));
+            return;
+        }
+        if (content.equals("=rank")) {
+            UUID uuid = linkingService.getLinkedUuid(event.getAuthor().getId());
+            List<Leaderboard.Entry> around = uuid != null ? ratings.getLeaderboard().around(uuid, 2) : Collections.<Leaderboard.Entry>emptyList();
+            String text = around.isEmpty() ? "You are not ranked. Link your account with /link in-game and play a game."
+                    : formatBoard("Your rank: #" + ratings.getLeaderboard().rank(uuid) + " of " + ratings.getLeaderboard().size(), around);
+            rest.submit(RestScheduler.Lane.GAME_MESSAGE, event.getMessage().reply(text));
+            return;
+        }
         if (content.startsWith("=party ") && queueManager != null) {
             queueManager.handlePartyCommand(event);
         }
@@ -98,15 +182,31 @@ public class DiscordBot extends ListenerAdapter {
 
     @Override
     public void onGuildVoiceUpdate(@NotNull GuildVoiceUpdateEvent event) {
-        // User joined a voice channel
+        long memberId = event.getMember().getIdLong();
+        AudioChannel left = event.getChannelLeft();
         AudioChannel joined = event.getChannelJoined();
-        if (joined instanceof VoiceChannel) {
-            String queueId = config.getQueueVoiceId();
-            if (!queueId.isEmpty() && joined.getId().equals(queueId)) {
-                Member m = event.getMember();
-                handleQueueJoin(m, (VoiceChannel) joined);
-            }
+        if (joined != null) presence.voiceJoined(memberId, joined.getIdLong());
+        else if (left != null) presence.voiceLeft(memberId, left.getIdLong());
+        if (queueManager == null) return;
+        String guildId = event.getGuild().getId();
+        // User left (or was moved out of) a queue voice channel
+        if (left != null && queueManager.isQueueChannel(guildId, left.getId())) {
+            queueManager.dequeue(event.getGuild(), left.getId(), event.getMember().getIdLong());
+        }
+        // User joined a voice channel
+        if (joined instanceof VoiceChannel && queueManager.isQueueChannel(guildId, joined.getId())) {
+            Member m = event.getMember();
+            handleQueueJoin(m, (VoiceChannel) joined);
+        }
+    }
+
+    private String formatBoard(String title, List<Leaderboard.Entry> entries) {
+        StringBuilder sb = new StringBuilder(title).append('\n');
+        for (Leaderboard.Entry e : entries) {
+            String name = ratings.getName(e.uuid);
+            sb.append('#').append(e.rank).append(' ').append(name != null ? name : e.uuid.toString()).append(" - ").append(e.rating).append('\n');
         }
+        return sb.toString();
     }
 
     private void handleQueueJoin(Member member, VoiceChannel joined) {
@@ -118,12 +218,12 @@ public class DiscordBot extends ListenerAdapter {
             return;
         }
         // Check online status
-        org.bukkit.entity.Player p = Bukkit.getPlayer(uuid);
-        if (p == null || !p.isOnline()) {
+        String name = presence.getName(uuid);
+        if (name == null) {
             moveToWaiting(member, "You are not online on the Minecraft server. Join the server, then rejoin the queue.");
             return;
         }
-        queueManager.enqueue(member, uuid, p.getName(), joined.getGuild());
+        queueManager.enqueue(member, uuid, name, joined.getGuild(), joined.getId());
     }
 
     public void moveToWaiting(Member member, String reason) {
@@ -132,12 +232,12 @@ public class DiscordBot extends ListenerAdapter {
         VoiceChannel waiting = member.getGuild().getVoiceChannelById(waitingId);
         if (waiting == null) return;
         try {
-            member.getGuild().moveVoiceMember(member, waiting).reason("BWQueue: " + reason).queue();
+            rest.submit(RestScheduler.Lane.MOVE, member.getGuild().moveVoiceMember(member, waiting).reason("BWQueue: " + reason));
         } catch (Exception e) {
             log.warning("Failed to move member to waiting: " + e.getMessage());
         }
         try {
-            member.getUser().openPrivateChannel().queue(pc -> pc.sendMessage(reason).queue(), err -> {});
+            rest.submit(RestScheduler.Lane.DM, member.getUser().openPrivateChannel().flatMap(pc -> pc.sendMessage(reason)));
         } catch (Exception ignored) {}
     }
 
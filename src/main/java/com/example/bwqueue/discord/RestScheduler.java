@@ -0,0 +1,220 @@
+package com.example.bwqueue.discord;
+
+import com.example.bwqueue.config.PluginConfig;
+import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
+import net.dv8tion.jda.api.requests.RestAction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Single outbound gate for every Discord REST call the plugin makes.
+ *
+ * Requests wait in priority lanes and are handed to JDA only while fewer than {@code window} are in
+ * flight, highest lane first, so a burst of channel deletes or DMs can never sit in front of a voice move.
+ * The background lanes (DMs, deletes) together get at most half the window.
+ *
+ * The window adapts to Discord: a response slower than {@code slowMillis} (we were held back by a rate
+ * limit) halves it, every fast response grows it by one up to {@code maxInFlight}. Background lanes
+ * reject new work once {@code maxQueuedPerLane} requests are waiting; moves, channel creation and slot
+ * resets never do.
+ *
+ * A request submitted with a key replaces a still-waiting request with the same key in the same lane,
+ * and both callers get the result of the one that is sent. Used for deletes and edits of the same target.
+ */
+public class RestScheduler {
+
+    // Declaration order is priority order. RESET returns game channels to the warm pool and, like MOVE and
+    // CHANNEL, never rejects: a dropped reset would cost the pool a slot
+    public enum Lane { MOVE, CHANNEL, GAME_MESSAGE, RESET, DM, DELETE }
+
+    private static final int MIN_WINDOW = 2;
+
+    private static final class Task<T> {
+        final Lane lane;
+        final String key;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long enqueuedNanos = System.nanoTime();
+        long sentNanos;
+        RestAction<T> action;
+
+        Task(Lane lane, String key, RestAction<T> action) {
+            this.lane = lane; this.key = key; this.action = action;
+        }
+    }
+
+    private static final class LaneStats {
+        final Deque<Task<?>> waiting = new ArrayDeque<>();
+        int inFlight;
+        long completed;
+        long failed;
+        long totalLatencyNanos;
+        long maxLatencyNanos;
+    }
+
+    private final Logger log;
+    private final int maxInFlight;
+    private final long slowNanos;
+    private final int maxQueuedPerLane;
+
+    // All guarded by this
+    private final LaneStats[] lanes = new LaneStats[Lane.values().length];
+    private final Map<String, Task<?>> waitingByKey = new HashMap<>();
+    private int inFlight;
+    private int window;
+    private long coalesced;
+    private long rejected;
+
+    public RestScheduler(PluginConfig config, Logger log) {
+        this.log = log;
+        this.maxInFlight = Math.max(MIN_WINDOW, config.getRestMaxInFlight());
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(config.getRestSlowMillis());
+        this.maxQueuedPerLane = config.getRestMaxQueuedPerLane();
+        this.window = maxInFlight;
+        for (int i = 0; i < lanes.length; i++) lanes[i] = new LaneStats();
+    }
+
+    public <T> CompletableFuture<T> submit(Lane lane, RestAction<T> action) {
+        return submit(lane, null, action);
+    }
+
+    /**
+     * Queues the action in its lane. If a request with the same key is still waiting there, it is
+     * replaced by this one instead.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(Lane lane, String key, RestAction<T> action) {
+        Task<T> task;
+        synchronized (this) {
+            if (key != null) {
+                Task<T> existing = (Task<T>) waitingByKey.get(lane.name() + ':' + key);
+                if (existing != null) {
+                    existing.action = action;
+                    coalesced++;
+                    return existing.future;
+                }
+            }
+            LaneStats stats = lanes[lane.ordinal()];
+            if (isBackground(lane) && stats.waiting.size() >= maxQueuedPerLane) {
+                rejected++;
+                CompletableFuture<T> f = new CompletableFuture<>();
+                f.completeExceptionally(new RejectedExecutionException("Discord " + lane + " lane is full"));
+                return f;
+            }
+            task = new Task<>(lane, key, action);
+            stats.waiting.addLast(task);
+            if (key != null) waitingByKey.put(lane.name() + ':' + key, task);
+        }
+        dispatch();
+        return task.future;
+    }
+
+    /**
+     * Deletes a channel in the DELETE lane; repeated deletes of the same channel collapse into one.
+     */
+    public CompletableFuture<Void> delete(GuildChannel channel) {
+        return submit(Lane.DELETE, "channel:" + channel.getId(), channel.delete());
+    }
+
+    private void dispatch() {
+        List<Task<?>> send = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < window) {
+                Task<?> t = next();
+                if (t == null) break;
+                inFlight++;
+                lanes[t.lane.ordinal()].inFlight++;
+                send.add(t);
+            }
+        }
+        for (Task<?> t : send) fire(t);
+    }
+
+    // Caller holds the lock
+    private Task<?> next() {
+        int background = lanes[Lane.DM.ordinal()].inFlight + lanes[Lane.DELETE.ordinal()].inFlight;
+        for (Lane lane : Lane.values()) {
+            LaneStats stats = lanes[lane.ordinal()];
+            if (stats.waiting.isEmpty()) continue;
+            if (isBackground(lane) && background >= Math.max(1, window / 2)) return null;
+            Task<?> t = stats.waiting.pollFirst();
+            if (t.key != null) waitingByKey.remove(lane.name() + ':' + t.key);
+            return t;
+        }
+        return null;
+    }
+
+    private <T> void fire(Task<T> t) {
+        CompletableFuture<T> f;
+        t.sentNanos = System.nanoTime();
+        try {
+            f = t.action.submit();
+        } catch (Exception e) {
+            done(t, null, e);
+            return;
+        }
+        f.whenComplete((v, err) -> done(t, v, err));
+    }
+
+    private <T> void done(Task<T> t, T value, Throwable err) {
+        long now = System.nanoTime();
+        long latency = now - t.enqueuedNanos;
+        long service = now - t.sentNanos;
+        synchronized (this) {
+            inFlight--;
+            LaneStats stats = lanes[t.lane.ordinal()];
+            stats.inFlight--;
+            if (err == null) stats.completed++;
+            else stats.failed++;
+            stats.totalLatencyNanos += latency;
+            if (latency > stats.maxLatencyNanos) stats.maxLatencyNanos = latency;
+            // AIMD: back off hard when Discord holds us back, recover slowly
+            // Only time spent inside JDA counts: waiting in our own lanes says nothing about Discord
+            if (service > slowNanos && err == null) {
+                int before = window;
+                window = Math.max(MIN_WINDOW, window / 2);
+                if (window != before) log.fine("[BWQueue] Discord REST slow (" + TimeUnit.NANOSECONDS.toMillis(service) + "ms on " + t.lane + "), window " + window);
+            } else if (window < maxInFlight) {
+                window++;
+            }
+        }
+        if (err == null) {
+            t.future.complete(value);
+        } else {
+            log.fine("[BWQueue] Discord " + t.lane + " request failed: " + err.getMessage());
+            t.future.completeExceptionally(err);
+        }
+        dispatch();
+    }
+
+    private static boolean isBackground(Lane lane) {
+        return lane == Lane.DM || lane == Lane.DELETE;
+    }
+
+    public synchronized int getDepth(Lane lane) { return lanes[lane.ordinal()].waiting.size(); }
+    public synchronized int getInFlight(Lane lane) { return lanes[lane.ordinal()].inFlight; }
+    public synchronized long getCompleted(Lane lane) { return lanes[lane.ordinal()].completed; }
+    public synchronized long getFailed(Lane lane) { return lanes[lane.ordinal()].failed; }
+
+    /**
+     * Average time from submit to response for the lane, queueing included.
+     */
+    public synchronized long getAvgLatencyMillis(Lane lane) {
+        LaneStats s = lanes[lane.ordinal()];
+        long n = s.completed + s.failed;
+        return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(s.totalLatencyNanos / n);
+    }
+
+    public synchronized long getMaxLatencyMillis(Lane lane) { return TimeUnit.NANOSECONDS.toMillis(lanes[lane.ordinal()].maxLatencyNanos); }
+    public synchronized int getWindow() { return window; }
+    public synchronized long getCoalesced() { return coalesced; }
+    public synchronized long getRejected() { return rejected; }
+}
@@ -0,0 +1,229 @@
+package com.example.bwqueue.discord;
+
+import com.example.bwqueue.config.PluginConfig;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.GuildVoiceState;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Moves a whole game's players into their team voice channels and reports when they are all there.
+ *
+ * Moves go out concurrently through the MOVE lane of the {@link RestScheduler}, at most {@code moveConcurrency}
+ * in flight at a time so a burst does not just pile up behind JDA's per-guild rate-limit bucket. Transient
+ * failures (5xx, network) are retried with backoff; anything still outstanding when the batch times out is
+ * reported as TIMED_OUT.
+ */
+public class VoiceMoveService {
+
+    public enum Outcome { MOVED, NOT_CONNECTED, FAILED, TIMED_OUT }
+
+    /**
+     * Per-member outcome of one batch, in the order the moves were requested.
+     */
+    public static final class Result {
+        private final Map<Member, Outcome> outcomes;
+        private final long tookMillis;
+
+        private Result(Map<Member, Outcome> outcomes, long tookMillis) {
+            this.outcomes = Collections.unmodifiableMap(outcomes);
+            this.tookMillis = tookMillis;
+        }
+
+        public Map<Member, Outcome> getOutcomes() { return outcomes; }
+        public long getTookMillis() { return tookMillis; }
+
+        public boolean allMoved() { return count(Outcome.MOVED) == outcomes.size(); }
+
+        public int count(Outcome o) {
+            int n = 0;
+            for (Outcome x : outcomes.values()) if (x == o) n++;
+            return n;
+        }
+    }
+
+    // One member's move, possibly over several attempts
+    private static final class Move {
+        final Guild guild;
+        final Member member;
+        final VoiceChannel target;
+        final CompletableFuture<Outcome> done = new CompletableFuture<>();
+        int attempts;
+
+        Move(Guild guild, Member member, VoiceChannel target) {
+            this.guild = guild; this.member = member; this.target = target;
+        }
+    }
+
+    private final RestScheduler rest;
+    private final Logger log;
+    private final int concurrency;
+    private final int maxAttempts;
+    private final long timeoutMillis;
+    private final ScheduledExecutorService timers;
+
+    private final Queue<Move> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong moved = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong latencyTotalMillis = new AtomicLong();
+    private volatile long maxLatencyMillis;
+
+    public VoiceMoveService(PluginConfig config, RestScheduler rest, Logger log) {
+        this.rest = rest;
+        this.log = log;
+        this.concurrency = Math.max(1, config.getMoveConcurrency());
+        this.maxAttempts = Math.max(1, config.getMoveMaxAttempts());
+        this.timeoutMillis = Math.max(1, config.getMoveTimeoutSeconds()) * 1000L;
+        this.timers = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BWQueue-Moves");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void shutdown() {
+        timers.shutdownNow();
+    }
+
+    /**
+     * Moves every member to its channel. The future completes once all moves have finished or the
+     * batch timed out; it never completes exceptionally.
+     */
+    public CompletableFuture<Result> moveAll(Guild guild, Map<Member, VoiceChannel> targets) {
+        long start = System.currentTimeMillis();
+        List<Move> moves = new ArrayList<>(targets.size());
+        for (Map.Entry<Member, VoiceChannel> e : targets.entrySet()) {
+            Move m = new Move(guild, e.getKey(), e.getValue());
+            moves.add(m);
+            Outcome immediate = precheck(m);
+            if (immediate != null) m.done.complete(immediate);
+            else waiting.add(m);
+        }
+        drain();
+        timers.schedule(() -> {
+            for (Move m : moves) m.done.complete(Outcome.TIMED_OUT);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<?>[] all = new CompletableFuture<?>[moves.size()];
+        for (int i = 0; i < all.length; i++) all[i] = moves.get(i).done;
+        return CompletableFuture.allOf(all).thenApply(v -> {
+            Map<Member, Outcome> out = new LinkedHashMap<>();
+            for (Move m : moves) out.put(m.member, m.done.join());
+            return new Result(out, System.currentTimeMillis() - start);
+        });
+    }
+
+    // Skips the REST call when there is nothing to do or nothing that can be done
+    private static Outcome precheck(Move m) {
+        GuildVoiceState vs = m.member.getVoiceState();
+        if (vs == null || !vs.inAudioChannel()) return Outcome.NOT_CONNECTED;
+        if (vs.getChannel() != null && vs.getChannel().getIdLong() == m.target.getIdLong()) return Outcome.MOVED;
+        return null;
+    }
+
+    private void drain() {
+        while (true) {
+            int n = inFlight.get();
+            if (n >= concurrency) return;
+            if (!inFlight.compareAndSet(n, n + 1)) continue;
+            Move m = waiting.poll();
+            if (m == null) {
+                inFlight.decrementAndGet();
+                // A move may have been queued between the poll and the decrement
+                if (waiting.isEmpty()) return;
+                continue;
+            }
+            if (m.done.isDone()) { // timed out while waiting
+                inFlight.decrementAndGet();
+                continue;
+            }
+            attempt(m);
+        }
+    }
+
+    private void attempt(Move m) {
+        m.attempts++;
+        long sent = System.currentTimeMillis();
+        CompletableFuture<Void> f;
+        try {
+            f = rest.submit(RestScheduler.Lane.MOVE, m.guild.moveVoiceMember(m.member, m.target));
+        } catch (Exception e) {
+            // JDA validates before sending: missing permission, member left voice, ...
+            finish(m, e instanceof IllegalStateException ? Outcome.NOT_CONNECTED : Outcome.FAILED, e);
+            return;
+        }
+        f.whenComplete((v, t) -> {
+            if (t == null) {
+                if (!m.done.isDone()) recordLatency(System.currentTimeMillis() - sent);
+                finish(m, Outcome.MOVED, null);
+                return;
+            }
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (cause instanceof ErrorResponseException
+                    && ((ErrorResponseException) cause).getErrorResponse() == ErrorResponse.USER_NOT_CONNECTED) {
+                finish(m, Outcome.NOT_CONNECTED, cause);
+            } else if (isTransient(cause) && m.attempts < maxAttempts && !m.done.isDone()) {
+                retries.incrementAndGet();
+                inFlight.decrementAndGet();
+                long backoff = 250L << (m.attempts - 1);
+                timers.schedule(() -> {
+                    waiting.add(m);
+                    drain();
+                }, backoff, TimeUnit.MILLISECONDS);
+                drain();
+            } else {
+                finish(m, Outcome.FAILED, cause);
+            }
+        });
+    }
+
+    private void finish(Move m, Outcome outcome, Throwable cause) {
+        inFlight.decrementAndGet();
+        if (m.done.complete(outcome)) {
+            if (outcome == Outcome.MOVED) moved.incrementAndGet();
+            else failed.incrementAndGet();
+            if (outcome == Outcome.FAILED) {
+                log.warning("Failed to move " + m.member.getUser().getAsTag() + " after " + m.attempts + " attempt(s): "
+                        + (cause != null ? cause.getMessage() : "unknown"));
+            }
+        }
+        drain();
+    }
+
+    private static boolean isTransient(Throwable t) {
+        if (t instanceof ErrorResponseException) return ((ErrorResponseException) t).isServerError();
+        return true; // network errors and the like
+    }
+
+    private void recordLatency(long millis) {
+        latencyTotalMillis.addAndGet(millis);
+        if (millis > maxLatencyMillis) maxLatencyMillis = millis;
+    }
+
+    public long getMoved() { return moved.get(); }
+    public long getFailed() { return failed.get(); }
+    public long getRetries() { return retries.get(); }
+    public long getAvgLatencyMillis() { long n = moved.get(); return n == 0 ? 0 : latencyTotalMillis.get() / n; }
+    public long getMaxLatencyMillis() { return maxLatencyMillis; }
+}
@@ -1,10 +1,8 @@
 package com.example.bwqueue.elo;
 
-import com.example.bwqueue.config.PluginConfig;
-import org.bukkit.configuration.ConfigurationSection;
-
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class EloService {
 
@@ -26,23 +24,13 @@ public class EloService {
 
     public EloService(org.bukkit.configuration.file.FileConfiguration cfg) {
         this.defaultElo = cfg.getInt("elo.default", 0);
-        ConfigurationSection sec = cfg.getConfigurationSection("elo.tiers");
-        if (sec != null) {
-            // When represented as a list, iterate keys numerically
-            List<?> list = cfg.getList("elo.tiers");
-            if (list != null) {
-                for (int i = 0; i < list.size(); i++) {
-                    ConfigurationSection t = cfg.getConfigurationSection("elo.tiers." + i);
-                    if (t == null) continue;
-                    String name = t.getString("name", "Tier" + i);
-                    String range = t.getString("range", "0-999999");
-                    int[] mm = parseRange(range);
-                    int win = t.getInt("win", 0);
-                    int lose = t.getInt("lose", 0);
-                    int mvp = t.getInt("mvp", 0);
-                    tiers.add(new Tier(name, mm[0], mm[1], win, lose, mvp));
-                }
-            }
+        // elo.tiers is a YAML list of maps, which Bukkit does not expose as configuration sections
+        List<Map<?, ?>> list = cfg.getMapList("elo.tiers");
+        for (int i = 0; i < list.size(); i++) {
+            Map<?, ?> t = list.get(i);
+            String name = str(t.get("name"), "Tier" + i);
+            int[] mm = parseRange(str(t.get("range"), "0-999999"));
+            tiers.add(new Tier(name, mm[0], mm[1], num(t.get("win")), num(t.get("lose")), num(t.get("mvp"))));
         }
         if (tiers.isEmpty()) {
             tiers.add(new Tier("Default", 0, Integer.MAX_VALUE, 10, -5, 5));
@@ -66,6 +54,19 @@ public class EloService {
         return t.lose;
     }
 
+    private static String str(Object o, String def) {
+        return o == null ? def : String.valueOf(o);
+    }
+
+    private static int num(Object o) {
+        if (o instanceof Number) return ((Number) o).intValue();
+        try {
+            return o == null ? 0 : Integer.parseInt(String.valueOf(o).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     private static int[] parseRange(String s) {
         s = s.trim();
         if (s.startsWith(">=")) {
@@ -0,0 +1,205 @@
+package com.example.bwqueue.elo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Players ordered by rating (highest first, ties by UUID), kept current by {@link RatingStore} on every
+ * rating change, so a leaderboard never has to sort {@code users}.
+ *
+ * An indexed skip list: every forward link also records how many positions it skips, which turns
+ * "what rank is this player" and "who is at rank r" into the same O(log n) descent as a lookup. Updates
+ * are a removal and an insertion, also O(log n). All operations take the instance lock; they are short
+ * and the board changes only when games end.
+ */
+public class Leaderboard {
+
+    /**
+     * A player's place on the board; ranks start at 1.
+     */
+    public static final class Entry {
+        public final int rank;
+        public final UUID uuid;
+        public final int rating;
+        Entry(int rank, UUID uuid, int rating) {
+            this.rank = rank; this.uuid = uuid; this.rating = rating;
+        }
+    }
+
+    private static final int MAX_LEVEL = 32;
+
+    private static final class Node {
+        final UUID uuid;
+        final int rating;
+        final Node[] next;
+        // span[i]: positions from this node to next[i] (to the end of the list if next[i] is null)
+        final int[] span;
+        Node(UUID uuid, int rating, int levels) {
+            this.uuid = uuid; this.rating = rating; this.next = new Node[levels]; this.span = new int[levels];
+        }
+    }
+
+    private final Node head = new Node(null, 0, MAX_LEVEL);
+    private final Map<UUID, Integer> ratings = new HashMap<>();
+    private int levels = 1;
+    private int size;
+
+    /**
+     * Puts the player on the board at {@code rating}, moving them if they were already on it.
+     */
+    public synchronized void update(UUID uuid, int rating) {
+        Integer old = ratings.put(uuid, rating);
+        if (old != null) {
+            if (old == rating) return;
+            delete(uuid, old);
+        }
+        insert(uuid, rating);
+    }
+
+    public synchronized void remove(UUID uuid) {
+        Integer old = ratings.remove(uuid);
+        if (old != null) delete(uuid, old);
+    }
+
+    public synchronized int size() { return size; }
+
+    /**
+     * The player's 1-based rank, or 0 if they are not on the board.
+     */
+    public synchronized int rank(UUID uuid) {
+        Integer rating = ratings.get(uuid);
+        if (rating == null) return 0;
+        Node x = head;
+        int rank = 0;
+        for (int i = levels - 1; i >= 0; i--) {
+            while (x.next[i] != null && compare(x.next[i], rating, uuid) <= 0) {
+                rank += x.span[i];
+                x = x.next[i];
+            }
+            if (x.uuid != null && x.uuid.equals(uuid)) return rank;
+        }
+        return 0;
+    }
+
+    /**
+     * The best {@code n} players.
+     */
+    public synchronized List<Entry> top(int n) {
+        return range(1, n);
+    }
+
+    /**
+     * The player with up to {@code radius} players above and below, or an empty list if they are not
+     * on the board.
+     */
+    public synchronized List<Entry> around(UUID uuid, int radius) {
+        int rank = rank(uuid);
+        if (rank == 0) return Collections.emptyList();
+        int from = Math.max(1, rank - radius);
+        return range(from, rank + radius - from + 1);
+    }
+
+    /**
+     * Up to {@code n} entries starting at rank {@code from}.
+     */
+    public synchronized List<Entry> range(int from, int n) {
+        if (from < 1 || n <= 0 || from > size) return Collections.emptyList();
+        Node x = nodeAt(from);
+        List<Entry> out = new ArrayList<>(Math.min(n, size - from + 1));
+        for (int rank = from; x != null && out.size() < n; rank++, x = x.next[0]) {
+            out.add(new Entry(rank, x.uuid, x.rating));
+        }
+        return out;
+    }
+
+    // Node at 1-based rank, which must exist
+    private Node nodeAt(int rank) {
+        Node x = head;
+        int traversed = 0;
+        for (int i = levels - 1; i >= 0; i--) {
+            while (x.next[i] != null && traversed + x.span[i] <= rank) {
+                traversed += x.span[i];
+                x = x.next[i];
+            }
+            if (traversed == rank) return x;
+        }
+        return x;
+    }
+
+    private void insert(UUID uuid, int rating) {
+        Node[] update = new Node[MAX_LEVEL];
+        int[] rank = new int[MAX_LEVEL];
+        Node x = head;
+        for (int i = levels - 1; i >= 0; i--) {
+            rank[i] = i == levels - 1 ? 0 : rank[i + 1];
+            while (x.next[i] != null && compare(x.next[i], rating, uuid) < 0) {
+                rank[i] += x.span[i];
+                x = x.next[i];
+            }
+            update[i] = x;
+        }
+        int level = randomLevel();
+        if (level > levels) {
+            for (int i = levels; i < level; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            levels = level;
+        }
+        Node node = new Node(uuid, rating, level);
+        for (int i = 0; i < level; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            // rank[0] - rank[i] is how far the new node lies past update[i]
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        // Levels above the new node now skip one more position
+        for (int i = level; i < levels; i++) update[i].span[i]++;
+        size++;
+    }
+
+    private void delete(UUID uuid, int rating) {
+        Node[] update = new Node[MAX_LEVEL];
+        Node x = head;
+        for (int i = levels - 1; i >= 0; i--) {
+            while (x.next[i] != null && compare(x.next[i], rating, uuid) < 0) x = x.next[i];
+            update[i] = x;
+        }
+        Node node = x.next[0];
+        if (node == null || !node.uuid.equals(uuid)) return;
+        for (int i = 0; i < levels; i++) {
+            if (update[i].next[i] == node) {
+                update[i].span[i] += node.span[i] - 1;
+                update[i].next[i] = node.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (levels > 1 && head.next[levels - 1] == null) levels--;
+        size--;
+    }
+
+    // Board order: negative if the node comes before (rating, uuid)
+    private static int compare(Node n, int rating, UUID uuid) {
+        if (n.rating != rating) return n.rating > rating ? -1 : 1;
+        return n.uuid.compareTo(uuid);
+    }
+
+    // Geometric with p = 1/4
+    private static int randomLevel() {
+        int level = 1;
+        int bits = ThreadLocalRandom.current().nextInt();
+        while (level < MAX_LEVEL && (bits & 3) == 0) {
+            level++;
+            bits >>>= 2;
+        }
+        return level;
+    }
+}
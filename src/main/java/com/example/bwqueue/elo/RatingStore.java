@@ -0,0 +1,201 @@
+package com.example.bwqueue.elo;
+
+import com.example.bwqueue.db.Database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Every linked player's rating, held in memory. This is what the matchmaker reads; {@code users.elo} is
+ * only its persistent copy, loaded once at startup and written when a game is settled.
+ *
+ * {@link #settle} applies a finished game in one transaction together with the game's
+ * {@code elo_settlements} row. Each player's delta is computed from their stored rating and written as
+ * a relative update, then the committed rating is read back and published here, so servers sharing
+ * the database never overwrite each other's changes. A game that already has a settlement row is
+ * skipped, so a retried or replayed game end cannot apply its ratings twice.
+ *
+ * Every change is mirrored into the {@link Leaderboard}, along with the player names to show on it.
+ */
+public class RatingStore {
+
+    /**
+     * One player's rating change in a settled game.
+     */
+    public static final class Change {
+        public final UUID uuid;
+        public final int before;
+        public final int after;
+        public final boolean won;
+        public final boolean mvp;
+        Change(UUID uuid, int before, int after, boolean won, boolean mvp) {
+            this.uuid = uuid; this.before = before; this.after = after; this.won = won; this.mvp = mvp;
+        }
+        public int delta() { return after - before; }
+    }
+
+    private final Database db;
+    private final EloService elo;
+    private final Logger log;
+    private final Map<UUID, Integer> ratings = new ConcurrentHashMap<>();
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    private final Leaderboard leaderboard = new Leaderboard();
+    // Settlements compute from and publish to the map; one at a time keeps that consistent
+    private final Object settleLock = new Object();
+
+    public RatingStore(Database db, EloService elo, Logger log) {
+        this.db = db;
+        this.elo = elo;
+        this.log = log;
+    }
+
+    /**
+     * Loads all stored ratings. Call once before matchmaking starts.
+     */
+    public void load() throws SQLException {
+        int loaded = db.read(sql -> {
+            PreparedStatement ps = sql.prepare("SELECT uuid, elo, name FROM users WHERE uuid IS NOT NULL");
+            int n = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    UUID uuid = parseUuid(rs.getString(1));
+                    if (uuid == null) continue;
+                    int rating = rs.getInt(2);
+                    ratings.put(uuid, rating);
+                    String name = rs.getString(3);
+                    if (name != null) names.put(uuid, name);
+                    leaderboard.update(uuid, rating);
+                    n++;
+                }
+            }
+            return n;
+        });
+        log.info("[BWQueue] Loaded " + loaded + " ratings");
+    }
+
+    /**
+     * Current rating, or the configured default for a player who has none yet.
+     */
+    public int getRating(UUID uuid) {
+        Integer r = ratings.get(uuid);
+        return r != null ? r : elo.getDefaultElo();
+    }
+
+    /**
+     * Player name as last linked, or null.
+     */
+    public String getName(UUID uuid) {
+        return names.get(uuid);
+    }
+
+    /**
+     * Player last linked under this name (ignoring case), or null. Scans every player; for commands only.
+     */
+    public UUID findByName(String name) {
+        for (Map.Entry<UUID, String> e : names.entrySet()) {
+            if (e.getValue().equalsIgnoreCase(name)) return e.getKey();
+        }
+        return null;
+    }
+
+    /**
+     * A Discord user linked {@code uuid}; their stored rating follows them from {@code previous}, the
+     * account they had linked before (or null).
+     */
+    public void linked(UUID uuid, String name, int rating, UUID previous) {
+        if (previous != null && !previous.equals(uuid)) {
+            ratings.remove(previous);
+            names.remove(previous);
+            leaderboard.remove(previous);
+        }
+        ratings.put(uuid, rating);
+        if (name != null) names.put(uuid, name);
+        leaderboard.update(uuid, rating);
+    }
+
+    /**
+     * Applies a finished game. Returns the changes, or an empty list if the game was settled before.
+     * Blocks until committed; not for the server thread.
+     *
+     * @param mvp the winner who gets the tier's MVP bonus, or null
+     */
+    public List<Change> settle(long sessionId, Collection<UUID> winners, Collection<UUID> losers, UUID mvp) throws SQLException {
+        synchronized (settleLock) {
+            String updateSql = "UPDATE users SET elo=" + db.getDialect().greatest("0", "elo + ?") + " WHERE uuid=?";
+            List<Change> changes = db.writeAndWait(sql -> {
+                PreparedStatement done = sql.prepare("SELECT 1 FROM elo_settlements WHERE session_id=?");
+                done.setLong(1, sessionId);
+                try (ResultSet rs = done.executeQuery()) {
+                    if (rs.next()) return null;
+                }
+                // The primary key also stops a second server sharing the database from settling it again
+                PreparedStatement claim = sql.prepare("INSERT INTO elo_settlements(session_id, players, settled_at) VALUES(?,?,?)");
+                claim.setLong(1, sessionId);
+                claim.setInt(2, winners.size() + losers.size());
+                claim.setLong(3, Instant.now().getEpochSecond());
+                claim.executeUpdate();
+                PreparedStatement read = sql.prepare("SELECT elo FROM users WHERE uuid=?");
+                PreparedStatement update = sql.prepare(updateSql);
+                List<Change> out = new ArrayList<>(winners.size() + losers.size());
+                for (UUID u : winners) out.add(apply(read, update, u, true, u.equals(mvp)));
+                for (UUID u : losers) out.add(apply(read, update, u, false, false));
+                return out;
+            });
+            if (changes == null) {
+                log.info("[BWQueue] Ratings of session " + sessionId + " were already settled");
+                return Collections.emptyList();
+            }
+            for (Change c : changes) {
+                ratings.put(c.uuid, c.after);
+                leaderboard.update(c.uuid, c.after);
+            }
+            return changes;
+        }
+    }
+
+    // One player's part of a settlement, inside its transaction
+    private Change apply(PreparedStatement read, PreparedStatement update, UUID uuid, boolean won, boolean mvp) throws SQLException {
+        String id = uuid.toString();
+        Integer stored = storedRating(read, id);
+        int before = stored != null ? stored : getRating(uuid);
+        int delta = won ? elo.winGain(before, mvp) : elo.lossChange(before);
+        int after = Math.max(0, before + delta);
+        if (stored != null) {
+            update.setInt(1, delta);
+            update.setString(2, id);
+            update.executeUpdate();
+            Integer committed = storedRating(read, id);
+            if (committed != null) after = committed;
+        }
+        return new Change(uuid, before, after, won, mvp);
+    }
+
+    private static Integer storedRating(PreparedStatement read, String uuid) throws SQLException {
+        read.setString(1, uuid);
+        try (ResultSet rs = read.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : null;
+        }
+    }
+
+    public Leaderboard getLeaderboard() { return leaderboard; }
+    public int size() { return ratings.size(); }
+
+    private static UUID parseUuid(String s) {
+        if (s == null || s.isEmpty()) return null;
+        try {
+            return UUID.fromString(s);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.bwqueue.eventlog;
+
+import com.example.bwqueue.db.EventType;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streams the events of one session out of its segment files, in the order they were recorded:
+ *
+ * <pre>
+ * try (EventLogReader r = EventLogReader.open(root, sessionId).from(ts)) {
+ *     while (r.next()) { ... r.getType(), r.getPlayer(), r.getTimestamp() ... }
+ * }
+ * </pre>
+ *
+ * One segment is mapped at a time and the current record is decoded into the getters, so memory use
+ * does not grow with the session. With {@link #from}, the segment indexes let the reader skip whole
+ * segments and jump close to the first matching record. A session that is still being written is read
+ * up to the last record published when each segment is opened.
+ */
+public final class EventLogReader implements Closeable {
+
+    private final File dir;
+    private final int[] segments;
+    private final List<String> materials = new ArrayList<>();
+    private long fromTs = Long.MIN_VALUE;
+
+    private int segmentIndex = -1;
+    private RandomAccessFile file;
+    private MappedByteBuffer buf;
+    private int count;
+    private int position;
+
+    private long timestamp;
+    private EventType type;
+    private int materialId;
+    private int amount;
+    private UUID player;
+    private UUID target;
+
+    private EventLogReader(File dir) throws IOException {
+        this.dir = dir;
+        this.segments = SegmentFormat.segments(dir);
+        loadMaterials();
+    }
+
+    /**
+     * Session ids with an event log under {@code root}, ascending.
+     */
+    public static List<Long> sessions(File root) {
+        String[] names = root.list();
+        if (names == null) return Collections.emptyList();
+        List<Long> ids = new ArrayList<>();
+        for (String name : names) {
+            Long id = SegmentFormat.sessionId(name);
+            if (id != null) ids.add(id);
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    public static EventLogReader open(File root, long sessionId) throws IOException {
+        File dir = SegmentFormat.sessionDir(root, sessionId);
+        if (!dir.isDirectory()) throw new FileNotFoundException("No event log for session " + sessionId + " in " + root);
+        return new EventLogReader(dir);
+    }
+
+    /**
+     * Skips events recorded before {@code ts}. Call before the first {@link #next}.
+     */
+    public EventLogReader from(long ts) {
+        if (segmentIndex >= 0) throw new IllegalStateException("Reader already started");
+        this.fromTs = ts;
+        return this;
+    }
+
+    /**
+     * Advances to the next event; false at the end of the log.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            while (buf != null && position < count) {
+                decode(position++);
+                if (timestamp >= fromTs) return true;
+            }
+            if (!openNextSegment()) return false;
+        }
+    }
+
+    private void decode(int record) throws IOException {
+        int pos = SegmentFormat.HEADER_BYTES + record * SegmentFormat.RECORD_BYTES;
+        timestamp = buf.getLong(pos);
+        type = EventType.fromCode(buf.getShort(pos + 8));
+        materialId = buf.getShort(pos + 10) & 0xFFFF;
+        amount = buf.getInt(pos + 12);
+        player = uuid(buf.getLong(pos + 16), buf.getLong(pos + 24));
+        target = uuid(buf.getLong(pos + 32), buf.getLong(pos + 40));
+        // Written by a session still in progress after this reader was opened
+        if (materialId > materials.size()) loadMaterials();
+    }
+
+    private static UUID uuid(long msb, long lsb) {
+        return msb == 0L && lsb == 0L ? null : new UUID(msb, lsb);
+    }
+
+    private boolean openNextSegment() throws IOException {
+        closeSegment();
+        while (++segmentIndex < segments.length) {
+            int segment = segments[segmentIndex];
+            int start = 0;
+            // Sealed segments have an index; use it to skip by time
+            File idx = SegmentFormat.indexFile(dir, segment);
+            if (fromTs != Long.MIN_VALUE && idx.isFile()) {
+                start = seek(idx);
+                if (start < 0) continue;
+            }
+            if (map(SegmentFormat.segmentFile(dir, segment)) && start < count) {
+                position = start;
+                return true;
+            }
+            closeSegment();
+        }
+        return false;
+    }
+
+    // First record that may be at or after fromTs, or -1 if the whole segment is older
+    private int seek(File idx) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idx)))) {
+            if (in.readInt() != SegmentFormat.INDEX_MAGIC) return 0;
+            in.readInt(); // count
+            in.readLong(); // min ts
+            long maxTs = in.readLong();
+            if (maxTs < fromTs) return -1;
+            int interval = in.readInt();
+            int entries = in.readInt();
+            int start = 0;
+            for (int k = 0; k < entries; k++) {
+                if (in.readLong() >= fromTs) break;
+                start = k * interval;
+            }
+            return start;
+        }
+    }
+
+    private boolean map(File f) throws IOException {
+        file = new RandomAccessFile(f, "r");
+        FileChannel ch = file.getChannel();
+        long size = ch.size();
+        if (size < SegmentFormat.HEADER_BYTES) return false;
+        buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        if (buf.getInt(0) != SegmentFormat.MAGIC || buf.getShort(6) != SegmentFormat.RECORD_BYTES) {
+            throw new IOException("Not an event log segment: " + f);
+        }
+        int capacity = (int) ((size - SegmentFormat.HEADER_BYTES) / SegmentFormat.RECORD_BYTES);
+        count = Math.min(capacity, Math.max(0, buf.getInt(SegmentFormat.COUNT_OFFSET)));
+        return true;
+    }
+
+    private void closeSegment() throws IOException {
+        buf = null;
+        count = 0;
+        position = 0;
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    private void loadMaterials() throws IOException {
+        materials.clear();
+        File f = new File(dir, SegmentFormat.MATERIALS_FILE);
+        if (!f.isFile()) return;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) materials.add(line);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segmentIndex = segments.length;
+    }
+
+    /** Seconds since the epoch, as recorded. */
+    public long getTimestamp() { return timestamp; }
+    public EventType getType() { return type; }
+    /** Acting player, or null. */
+    public UUID getPlayer() { return player; }
+    /** Other player involved (the victim of a kill), or null. */
+    public UUID getTarget() { return target; }
+    public int getAmount() { return amount; }
+
+    /** Material name, or null. */
+    public String getMaterial() {
+        return materialId > 0 && materialId <= materials.size() ? materials.get(materialId - 1) : null;
+    }
+}
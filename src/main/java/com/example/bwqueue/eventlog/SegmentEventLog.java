@@ -0,0 +1,468 @@
+package com.example.bwqueue.eventlog;
+
+import com.example.bwqueue.config.PluginConfig;
+import com.example.bwqueue.db.EventSink;
+import com.example.bwqueue.db.EventType;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Raw gameplay events as an append-only log of fixed-width binary records, one directory per session,
+ * rolled into memory-mapped segment files of {@code segmentSizeKb} (layout in {@link SegmentFormat}).
+ *
+ * Recording an event is a handful of absolute puts into the mapped segment; the OS writes the pages
+ * back. Everything that touches the file system runs on the BWQueue-EventLog thread: creating and
+ * mapping segments, forcing and indexing full ones, and appending to {@code materials.txt}. Once a
+ * session's segment is three quarters full the next one is mapped ahead, so rolling over is a pointer
+ * swap; the few events of a session that arrive before its first segment is mapped are held in memory
+ * and written once it is. The database keeps session metadata and the per-player aggregates only.
+ *
+ * A session is sealed (segment flushed, index written) once it has seen no events for a minute, or at
+ * shutdown; a later event for it simply opens a new segment. Read the log with {@link EventLogReader}.
+ */
+public class SegmentEventLog implements EventSink {
+
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Events held per session while it waits for a mapped segment
+    private static final int MAX_WAITING = 4096;
+
+    private final File root;
+    private final int segmentBytes;
+    private final Logger log;
+
+    private final Map<Long, SessionLog> sessions = new ConcurrentHashMap<>();
+    // One thread, so the tasks of a session run in the order they were handed over
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "BWQueue-EventLog");
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledFuture<?> sweep;
+    private volatile boolean running = true;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong waiting = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public SegmentEventLog(PluginConfig config, Logger log) {
+        this.root = new File(config.getEventSegmentDirectory());
+        long records = Math.max(SegmentFormat.INDEX_INTERVAL,
+                ((long) config.getEventSegmentSizeKb() * 1024L - SegmentFormat.HEADER_BYTES) / SegmentFormat.RECORD_BYTES);
+        this.segmentBytes = (int) Math.min(Integer.MAX_VALUE, SegmentFormat.HEADER_BYTES + records * SegmentFormat.RECORD_BYTES);
+        this.log = log;
+        this.sweep = io.scheduleWithFixedDelay(this::sealIdle, 10, 10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public boolean record(long sessionId, EventType type, UUID player, UUID target, String material, int amount, long ts) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        while (true) {
+            SessionLog s = sessions.computeIfAbsent(sessionId, id -> new SessionLog(SegmentFormat.sessionDir(root, id), id));
+            synchronized (s) {
+                // Sealed by the idle sweep between the lookup and the lock; start a fresh one
+                if (s.sealed) {
+                    sessions.remove(sessionId, s);
+                    continue;
+                }
+                return s.append(new Event(ts, type, player, target, material, amount));
+            }
+        }
+    }
+
+    private void sealIdle() {
+        long cutoff = System.currentTimeMillis() - IDLE_MILLIS;
+        for (Map.Entry<Long, SessionLog> e : sessions.entrySet()) {
+            SessionLog s = e.getValue();
+            synchronized (s) {
+                if (s.lastWriteMillis > cutoff) continue;
+                s.seal();
+            }
+            sessions.remove(e.getKey(), s);
+        }
+    }
+
+    // After shutdown the caller does the work itself
+    private void onIoThread(Runnable task) {
+        try {
+            io.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.run();
+        }
+    }
+
+    /**
+     * Seals every open session and waits for its files to be written. Events recorded afterwards are dropped.
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        sweep.cancel(false);
+        awaitHeld();
+        for (SessionLog s : sessions.values()) {
+            synchronized (s) {
+                s.seal();
+            }
+        }
+        sessions.clear();
+        io.shutdown();
+        try {
+            if (!io.awaitTermination(10, TimeUnit.SECONDS)) log.warning("[BWQueue] Event log still writing at shutdown");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Lets segments still being mapped take the events held for them; each round the I/O thread works
+    // through every task queued before it
+    private void awaitHeld() {
+        for (int round = 0; round < 10 && waiting.get() > 0; round++) {
+            try {
+                io.submit(() -> {}).get(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException e) {
+                return;
+            }
+        }
+    }
+
+    public File getRoot() { return root; }
+    public int getOpenSessions() { return sessions.size(); }
+    // Events held until a segment is mapped for them
+    public long getPending() { return waiting.get(); }
+    public long getWritten() { return written.get(); }
+    public long getDropped() { return dropped.get(); }
+    public long getFailed() { return failed.get(); }
+
+    private static final class Event {
+        final long ts;
+        final EventType type;
+        final UUID player;
+        final UUID target;
+        final String material;
+        final int amount;
+        Event(long ts, EventType type, UUID player, UUID target, String material, int amount) {
+            this.ts = ts; this.type = type; this.player = player; this.target = target; this.material = material; this.amount = amount;
+        }
+    }
+
+    /**
+     * A mapped segment file and what its index will need.
+     */
+    private static final class Segment {
+        final int number;
+        final RandomAccessFile file;
+        final MappedByteBuffer buf;
+        final int capacity;
+        int count;
+        long minTs;
+        long maxTs;
+        long[] sparse = new long[16];
+        int sparseCount;
+        Segment(int number, RandomAccessFile file, MappedByteBuffer buf, int capacity) {
+            this.number = number; this.file = file; this.buf = buf; this.capacity = capacity;
+        }
+    }
+
+    /**
+     * The open segments of one session. Fields are guarded by the instance lock unless marked as
+     * belonging to the I/O thread.
+     */
+    private final class SessionLog {
+        final File dir;
+        final long sessionId;
+        boolean sealed;
+        long lastWriteMillis = System.currentTimeMillis();
+
+        private Segment current;
+        // Mapped ahead by the I/O thread
+        private Segment next;
+        private boolean mapping;
+        private final ArrayDeque<Event> held = new ArrayDeque<>();
+        // Name -> id; read from materials.txt by the I/O thread before the first segment is handed over
+        private Map<String, Integer> materials;
+
+        // I/O thread only
+        private int lastSegment = -1;
+        private boolean opened;
+        private Writer materialsOut;
+
+        SessionLog(File dir, long sessionId) {
+            this.dir = dir;
+            this.sessionId = sessionId;
+        }
+
+        boolean append(Event e) {
+            lastWriteMillis = System.currentTimeMillis();
+            if (held.isEmpty() && writable()) {
+                put(e);
+                written.incrementAndGet();
+                return true;
+            }
+            if (held.size() >= MAX_WAITING) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            held.add(e);
+            waiting.incrementAndGet();
+            return true;
+        }
+
+        // Makes sure the current segment has room, switching to the one mapped ahead if it is full.
+        // The next one is only mapped near the end of the current, so a session sealed early leaves no
+        // unused mapped file behind (which Windows will not let us delete)
+        private boolean writable() {
+            if (current != null && current.count == current.capacity) {
+                Segment full = current;
+                current = next;
+                next = null;
+                onIoThread(() -> close(full));
+            }
+            if (next == null && !mapping && (current == null || current.count >= current.capacity - current.capacity / 4)) {
+                mapping = true;
+                onIoThread(this::mapNext);
+            }
+            return current != null;
+        }
+
+        private void put(Event e) {
+            Segment s = current;
+            int pos = SegmentFormat.HEADER_BYTES + s.count * SegmentFormat.RECORD_BYTES;
+            MappedByteBuffer buf = s.buf;
+            buf.putLong(pos, e.ts);
+            buf.putShort(pos + 8, (short) e.type.getCode());
+            buf.putShort(pos + 10, (short) materialId(e.material));
+            buf.putInt(pos + 12, e.amount);
+            buf.putLong(pos + 16, e.player != null ? e.player.getMostSignificantBits() : 0L);
+            buf.putLong(pos + 24, e.player != null ? e.player.getLeastSignificantBits() : 0L);
+            buf.putLong(pos + 32, e.target != null ? e.target.getMostSignificantBits() : 0L);
+            buf.putLong(pos + 40, e.target != null ? e.target.getLeastSignificantBits() : 0L);
+
+            if (s.count % SegmentFormat.INDEX_INTERVAL == 0) {
+                if (s.sparseCount == s.sparse.length) s.sparse = Arrays.copyOf(s.sparse, s.sparseCount * 2);
+                s.sparse[s.sparseCount++] = e.ts;
+            }
+            if (s.count == 0 || e.ts < s.minTs) s.minTs = e.ts;
+            if (s.count == 0 || e.ts > s.maxTs) s.maxTs = e.ts;
+            // Publish only after the record itself is complete
+            buf.putInt(SegmentFormat.COUNT_OFFSET, ++s.count);
+        }
+
+        // Ids are per session and never reused; 0 means no material (or the dictionary is full).
+        // The name reaches materials.txt shortly after the first record using it, which readers allow for.
+        private int materialId(String material) {
+            if (material == null) return 0;
+            Integer id = materials.get(material);
+            if (id != null) return id;
+            if (materials.size() >= SegmentFormat.MAX_MATERIALS) return 0;
+            id = materials.size() + 1;
+            materials.put(material, id);
+            onIoThread(() -> appendMaterial(material));
+            return id;
+        }
+
+        // Writes everything held back while no segment was mapped
+        private void drain() {
+            while (!held.isEmpty() && writable()) {
+                put(held.poll());
+                waiting.decrementAndGet();
+                written.incrementAndGet();
+            }
+        }
+
+        void seal() {
+            if (sealed) return;
+            sealed = true;
+            if (!held.isEmpty()) {
+                dropped.addAndGet(held.size());
+                waiting.addAndGet(-held.size());
+                held.clear();
+            }
+            Segment c = current;
+            Segment n = next;
+            current = next = null;
+            onIoThread(() -> {
+                if (c != null) close(c);
+                if (n != null) discard(n);
+                closeMaterials();
+            });
+        }
+
+        // ---- I/O thread ----
+
+        private void mapNext() {
+            Segment seg = null;
+            Map<String, Integer> loaded = null;
+            IOException error = null;
+            try {
+                // The session may have been sealed for idleness before and be appended to again
+                if (!opened) {
+                    if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+                    int[] existing = SegmentFormat.segments(dir);
+                    lastSegment = existing.length > 0 ? existing[existing.length - 1] : -1;
+                    // An unused segment a previous discard could not delete is written into rather than skipped
+                    if (lastSegment >= 0 && isUnused(lastSegment)) lastSegment--;
+                    loaded = loadMaterials();
+                    opened = true;
+                }
+                seg = map(lastSegment + 1);
+                lastSegment = seg.number;
+            } catch (IOException e) {
+                error = e;
+            }
+            synchronized (this) {
+                mapping = false;
+                if (loaded != null) materials = loaded;
+                if (sealed) {
+                    if (seg != null) discard(seg);
+                    return;
+                }
+                if (error != null) {
+                    failed.addAndGet(held.size());
+                    waiting.addAndGet(-held.size());
+                    held.clear();
+                    log.warning("[BWQueue] Failed to write event log of session " + sessionId + ": " + error.getMessage());
+                    return;
+                }
+                if (current == null) current = seg;
+                else next = seg;
+                drain();
+                // Map the one after while this one fills
+                writable();
+            }
+        }
+
+        private Segment map(int number) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(SegmentFormat.segmentFile(dir, number), "rw");
+            MappedByteBuffer buf;
+            try {
+                buf = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+            buf.putInt(0, SegmentFormat.MAGIC);
+            buf.putShort(4, SegmentFormat.VERSION);
+            buf.putShort(6, (short) SegmentFormat.RECORD_BYTES);
+            buf.putLong(8, sessionId);
+            buf.putInt(SegmentFormat.COUNT_OFFSET, 0);
+            return new Segment(number, file, buf, (segmentBytes - SegmentFormat.HEADER_BYTES) / SegmentFormat.RECORD_BYTES);
+        }
+
+        private Map<String, Integer> loadMaterials() throws IOException {
+            Map<String, Integer> m = new HashMap<>();
+            File f = new File(dir, SegmentFormat.MATERIALS_FILE);
+            if (!f.isFile()) return m;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) m.put(line, m.size() + 1);
+            }
+            return m;
+        }
+
+        private void appendMaterial(String material) {
+            try {
+                if (materialsOut == null) {
+                    materialsOut = new OutputStreamWriter(new FileOutputStream(new File(dir, SegmentFormat.MATERIALS_FILE), true), StandardCharsets.UTF_8);
+                }
+                materialsOut.write(material);
+                materialsOut.write('\n');
+                materialsOut.flush();
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                log.warning("[BWQueue] Failed to write materials of session " + sessionId + ": " + e.getMessage());
+            }
+        }
+
+        private void closeMaterials() {
+            if (materialsOut == null) return;
+            try {
+                materialsOut.close();
+            } catch (IOException e) {
+                log.warning("[BWQueue] Failed to close materials of session " + sessionId + ": " + e.getMessage());
+            }
+            materialsOut = null;
+        }
+
+        // Full or sealed: flush it and write its index
+        private void close(Segment s) {
+            try {
+                try {
+                    s.buf.force();
+                    writeIndex(s);
+                } finally {
+                    s.file.close();
+                }
+            } catch (IOException e) {
+                log.warning("[BWQueue] Failed to seal event log of session " + sessionId + ": " + e.getMessage());
+            }
+        }
+
+        // Mapped ahead but never written to. Windows refuses to delete a file that is still mapped, and the
+        // mapping lasts until the buffer is collected; the file then stays as an empty segment, which
+        // readers skip and the session reuses if it is written to again
+        private void discard(Segment s) {
+            try {
+                s.file.close();
+            } catch (IOException ignored) {}
+            File f = SegmentFormat.segmentFile(dir, s.number);
+            if (!f.delete()) log.warning("[BWQueue] Could not delete unused event log segment " + f + "; left it empty");
+        }
+
+        // A segment with a valid header, no records and no index: mapped ahead and never used
+        private boolean isUnused(int number) throws IOException {
+            if (SegmentFormat.indexFile(dir, number).exists()) return false;
+            try (RandomAccessFile f = new RandomAccessFile(SegmentFormat.segmentFile(dir, number), "r")) {
+                if (f.length() < SegmentFormat.HEADER_BYTES || f.readInt() != SegmentFormat.MAGIC) return false;
+                f.seek(SegmentFormat.COUNT_OFFSET);
+                return f.readInt() == 0;
+            }
+        }
+
+        private void writeIndex(Segment s) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(SegmentFormat.indexFile(dir, s.number))))) {
+                out.writeInt(SegmentFormat.INDEX_MAGIC);
+                out.writeInt(s.count);
+                out.writeLong(s.minTs);
+                out.writeLong(s.maxTs);
+                out.writeInt(SegmentFormat.INDEX_INTERVAL);
+                out.writeInt(s.sparseCount);
+                for (int i = 0; i < s.sparseCount; i++) out.writeLong(s.sparse[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.bwqueue.eventlog;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * On-disk layout of the event log, shared by {@link SegmentEventLog} and {@link EventLogReader}.
+ *
+ * <pre>
+ * &lt;root&gt;/session-&lt;id&gt;/materials.txt   material names, line n is material id n
+ *                     /000000.seg       segment: 64-byte header, then fixed-width records
+ *                     /000000.idx       index, written when the segment is sealed
+ *
+ * header  int magic, short version, short record size, long session id, int record count (offset 16)
+ * record  long ts, short type, short material id (0 = none), int amount,
+ *         long player msb, long player lsb, long target msb, long target lsb (0/0 = none)
+ * index   int magic, int count, long min ts, long max ts, int interval, int entries,
+ *         long ts of record k * interval for each entry
+ * </pre>
+ *
+ * The header count is updated after every record, so an unsealed segment (crash, or still being
+ * written) is read up to its last complete record. All values are big-endian.
+ */
+final class SegmentFormat {
+
+    static final int MAGIC = 0x4257454C;       // "BWEL"
+    static final int INDEX_MAGIC = 0x42574549; // "BWEI"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 48;
+    static final int COUNT_OFFSET = 16;
+    // Records per sparse index entry
+    static final int INDEX_INTERVAL = 1024;
+    static final int MAX_MATERIALS = 0xFFFF;
+
+    static final String MATERIALS_FILE = "materials.txt";
+    private static final String SESSION_PREFIX = "session-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private SegmentFormat() {}
+
+    static File sessionDir(File root, long sessionId) {
+        return new File(root, SESSION_PREFIX + sessionId);
+    }
+
+    /**
+     * Session id of a session directory name, or null for anything else.
+     */
+    static Long sessionId(String dirName) {
+        if (!dirName.startsWith(SESSION_PREFIX)) return null;
+        try {
+            return Long.parseLong(dirName.substring(SESSION_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static File segmentFile(File dir, int segment) {
+        return new File(dir, String.format("%06d", segment) + SEGMENT_SUFFIX);
+    }
+
+    static File indexFile(File dir, int segment) {
+        return new File(dir, String.format("%06d", segment) + ".idx");
+    }
+
+    /**
+     * Segment numbers present in the session directory, ascending.
+     */
+    static int[] segments(File dir) {
+        String[] names = dir.list();
+        if (names == null) return new int[0];
+        int[] found = new int[names.length];
+        int n = 0;
+        for (String name : names) {
+            if (!name.endsWith(SEGMENT_SUFFIX)) continue;
+            try {
+                int segment = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                found[n++] = segment;
+            } catch (NumberFormatException ignored) {}
+        }
+        int[] result = Arrays.copyOf(found, n);
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.bwqueue.link;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: items are dropped into the bucket of their expiry tick and a bucket is only
+ * looked at when the wheel turns past it, so scheduling is O(1) and every item is expired exactly once,
+ * however many are pending.
+ *
+ * The wheel turns lazily from {@link #advance}; the work per call is bounded by the ticks elapsed (at most
+ * one full turn) plus the items actually due. Items due more than one turn ahead go round again.
+ * An item goes into the first tick that ends at or after its deadline, so it is handed out at most one
+ * tick late, never a lap late.
+ * Not thread-safe; callers synchronize.
+ */
+public class ExpiryWheel<T> {
+
+    private static final class Timer<T> {
+        final T item;
+        final long expiresAt;
+        Timer(T item, long expiresAt) { this.item = item; this.expiresAt = expiresAt; }
+    }
+
+    private final long tickMillis;
+    private final List<List<Timer<T>>> buckets;
+    private long currentTick;
+    private int size;
+
+    public ExpiryWheel(long tickMillis, int bucketCount, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) buckets.add(new ArrayList<Timer<T>>());
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    public void schedule(T item, long expiresAtMillis) {
+        // Rounded up: the bucket of tick t is visited once now >= t * tickMillis, when everything in it is due
+        long tick = Math.max(Math.floorDiv(expiresAtMillis + tickMillis - 1, tickMillis), currentTick + 1);
+        bucket(tick).add(new Timer<>(item, expiresAtMillis));
+        size++;
+    }
+
+    /**
+     * Turns the wheel up to {@code nowMillis}, handing every item that is due to {@code expired}.
+     */
+    public void advance(long nowMillis, Consumer<T> expired) {
+        long target = nowMillis / tickMillis;
+        if (target <= currentTick) return;
+        // Past one full turn every bucket has been visited; skip the idle laps
+        long from = Math.max(currentTick + 1, target - buckets.size() + 1);
+        for (long tick = from; tick <= target; tick++) {
+            List<Timer<T>> bucket = bucket(tick);
+            if (bucket.isEmpty()) continue;
+            List<Timer<T>> later = null;
+            for (Timer<T> t : bucket) {
+                if (t.expiresAt <= nowMillis) {
+                    size--;
+                    expired.accept(t.item);
+                } else {
+                    if (later == null) later = new ArrayList<>();
+                    later.add(t);
+                }
+            }
+            bucket.clear();
+            if (later != null) bucket.addAll(later);
+        }
+        currentTick = target;
+    }
+
+    private List<Timer<T>> bucket(long tick) {
+        return buckets.get((int) (tick % buckets.size()));
+    }
+
+    public int size() { return size; }
+}
@@ -0,0 +1,104 @@
+package com.example.bwqueue.link;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded LRU cache with per-entry expiry, for account links read on every queue join.
+ *
+ * "Not linked" is cached too (with its own, shorter TTL), so repeated joins by an unlinked user do not
+ * hit the database either. Loads run outside the lock; two threads missing the same key may both load it.
+ */
+public class LinkCache<K, V> {
+
+    private static final Object ABSENT = new Object();
+
+    private static final class Entry {
+        final Object value;
+        final long expiresAt;
+        Entry(Object value, long expiresAt) { this.value = value; this.expiresAt = expiresAt; }
+    }
+
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<K, Entry> map;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LinkCache(final int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.map = new LinkedHashMap<K, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Cached value for the key, or {@code loader}'s result (null meaning "none", cached as such).
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key, Function<K, V> loader) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry e = map.get(key);
+            if (e != null && e.expiresAt > now) {
+                if (e.value == ABSENT) {
+                    negativeHits.incrementAndGet();
+                    return null;
+                }
+                hits.incrementAndGet();
+                return (V) e.value;
+            }
+            if (e != null) map.remove(key);
+        }
+        misses.incrementAndGet();
+        V v = loader.apply(key);
+        synchronized (this) {
+            // A write-through that raced with this load wins
+            if (!map.containsKey(key)) map.put(key, entry(v, now));
+        }
+        return v;
+    }
+
+    /**
+     * Value if cached and fresh, without loading or touching the hit statistics.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V peek(K key) {
+        Entry e = map.get(key);
+        return e != null && e.value != ABSENT && e.expiresAt > System.currentTimeMillis() ? (V) e.value : null;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, entry(value, System.currentTimeMillis()));
+    }
+
+    public synchronized void invalidate(K key) {
+        map.remove(key);
+    }
+
+    private Entry entry(V value, long now) {
+        return value == null ? new Entry(ABSENT, now + negativeTtlMillis) : new Entry(value, now + ttlMillis);
+    }
+
+    public synchronized int size() { return map.size(); }
+    public long getHits() { return hits.get(); }
+    public long getNegativeHits() { return negativeHits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    /**
+     * Share of lookups answered without the database, 0..1.
+     */
+    public double getHitRate() {
+        long h = hits.get() + negativeHits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+}
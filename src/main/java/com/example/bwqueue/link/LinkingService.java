@@ -2,21 +2,28 @@ package com.example.bwqueue.link;
 
 import com.example.bwqueue.config.PluginConfig;
 import com.example.bwqueue.db.Database;
+import com.example.bwqueue.elo.RatingStore;
 
 import java.security.SecureRandom;
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class LinkingService {
 
+    private static final String[] USER_KEY = {"discord_id"};
+    private static final String[] USER_COLUMNS = {"discord_id", "uuid", "name", "linked_at"};
+
     private final Database db;
     private final PluginConfig config;
+    private final RatingStore ratings;
+    private final String upsertUserSql;
     private final SecureRandom random = new SecureRandom();
 
     private static class Pending {
@@ -28,37 +35,104 @@ public class LinkingService {
         }
     }
 
-    private final Map<String, Pending> codes = new ConcurrentHashMap<>();
+    // Codes issued from one player or address in the current throttle window
+    private static class Issued {
+        int count;
+    }
+
+    // Pending codes and throttle windows; guarded by codeLock and expired through the wheel rather
+    // than by scanning, so issuing and consuming a code costs the same with ten or ten thousand pending
+    private final Object codeLock = new Object();
+    private final Map<String, Pending> codes = new HashMap<>();
+    private final Map<UUID, String> codeByUuid = new HashMap<>();
+    private final Map<String, Issued> issued = new HashMap<>();
+    private final ExpiryWheel<String> codeExpiry;
+    private final ExpiryWheel<String> issuedExpiry;
+    // Discord ids with a linked account; decides which members the lean JDA cache keeps
+    private final Set<String> linkedIds = ConcurrentHashMap.newKeySet();
+    // discord id <-> uuid; every queue join reads these, so keep them off the disk
+    private final LinkCache<String, UUID> uuidByDiscord;
+    private final LinkCache<UUID, String> discordByUuid;
 
-    public LinkingService(Database db, PluginConfig config) {
+    public LinkingService(Database db, PluginConfig config, RatingStore ratings) {
         this.db = db;
         this.config = config;
+        this.ratings = ratings;
+        this.upsertUserSql = db.getDialect().upsert("users", USER_KEY, USER_COLUMNS, 1);
+        long ttl = config.getLinkCacheTtlSeconds() * 1000L;
+        long negativeTtl = config.getLinkCacheNegativeTtlSeconds() * 1000L;
+        this.uuidByDiscord = new LinkCache<>(config.getLinkCacheMaxSize(), ttl, negativeTtl);
+        this.discordByUuid = new LinkCache<>(config.getLinkCacheMaxSize(), ttl, negativeTtl);
+        // One-second ticks, one turn covering the code TTL; longer delays just go round again
+        long now = System.currentTimeMillis();
+        this.codeExpiry = new ExpiryWheel<>(1000L, Math.max(1, config.getCodeTtlSeconds()) + 1, now);
+        this.issuedExpiry = new ExpiryWheel<>(1000L, Math.max(1, config.getLinkThrottleWindowSeconds()) + 1, now);
     }
 
-    public String generateCode(UUID uuid, String name) {
-        cleanup();
-        String code;
-        do {
-            code = randomCode(config.getCodeLength());
-        } while (codes.containsKey(code));
-        long exp = Instant.now().getEpochSecond() + config.getCodeTtlSeconds();
-        codes.put(code, new Pending(uuid, name, exp));
-        return code;
+    /**
+     * Issues a fresh code for the player, replacing any code they still had pending. Returns null if the
+     * player or their address has asked for too many codes within the throttle window.
+     */
+    public String generateCode(UUID uuid, String name, String address) {
+        long nowMillis = System.currentTimeMillis();
+        synchronized (codeLock) {
+            expire(nowMillis);
+            String playerKey = "player:" + uuid;
+            String addressKey = address != null ? "address:" + address : null;
+            if (!underLimit(playerKey, config.getLinkThrottlePerPlayer())
+                    || (addressKey != null && !underLimit(addressKey, config.getLinkThrottlePerAddress()))) {
+                return null;
+            }
+            count(playerKey, nowMillis);
+            if (addressKey != null) count(addressKey, nowMillis);
+
+            String previous = codeByUuid.remove(uuid);
+            if (previous != null) codes.remove(previous);
+            String code;
+            do {
+                code = randomCode(config.getCodeLength());
+            } while (codes.containsKey(code));
+            long expiresMillis = nowMillis + config.getCodeTtlSeconds() * 1000L;
+            codes.put(code, new Pending(uuid, name, expiresMillis / 1000L));
+            codeByUuid.put(uuid, code);
+            codeExpiry.schedule(code, expiresMillis);
+            return code;
+        }
     }
 
     public boolean consumeCodeAndLink(String code, String discordId) {
-        cleanup();
-        Pending p = codes.remove(code);
-        if (p == null) return false;
         long now = Instant.now().getEpochSecond();
+        Pending p;
+        synchronized (codeLock) {
+            expire(System.currentTimeMillis());
+            p = codes.remove(code);
+            if (p == null) return false;
+            codeByUuid.remove(p.uuid, code);
+        }
         if (p.expiresAt < now) return false;
-        try (Connection c = db.getConnection();
-             PreparedStatement ps = c.prepareStatement("INSERT INTO users(discord_id, uuid, name, linked_at) VALUES(?,?,?,?) ON CONFLICT(discord_id) DO UPDATE SET uuid=excluded.uuid, name=excluded.name, linked_at=excluded.linked_at")) {
-            ps.setString(1, discordId);
-            ps.setString(2, p.uuid.toString());
-            ps.setString(3, p.name);
-            ps.setLong(4, now);
-            ps.executeUpdate();
+        final Pending link = p;
+        try {
+            // The Discord user keeps their rating across relinks; read it back with the link
+            int elo = db.writeAndWait(sql -> {
+                PreparedStatement ps = sql.prepare(upsertUserSql);
+                ps.setString(1, discordId);
+                ps.setString(2, link.uuid.toString());
+                ps.setString(3, link.name);
+                ps.setLong(4, now);
+                ps.executeUpdate();
+                PreparedStatement rating = sql.prepare("SELECT elo FROM users WHERE discord_id=?");
+                rating.setString(1, discordId);
+                try (java.sql.ResultSet rs = rating.executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : config.getEloDefault();
+                }
+            });
+            // Write-through; the player's previous account (if any) no longer maps back to them
+            UUID previous = uuidByDiscord.peek(discordId);
+            ratings.linked(p.uuid, p.name, elo, previous);
+            if (previous != null && !previous.equals(p.uuid)) discordByUuid.invalidate(previous);
+            uuidByDiscord.put(discordId, p.uuid);
+            discordByUuid.put(p.uuid, discordId);
+            linkedIds.add(discordId);
             return true;
         } catch (SQLException e) {
             e.printStackTrace();
@@ -66,25 +140,127 @@ public class LinkingService {
         }
     }
 
+    /**
+     * Loads the ids of all linked Discord users (links made afterwards are added as they happen) and,
+     * if enabled, fills the link caches with the most recently linked accounts.
+     */
+    public void warmUp() {
+        boolean fill = config.isLinkCacheWarmUp();
+        int limit = config.getLinkCacheMaxSize();
+        try {
+            db.read(sql -> {
+                int cached = 0;
+                try (java.sql.ResultSet rs = sql.prepare("SELECT discord_id, uuid FROM users WHERE uuid IS NOT NULL ORDER BY linked_at DESC").executeQuery()) {
+                    while (rs.next()) {
+                        String discordId = rs.getString(1);
+                        linkedIds.add(discordId);
+                        if (fill && cached < limit) {
+                            UUID uuid = UUID.fromString(rs.getString(2));
+                            uuidByDiscord.put(discordId, uuid);
+                            discordByUuid.put(uuid, discordId);
+                            cached++;
+                        }
+                    }
+                }
+                return cached;
+            });
+        } catch (SQLException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public boolean isLinked(String discordId) {
+        return linkedIds.contains(discordId);
+    }
+
     public UUID getLinkedUuid(String discordId) {
-        try (Connection c = db.getConnection();
-             PreparedStatement ps = c.prepareStatement("SELECT uuid FROM users WHERE discord_id=?")) {
-            ps.setString(1, discordId);
-            try (java.sql.ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    String s = rs.getString(1);
-                    if (s != null) return UUID.fromString(s);
+        return uuidByDiscord.get(discordId, this::loadLinkedUuid);
+    }
+
+    /**
+     * Discord id linked to the player, or null if none.
+     */
+    public String getLinkedDiscordId(UUID uuid) {
+        return discordByUuid.get(uuid, this::loadLinkedDiscordId);
+    }
+
+    private UUID loadLinkedUuid(String discordId) {
+        try {
+            return db.read(sql -> {
+                PreparedStatement ps = sql.prepare("SELECT uuid FROM users WHERE discord_id=?");
+                ps.setString(1, discordId);
+                try (java.sql.ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        String s = rs.getString(1);
+                        if (s != null) return UUID.fromString(s);
+                    }
                 }
-            }
+                return null;
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
         return null;
     }
 
-    private void cleanup() {
-        long now = Instant.now().getEpochSecond();
-        codes.entrySet().removeIf(e -> e.getValue().expiresAt < now);
+    private String loadLinkedDiscordId(UUID uuid) {
+        try {
+            return db.read(sql -> {
+                PreparedStatement ps = sql.prepare("SELECT discord_id FROM users WHERE uuid=? ORDER BY linked_at DESC LIMIT 1");
+                ps.setString(1, uuid.toString());
+                try (java.sql.ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    public LinkCache<String, UUID> getUuidCache() { return uuidByDiscord; }
+    public LinkCache<UUID, String> getDiscordIdCache() { return discordByUuid; }
+
+    /**
+     * Number of codes currently waiting to be used.
+     */
+    public int getPendingCodeCount() {
+        synchronized (codeLock) {
+            expire(System.currentTimeMillis());
+            return codes.size();
+        }
+    }
+
+    // Caller holds codeLock
+    private void expire(long nowMillis) {
+        long nowSeconds = nowMillis / 1000L;
+        codeExpiry.advance(nowMillis, code -> {
+            Pending p = codes.get(code);
+            // The code may have been used, replaced, or handed out again since this timer was set
+            if (p != null && p.expiresAt <= nowSeconds) {
+                codes.remove(code);
+                codeByUuid.remove(p.uuid, code);
+            }
+        });
+        issuedExpiry.advance(nowMillis, issued::remove);
+    }
+
+    // Caller holds codeLock
+    private boolean underLimit(String key, int limit) {
+        if (limit <= 0) return true;
+        Issued i = issued.get(key);
+        return i == null || i.count < limit;
+    }
+
+    // Caller holds codeLock; the window starts at the first code and is dropped whole when it ends
+    private void count(String key, long nowMillis) {
+        Issued i = issued.get(key);
+        if (i == null) {
+            i = new Issued();
+            issued.put(key, i);
+            issuedExpiry.schedule(key, nowMillis + config.getLinkThrottleWindowSeconds() * 1000L);
+        }
+        i.count++;
     }
 
     private String randomCode(int len) {
@@ -1,7 +1,9 @@
 package com.example.bwqueue.listeners;
 
-import com.example.bwqueue.db.Database;
+import com.example.bwqueue.db.EventType;
+import com.example.bwqueue.db.EventSink;
 import com.example.bwqueue.session.SessionRegistry;
+import com.example.bwqueue.session.SessionStatsAggregator;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
@@ -9,33 +11,32 @@ import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.player.PlayerPickupItemEvent;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.time.Instant;
+import java.util.UUID;
 
 public class BWListeners implements Listener {
 
-    private final Database db;
+    private final EventSink events;
     private final SessionRegistry sessions;
+    private final SessionStatsAggregator stats;
 
-    public BWListeners(Database db, SessionRegistry sessions) {
-        this.db = db;
+    public BWListeners(EventSink events, SessionRegistry sessions, SessionStatsAggregator stats) {
+        this.events = events;
         this.sessions = sessions;
+        this.stats = stats;
     }
 
     @EventHandler(ignoreCancelled = true)
     public void onBlockPlace(BlockPlaceEvent e) {
         SessionRegistry.Entry en = sessions.get(e.getPlayer().getUniqueId());
         if (en == null) return;
-        record(en.sessionId, "BLOCK_PLACE", e.getPlayer().getUniqueId().toString(), e.getBlockPlaced().getType().name());
+        record(en.sessionId, EventType.BLOCK_PLACE, e.getPlayer().getUniqueId(), null, e.getBlockPlaced().getType().name(), 1);
     }
 
     @EventHandler(ignoreCancelled = true)
     public void onBlockBreak(BlockBreakEvent e) {
         SessionRegistry.Entry en = sessions.get(e.getPlayer().getUniqueId());
         if (en == null) return;
-        record(en.sessionId, "BLOCK_BREAK", e.getPlayer().getUniqueId().toString(), e.getBlock().getType().name());
+        record(en.sessionId, EventType.BLOCK_BREAK, e.getPlayer().getUniqueId(), null, e.getBlock().getType().name(), 1);
     }
 
     @EventHandler(ignoreCancelled = true)
@@ -45,7 +46,7 @@ public class BWListeners implements Listener {
         String mat = e.getItem().getItemStack().getType().name();
         // Track only common BedWars resources
         if (!(mat.contains("IRON") || mat.contains("GOLD") || mat.contains("EMERALD") || mat.contains("DIAMOND"))) return;
-        record(en.sessionId, "PICKUP", e.getPlayer().getUniqueId().toString(), mat + ":" + e.getItem().getItemStack().getAmount());
+        record(en.sessionId, EventType.PICKUP, e.getPlayer().getUniqueId(), null, mat, e.getItem().getItemStack().getAmount());
     }
 
     @EventHandler
@@ -53,22 +54,14 @@ public class BWListeners implements Listener {
         if (e.getEntity() == null) return;
         SessionRegistry.Entry victimEn = sessions.get(e.getEntity().getUniqueId());
         if (victimEn != null) {
-            String killerUuid = e.getEntity().getKiller() != null ? e.getEntity().getKiller().getUniqueId().toString() : "";
-            record(victimEn.sessionId, "KILL", killerUuid, "victim=" + e.getEntity().getUniqueId());
+            UUID killer = e.getEntity().getKiller() != null ? e.getEntity().getKiller().getUniqueId() : null;
+            record(victimEn.sessionId, EventType.KILL, killer, e.getEntity().getUniqueId(), null, 1);
         }
     }
 
-    private void record(long sessionId, String type, String playerUuid, String value) {
-        try (Connection c = db.getConnection();
-             PreparedStatement ps = c.prepareStatement("INSERT INTO events(session_id, type, player_uuid, value, ts) VALUES(?,?,?,?,?)")) {
-            ps.setLong(1, sessionId);
-            ps.setString(2, type);
-            ps.setString(3, playerUuid);
-            ps.setString(4, value);
-            ps.setLong(5, Instant.now().getEpochSecond());
-            ps.executeUpdate();
-        } catch (SQLException ex) {
-            ex.printStackTrace();
-        }
+    private void record(long sessionId, EventType type, UUID player, UUID target, String material, int amount) {
+        stats.record(sessionId, type, player, target, material, amount);
+        // Buffered or memory-mapped; never waits on I/O here
+        events.record(sessionId, type, player, target, material, amount, System.currentTimeMillis() / 1000L);
     }
 }
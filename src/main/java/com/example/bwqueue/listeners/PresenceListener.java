@@ -0,0 +1,35 @@
+package com.example.bwqueue.listeners;
+
+import com.example.bwqueue.presence.PresenceIndex;
+import com.example.bwqueue.queue.QueueManager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Keeps the presence index in sync with who is on the server, and pulls players out of the queue
+ * the moment they log off.
+ */
+public class PresenceListener implements Listener {
+
+    private final PresenceIndex presence;
+    private final QueueManager queueManager;
+
+    public PresenceListener(PresenceIndex presence, QueueManager queueManager) {
+        this.presence = presence;
+        this.queueManager = queueManager;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent e) {
+        presence.playerOnline(e.getPlayer().getUniqueId(), e.getPlayer().getName());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent e) {
+        presence.playerOffline(e.getPlayer().getUniqueId());
+        queueManager.playerLeft(e.getPlayer().getUniqueId());
+    }
+}
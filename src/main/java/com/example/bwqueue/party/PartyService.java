@@ -1,6 +1,7 @@
 package com.example.bwqueue.party;
 
 import com.example.bwqueue.config.PluginConfig;
+import com.example.bwqueue.discord.RestScheduler;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 
@@ -19,21 +20,23 @@ import java.util.concurrent.ConcurrentHashMap;
 public class PartyService {
 
     private final PluginConfig config;
+    private final RestScheduler rest;
 
     // guildId -> leaderId -> Party
     private final Map<Long, Map<Long, Party>> parties = new ConcurrentHashMap<>();
     // guildId -> userId -> leaderId (pending invites)
     private final Map<Long, Map<Long, Long>> invites = new ConcurrentHashMap<>();
 
-    public PartyService(PluginConfig config) {
+    public PartyService(PluginConfig config, RestScheduler rest) {
         this.config = config;
+        this.rest = rest;
     }
 
     public void handle(MessageReceivedEvent event) {
         String[] parts = event.getMessage().getContentRaw().trim().split("\\s+");
         if (parts.length < 2) return;
         if (!config.isPartyEnabled()) {
-            event.getMessage().reply("Parties are disabled by config.").queue();
+            reply(event, "Parties are disabled by config.");
             return;
         }
         String sub = parts[1].toLowerCase(Locale.ROOT);
@@ -54,7 +57,7 @@ public class PartyService {
                 onDisband(event);
                 break;
             default:
-                event.getMessage().reply("Usage: =party create | invite @user | accept | leave | disband").queue();
+                reply(event, "Usage: =party create | invite @user | accept | leave | disband");
         }
     }
 
@@ -64,18 +67,18 @@ public class PartyService {
         Map<Long, Party> map = parties.computeIfAbsent(guildId, k -> new ConcurrentHashMap<>());
         // Check if already leader or member
         if (getPartyOf(guildId, author) != null) {
-            e.getMessage().reply("You are already in a party.").queue();
+            reply(e, "You are already in a party.");
             return;
         }
         Party p = new Party(author);
         p.members.add(author);
         map.put(author, p);
-        e.getMessage().reply("Created a new party. You are the leader. Max members: " + config.getPartyMaxMembers()).queue();
+        reply(e, "Created a new party. You are the leader. Max members: " + config.getPartyMaxMembers());
     }
 
     private void onInvite(MessageReceivedEvent e) {
         if (e.getMessage().getMentions().getMembers().isEmpty()) {
-            e.getMessage().reply("Mention a user to invite.").queue();
+            reply(e, "Mention a user to invite.");
             return;
         }
         Member target = e.getMessage().getMentions().getMembers().get(0);
@@ -83,20 +86,20 @@ public class PartyService {
         long leader = e.getAuthor().getIdLong();
         Party p = getOwnedParty(guildId, leader);
         if (p == null) {
-            e.getMessage().reply("You must be a party leader to invite.").queue();
+            reply(e, "You must be a party leader to invite.");
             return;
         }
         if (p.members.size() >= config.getPartyMaxMembers()) {
-            e.getMessage().reply("Party is full (max " + config.getPartyMaxMembers() + ").").queue();
+            reply(e, "Party is full (max " + config.getPartyMaxMembers() + ").");
             return;
         }
         if (getPartyOf(guildId, target.getIdLong()) != null) {
-            e.getMessage().reply("That user is already in a party.").queue();
+            reply(e, "That user is already in a party.");
             return;
         }
         Map<Long, Long> gInv = invites.computeIfAbsent(guildId, k -> new ConcurrentHashMap<>());
         gInv.put(target.getIdLong(), leader);
-        e.getMessage().reply("Invited " + target.getAsMention() + ". They can type `=party accept`.").queue();
+        reply(e, "Invited " + target.getAsMention() + ". They can type `=party accept`.");
     }
 
     private void onAccept(MessageReceivedEvent e) {
@@ -105,24 +108,24 @@ public class PartyService {
         Map<Long, Long> gInv = invites.computeIfAbsent(guildId, k -> new ConcurrentHashMap<>());
         Long leader = gInv.remove(user);
         if (leader == null) {
-            e.getMessage().reply("You have no pending party invite.").queue();
+            reply(e, "You have no pending party invite.");
             return;
         }
         Party p = getOwnedParty(guildId, leader);
         if (p == null) {
-            e.getMessage().reply("That party no longer exists.").queue();
+            reply(e, "That party no longer exists.");
             return;
         }
         if (p.members.size() >= config.getPartyMaxMembers()) {
-            e.getMessage().reply("Party is full.").queue();
+            reply(e, "Party is full.");
             return;
         }
         if (getPartyOf(guildId, user) != null) {
-            e.getMessage().reply("You are already in a party.").queue();
+            reply(e, "You are already in a party.");
             return;
         }
         p.members.add(user);
-        e.getMessage().reply("Joined the party.").queue();
+        reply(e, "Joined the party.");
     }
 
     private void onLeave(MessageReceivedEvent e) {
@@ -130,16 +133,16 @@ public class PartyService {
         long user = e.getAuthor().getIdLong();
         Party p = getPartyOf(guildId, user);
         if (p == null) {
-            e.getMessage().reply("You are not in a party.").queue();
+            reply(e, "You are not in a party.");
             return;
         }
         if (p.leaderId == user) {
             // disband
             parties.getOrDefault(guildId, Collections.emptyMap()).remove(user);
-            e.getMessage().reply("You left and disbanded the party (leader).").queue();
+            reply(e, "You left and disbanded the party (leader).");
         } else {
             p.members.remove(user);
-            e.getMessage().reply("You left the party.").queue();
+            reply(e, "You left the party.");
         }
     }
 
@@ -148,11 +151,15 @@ public class PartyService {
         long leader = e.getAuthor().getIdLong();
         Party p = getOwnedParty(guildId, leader);
         if (p == null) {
-            e.getMessage().reply("You are not a party leader.").queue();
+            reply(e, "You are not a party leader.");
             return;
         }
         parties.getOrDefault(guildId, Collections.emptyMap()).remove(leader);
-        e.getMessage().reply("Party disbanded.").queue();
+        reply(e, "Party disbanded.");
+    }
+
+    private void reply(MessageReceivedEvent e, String message) {
+        rest.submit(RestScheduler.Lane.GAME_MESSAGE, e.getMessage().reply(message));
     }
 
     public Party getPartyOf(long guildId, long userId) {
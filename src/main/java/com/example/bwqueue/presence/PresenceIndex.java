@@ -0,0 +1,66 @@
+package com.example.bwqueue.presence;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is online on the Minecraft server and which voice channel each Discord member is in.
+ *
+ * Fed by the Bukkit join/quit events and JDA voice updates, read from any thread. Lookups are single
+ * concurrent-map reads, so the matchmaker never calls into Bukkit or re-reads JDA voice state.
+ * A Discord account can only be in one voice channel at a time, across all guilds.
+ */
+public class PresenceIndex {
+
+    public static final long NO_CHANNEL = 0L;
+
+    // uuid -> player name, for players currently online
+    private final Map<UUID, String> online = new ConcurrentHashMap<>();
+    // member id -> voice channel id
+    private final Map<Long, Long> voice = new ConcurrentHashMap<>();
+
+    public void playerOnline(UUID uuid, String name) {
+        online.put(uuid, name);
+    }
+
+    public void playerOffline(UUID uuid) {
+        online.remove(uuid);
+    }
+
+    public void voiceJoined(long memberId, long channelId) {
+        voice.put(memberId, channelId);
+    }
+
+    /**
+     * Only clears the member if they are still recorded in {@code channelId}; a late leave event
+     * must not undo a newer join.
+     */
+    public void voiceLeft(long memberId, long channelId) {
+        voice.remove(memberId, channelId);
+    }
+
+    public boolean isOnline(UUID uuid) {
+        return online.containsKey(uuid);
+    }
+
+    /**
+     * Name of the online player, or null if they are offline.
+     */
+    public String getName(UUID uuid) {
+        return online.get(uuid);
+    }
+
+    public long voiceChannelOf(long memberId) {
+        Long c = voice.get(memberId);
+        return c == null ? NO_CHANNEL : c;
+    }
+
+    public boolean isInVoice(long memberId, long channelId) {
+        Long c = voice.get(memberId);
+        return c != null && c == channelId;
+    }
+
+    public int getOnlineCount() { return online.size(); }
+    public int getVoiceCount() { return voice.size(); }
+}
@@ -0,0 +1,339 @@
+package com.example.bwqueue.queue;
+
+import com.example.bwqueue.BWQueuePlugin;
+import com.example.bwqueue.bw.BedWarsService;
+import com.example.bwqueue.config.PluginConfig;
+import com.example.bwqueue.discord.ChannelPool;
+import com.example.bwqueue.discord.RestScheduler;
+import com.example.bwqueue.discord.VoiceMoveService;
+import com.example.bwqueue.elo.RatingStore;
+import com.example.bwqueue.queue.QueueManager.QueueEntry;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.concrete.Category;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * One game from batch to cleanup, driven as an async state machine:
+ * FORMING -> CHANNELS_READY -> ARENA_STARTED -> RUNNING -> ENDED -> CLEANED.
+ *
+ * Each step is a continuation on a JDA future, a Bukkit main-thread task or the BedWars1058
+ * game-end event, so a running game holds no thread. Any failure jumps straight to CLEANED.
+ */
+public class GameSession {
+
+    public enum State { FORMING, CHANNELS_READY, ARENA_STARTED, RUNNING, ENDED, CLEANED }
+
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    private final int id = SEQ.incrementAndGet();
+    private final QueueManager manager;
+    private final PluginConfig config;
+    private final Logger log;
+    private final ScheduledExecutorService timers;
+    private final Executor store;
+    private final QueueShard shard;
+    private final List<QueueEntry> red;
+    private final List<QueueEntry> green;
+    private final Guild guild;
+    private final BedWarsService.ArenaLease lease;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.FORMING);
+    private final long createdAtNanos = System.nanoTime();
+
+    private volatile Category category;
+    private volatile boolean categoryCreated;
+    private volatile TextChannel text;
+    private volatile VoiceChannel redVc;
+    private volatile VoiceChannel greenVc;
+    private volatile ChannelPool.Slot slot;
+    private volatile long sessionId = -1L;
+    private volatile String arenaName;
+    private volatile ScheduledFuture<?> timeout;
+
+    GameSession(QueueManager manager, PluginConfig config, ScheduledExecutorService timers, Executor store, QueueShard shard,
+                List<QueueEntry> red, List<QueueEntry> green, BedWarsService.ArenaLease lease, Logger log) {
+        this.manager = manager;
+        this.config = config;
+        this.timers = timers;
+        this.store = store;
+        this.shard = shard;
+        this.red = red;
+        this.green = green;
+        this.guild = red.isEmpty() ? green.get(0).guild : red.get(0).guild;
+        this.lease = lease;
+        this.log = log;
+    }
+
+    /**
+     * Kicks off the pipeline and returns immediately.
+     */
+    void start() {
+        createChannels()
+                .thenCompose(v -> onChannelsReady())
+                .thenAccept(this::onPlayersMoved)
+                .thenCompose(v -> CompletableFuture.supplyAsync(() -> manager.recordSessionStart(shard.getArenaGroup()), store))
+                .thenCompose(sid -> {
+                    sessionId = sid;
+                    return startArena();
+                })
+                .thenAccept(this::onArenaStarted)
+                .exceptionally(t -> {
+                    fail(t);
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> createChannels() {
+        Category configured = manager.getBot().getGamesCategory(guild);
+        ChannelPool pool = manager.getBot().getChannelPool();
+        if (configured != null && pool != null && pool.isEnabled()) {
+            // Lease a warm slot: usually no REST call at all
+            category = configured;
+            return pool.acquire(guild, configured).thenAccept(s -> {
+                slot = s;
+                text = s.getText();
+                redVc = s.getRed();
+                greenVc = s.getGreen();
+            });
+        }
+        CompletableFuture<Category> cat;
+        if (configured != null) {
+            cat = CompletableFuture.completedFuture(configured);
+        } else {
+            // Create a category per game if none specified
+            categoryCreated = true;
+            cat = rest().submit(RestScheduler.Lane.CHANNEL, guild.createCategory("bw-game-" + System.currentTimeMillis()/1000L));
+        }
+        return cat.thenCompose(c -> {
+            category = c;
+            CompletableFuture<TextChannel> t = rest().submit(RestScheduler.Lane.CHANNEL, guild.createTextChannel("bw-game-chat", c));
+            CompletableFuture<VoiceChannel> r = rest().submit(RestScheduler.Lane.CHANNEL, guild.createVoiceChannel("team-1-red", c));
+            CompletableFuture<VoiceChannel> g = rest().submit(RestScheduler.Lane.CHANNEL, guild.createVoiceChannel("team-2-green", c));
+            return CompletableFuture.allOf(t, r, g).thenRun(() -> {
+                text = t.join();
+                redVc = r.join();
+                greenVc = g.join();
+            });
+        });
+    }
+
+    private CompletableFuture<VoiceMoveService.Result> onChannelsReady() {
+        advance(State.FORMING, State.CHANNELS_READY);
+        // Move users and announce; the arena waits until everyone is moved or the moves time out
+        say("Spinning up a BedWars game for group '" + shard.getArenaGroup() + "' with " + (red.size() + green.size())
+                + " players. Teams of size " + shard.getTeamSize() + ".");
+        Map<Member, VoiceChannel> targets = new LinkedHashMap<>();
+        for (QueueEntry qe : red) targets.put(qe.member, redVc);
+        for (QueueEntry qe : green) targets.put(qe.member, greenVc);
+        return manager.getBot().getVoiceMoves().moveAll(guild, targets);
+    }
+
+    private void onPlayersMoved(VoiceMoveService.Result moves) {
+        if (config.isDebug()) {
+            log.info("[BWQueue] Game #" + id + " moved " + moves.count(VoiceMoveService.Outcome.MOVED) + "/" + moves.getOutcomes().size()
+                    + " players in " + moves.getTookMillis() + "ms");
+        }
+        if (moves.allMoved()) return;
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Member, VoiceMoveService.Outcome> e : moves.getOutcomes().entrySet()) {
+            if (e.getValue() == VoiceMoveService.Outcome.MOVED) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(e.getKey().getEffectiveName());
+        }
+        say("Could not move " + sb + " to their team channel; join it manually.");
+    }
+
+    // Arena calls must happen on the server main thread
+    private CompletableFuture<String> startArena() {
+        CompletableFuture<String> f = new CompletableFuture<>();
+        Bukkit.getScheduler().runTask(BWQueuePlugin.get(), () -> {
+            try {
+                List<Player> redPlayers = online(red);
+                List<Player> greenPlayers = online(green);
+                if (redPlayers.size() != red.size() || greenPlayers.size() != green.size()) {
+                    throw new IllegalStateException("a player went offline before the arena started");
+                }
+                String arena = manager.getBedWars().startMatch(lease, redPlayers, greenPlayers);
+                if (arena == null) throw new IllegalStateException("arena '" + lease.getArenaName() + "' could not be started");
+                f.complete(arena);
+            } catch (Throwable t) {
+                f.completeExceptionally(t);
+            }
+        });
+        return f;
+    }
+
+    private void onArenaStarted(String arena) {
+        arenaName = arena;
+        advance(State.CHANNELS_READY, State.ARENA_STARTED);
+        Map<UUID, String> names = new HashMap<>();
+        Map<UUID, String> teams = new HashMap<>();
+        for (QueueEntry qe : red) { names.put(qe.uuid, qe.name); teams.put(qe.uuid, "Red"); }
+        for (QueueEntry qe : green) { names.put(qe.uuid, qe.name); teams.put(qe.uuid, "Green"); }
+        manager.getStats().begin(sessionId, names, teams);
+        for (QueueEntry qe : red) manager.getSessions().set(qe.uuid, sessionId, "Red");
+        for (QueueEntry qe : green) manager.getSessions().set(qe.uuid, sessionId, "Green");
+        manager.registerRunning(this);
+        advance(State.ARENA_STARTED, State.RUNNING);
+        say("Game started on arena '" + arena + "'. Good luck!");
+
+        // Without the BedWars1058 API no end event will ever arrive: keep the old 15 s stub game.
+        // Otherwise the timeout only guards against a missed end event.
+        long seconds = manager.getBedWars().isApiAvailable() ? config.getGameTimeoutMinutes() * 60L : 15L;
+        timeout = timers.schedule(() -> end(null), seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Game over, from the BedWars1058 end event (winners known) or the timeout (winners null).
+     */
+    void end(Collection<UUID> winners) {
+        if (!state.compareAndSet(State.RUNNING, State.ENDED)) return;
+        if (timeout != null) timeout.cancel(false);
+        String winner = winnerTeam(winners);
+        CompletableFuture.supplyAsync(() -> {
+                    manager.recordSessionEnd(sessionId, winner);
+                    // Ratings first: the MVP comes from the counters that recordSessionStats drops. Only games
+                    // decided by BedWars1058 count; timeouts and the stub mode's placeholder winner do not
+                    List<RatingStore.Change> changes = winners == null || winner == null ? Collections.<RatingStore.Change>emptyList()
+                            : manager.settleRatings(sessionId, uuids("Red".equals(winner) ? red : green), uuids("Red".equals(winner) ? green : red));
+                    manager.recordSessionStats(sessionId);
+                    return changes;
+                }, store)
+                .whenComplete((changes, t) -> {
+                    if (t != null) log.warning("[BWQueue] Failed to record end of game #" + id + ": " + t.getMessage());
+                    sendSummary(winner, changes != null ? changes : Collections.<RatingStore.Change>emptyList());
+                    cleanup();
+                });
+    }
+
+    private String winnerTeam(Collection<UUID> winners) {
+        if (winners == null) return manager.getBedWars().isApiAvailable() ? null : "Red"; // Placeholder in stub mode
+        for (QueueEntry qe : red) if (winners.contains(qe.uuid)) return "Red";
+        for (QueueEntry qe : green) if (winners.contains(qe.uuid)) return "Green";
+        return null;
+    }
+
+    private static List<UUID> uuids(List<QueueEntry> team) {
+        List<UUID> out = new ArrayList<>(team.size());
+        for (QueueEntry qe : team) out.add(qe.uuid);
+        return out;
+    }
+
+    private void sendSummary(String winner, List<RatingStore.Change> changes) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Winner: ").append(winner != null ? winner : "none (timed out)").append("\n");
+        sb.append("Players:\n");
+        sb.append("Red: "); for (QueueEntry qe : red) sb.append(qe.name).append(", "); if (sb.length()>6) sb.setLength(sb.length()-2); sb.append("\n");
+        sb.append("Green: "); for (QueueEntry qe : green) sb.append(qe.name).append(", "); if (sb.length()>8) sb.setLength(sb.length()-2); sb.append("\n");
+        if (!changes.isEmpty()) {
+            Map<UUID, String> names = new HashMap<>();
+            for (QueueEntry qe : red) names.put(qe.uuid, qe.name);
+            for (QueueEntry qe : green) names.put(qe.uuid, qe.name);
+            sb.append("ELO:\n");
+            for (RatingStore.Change c : changes) {
+                sb.append(names.get(c.uuid)).append(": ").append(c.before).append(" -> ").append(c.after)
+                        .append(" (").append(c.delta() >= 0 ? "+" : "").append(c.delta()).append(c.mvp ? ", MVP" : "").append(")\n");
+            }
+        }
+        say("Game summary:\n" + sb);
+    }
+
+    private void fail(Throwable t) {
+        Throwable cause = t instanceof java.util.concurrent.CompletionException && t.getCause() != null ? t.getCause() : t;
+        log.warning("[BWQueue] Game #" + id + " failed in state " + state.get() + ": " + cause.getMessage());
+        if (text != null) {
+            say("Could not start the game: " + cause.getMessage());
+        }
+        long sid = sessionId;
+        if (sid >= 0) {
+            // Close the row so retention and stats do not take it for a game still running
+            CompletableFuture.runAsync(() -> manager.recordSessionFailed(sid), store);
+        }
+        cleanup();
+    }
+
+    private void cleanup() {
+        State prev = state.getAndSet(State.CLEANED);
+        if (prev == State.CLEANED) return;
+        if (timeout != null) timeout.cancel(false);
+        for (QueueEntry qe : red) manager.getSessions().clear(qe.uuid);
+        for (QueueEntry qe : green) manager.getSessions().clear(qe.uuid);
+        manager.getStats().discard(sessionId); // already written if the game ended normally
+        // Cleanup channels
+        int ttl = config.getTextChannelTtlSeconds();
+        Runnable deleteText;
+        if (slot != null) {
+            // Pooled: the slot goes back as a whole once the text channel has had its time
+            ChannelPool.Slot s = slot;
+            deleteText = () -> manager.getBot().getChannelPool().release(s);
+        } else {
+            try {
+                if (config.isDeleteTeamVoiceAtEnd()) {
+                    if (redVc != null) rest().delete(redVc);
+                    if (greenVc != null) rest().delete(greenVc);
+                }
+            } catch (Exception ignored) {}
+            deleteText = () -> {
+                try { if (text != null) rest().delete(text); } catch (Exception ignored) {}
+                try { if (categoryCreated && category != null && config.isDeleteTeamVoiceAtEnd()) rest().delete(category); } catch (Exception ignored) {}
+            };
+        }
+        if (ttl <= 0) deleteText.run();
+        else timers.schedule(deleteText, ttl, TimeUnit.SECONDS);
+        if (config.isDebug()) {
+            log.info("[BWQueue] Game #" + id + " cleaned up after " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - createdAtNanos) + "s");
+        }
+        manager.gameFinished(this);
+    }
+
+    private void advance(State from, State to) {
+        if (!state.compareAndSet(from, to)) {
+            throw new IllegalStateException("game #" + id + " expected " + from + " but was " + state.get());
+        }
+        if (config.isDebug()) log.info("[BWQueue] Game #" + id + " " + from + " -> " + to);
+    }
+
+    private void say(String message) {
+        try { rest().submit(RestScheduler.Lane.GAME_MESSAGE, text.sendMessage(message)); } catch (Exception ignored) {}
+    }
+
+    private RestScheduler rest() {
+        return manager.getBot().getRest();
+    }
+
+    private static List<Player> online(List<QueueEntry> entries) {
+        List<Player> out = new ArrayList<>();
+        for (QueueEntry qe : entries) {
+            Player p = Bukkit.getPlayer(qe.uuid);
+            if (p != null && p.isOnline()) out.add(p);
+        }
+        return out;
+    }
+
+    public int getId() { return id; }
+    public State getState() { return state.get(); }
+    public String getArenaName() { return arenaName; }
+    public BedWarsService.ArenaLease getLease() { return lease; }
+    public long getSessionId() { return sessionId; }
+}
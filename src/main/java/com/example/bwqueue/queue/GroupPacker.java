@@ -0,0 +1,89 @@
+package com.example.bwqueue.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Packs queue groups (solo players or whole parties) into two teams of exactly {@code teamSize}.
+ *
+ * Groups are offered in priority order (join order, or rating closeness in ELO mode) and taken as
+ * soon as the groups offered so far can fill both teams. Whether they can is an exact search over
+ * how many groups of each size go into each team, so a fill is found whenever one exists, whatever
+ * order the sizes arrive in. Within a size the earliest groups are used; groups left out keep their
+ * queue position.
+ *
+ * A team uses at most {@code teamSize / s} groups of size s, so no more than {@code 2 * teamSize / s}
+ * of them are kept and the search stays small however many groups are offered.
+ */
+public final class GroupPacker {
+
+    private GroupPacker() {}
+
+    public static final class Packing<T> {
+        public final List<T> red = new ArrayList<>();
+        public final List<T> green = new ArrayList<>();
+
+        public List<T> all() {
+            List<T> out = new ArrayList<>(red.size() + green.size());
+            out.addAll(red);
+            out.addAll(green);
+            return out;
+        }
+    }
+
+    /**
+     * Returns a packing with both teams full, or null if the offered groups cannot fill them.
+     */
+    public static <T> Packing<T> pack(Iterable<T> groups, ToIntFunction<T> size, int teamSize) {
+        if (teamSize <= 0) return null;
+        // bySize.get(s): offered groups of size s, in offer order
+        List<List<T>> bySize = new ArrayList<>(teamSize + 1);
+        for (int s = 0; s <= teamSize; s++) bySize.add(new ArrayList<T>());
+        int[] count = new int[teamSize + 1];
+        int[] red = new int[teamSize + 1];
+        int[] green = new int[teamSize + 1];
+        int offered = 0;
+        for (T g : groups) {
+            int s = size.applyAsInt(g);
+            if (s <= 0 || s > teamSize || count[s] >= 2 * teamSize / s) continue;
+            bySize.get(s).add(g);
+            count[s]++;
+            offered += s;
+            // Without this group there was no fill, so only search once it can be part of one
+            if (offered >= 2 * teamSize && fillRed(count, red, green, teamSize, teamSize, teamSize)) {
+                Packing<T> p = new Packing<>();
+                for (int k = teamSize; k >= 1; k--) {
+                    List<T> same = bySize.get(k);
+                    p.red.addAll(same.subList(0, red[k]));
+                    p.green.addAll(same.subList(red[k], red[k] + green[k]));
+                }
+                return p;
+            }
+        }
+        return null;
+    }
+
+    // Chooses red[s] for sizes s and below, largest first, into a team with room left; then Green from what is left
+    private static boolean fillRed(int[] count, int[] red, int[] green, int s, int room, int teamSize) {
+        if (room == 0) return fillGreen(count, red, green, teamSize, teamSize);
+        if (s == 0) return false;
+        for (int n = Math.min(count[s], room / s); n >= 0; n--) {
+            red[s] = n;
+            if (fillRed(count, red, green, s - 1, room - n * s, teamSize)) return true;
+        }
+        red[s] = 0;
+        return false;
+    }
+
+    private static boolean fillGreen(int[] count, int[] red, int[] green, int s, int room) {
+        if (room == 0) return true;
+        if (s == 0) return false;
+        for (int n = Math.min(count[s] - red[s], room / s); n >= 0; n--) {
+            green[s] = n;
+            if (fillGreen(count, red, green, s - 1, room - n * s)) return true;
+        }
+        green[s] = 0;
+        return false;
+    }
+}
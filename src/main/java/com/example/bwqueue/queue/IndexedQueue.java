@@ -0,0 +1,166 @@
+package com.example.bwqueue.queue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * FIFO queue keyed by a long id (Discord member id) with constant-time add, dedup and removal.
+ *
+ * Entries are kept in a doubly linked list in join order, so removing someone from the middle
+ * never reorders the rest. Positions are answered from a Fenwick tree over insertion sequence
+ * numbers (O(log n)); the tree is compacted when the sequence space runs out.
+ *
+ * All methods are synchronized; the queue is touched from the JDA event thread and the matchmaker.
+ */
+public class IndexedQueue<T> {
+
+    private static final class Node<T> {
+        final long key;
+        final T value;
+        int seq;
+        Node<T> prev;
+        Node<T> next;
+        Node(long key, T value, int seq) {
+            this.key = key; this.value = value; this.seq = seq;
+        }
+    }
+
+    private final Map<Long, Node<T>> index = new HashMap<>();
+    private Node<T> head;
+    private Node<T> tail;
+
+    // Fenwick tree over sequence numbers 1..capacity; a 1 marks a live entry
+    private int[] tree = new int[64 + 1];
+    private int nextSeq = 1;
+
+    /**
+     * Appends the value at the tail. Returns false (and keeps the original position) if the key is already queued.
+     */
+    public synchronized boolean add(long key, T value) {
+        if (index.containsKey(key)) return false;
+        if (nextSeq >= tree.length) compact();
+        Node<T> n = new Node<>(key, value, nextSeq++);
+        if (tail == null) {
+            head = tail = n;
+        } else {
+            tail.next = n;
+            n.prev = tail;
+            tail = n;
+        }
+        index.put(key, n);
+        update(n.seq, 1);
+        return true;
+    }
+
+    public synchronized T remove(long key) {
+        Node<T> n = index.remove(key);
+        if (n == null) return null;
+        if (n.prev != null) n.prev.next = n.next; else head = n.next;
+        if (n.next != null) n.next.prev = n.prev; else tail = n.prev;
+        n.prev = n.next = null;
+        update(n.seq, -1);
+        return n.value;
+    }
+
+    public synchronized boolean contains(long key) {
+        return index.containsKey(key);
+    }
+
+    public synchronized T get(long key) {
+        Node<T> n = index.get(key);
+        return n == null ? null : n.value;
+    }
+
+    /**
+     * 1-based position of the key in join order, or -1 if not queued.
+     */
+    public synchronized int positionOf(long key) {
+        Node<T> n = index.get(key);
+        if (n == null) return -1;
+        return prefix(n.seq);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    /**
+     * Copy of the queued values in join order. The queue itself is not modified.
+     */
+    public synchronized List<T> snapshot() {
+        List<T> out = new ArrayList<>(index.size());
+        for (Node<T> n = head; n != null; n = n.next) out.add(n.value);
+        return out;
+    }
+
+    /**
+     * The oldest {@code limit} values in join order, without removing them.
+     */
+    public synchronized List<T> first(int limit) {
+        List<T> out = new ArrayList<>(Math.min(limit, index.size()));
+        for (Node<T> n = head; n != null && out.size() < limit; n = n.next) out.add(n.value);
+        return out;
+    }
+
+    /**
+     * Walks the values in join order in place, without copying. The caller holds the queue's lock for
+     * the whole walk; removing the value just returned is allowed.
+     */
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private Node<T> next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public T next() {
+                if (next == null) throw new NoSuchElementException();
+                Node<T> n = next;
+                next = n.next;
+                return n.value;
+            }
+        };
+    }
+
+    public synchronized void clear() {
+        index.clear();
+        head = tail = null;
+        tree = new int[64 + 1];
+        nextSeq = 1;
+    }
+
+    private void compact() {
+        // Renumber live nodes 1..n in list order and size the tree with headroom
+        int capacity = 64;
+        while (capacity < index.size() * 2 + 1) capacity <<= 1;
+        tree = new int[capacity + 1];
+        int seq = 1;
+        for (Node<T> n = head; n != null; n = n.next) {
+            n.seq = seq;
+            update(seq, 1);
+            seq++;
+        }
+        nextSeq = seq;
+    }
+
+    private void update(int i, int delta) {
+        for (; i < tree.length; i += i & -i) tree[i] += delta;
+    }
+
+    private int prefix(int i) {
+        int sum = 0;
+        for (; i > 0; i -= i & -i) sum += tree[i];
+        return sum;
+    }
+}
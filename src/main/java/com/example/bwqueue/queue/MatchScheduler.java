@@ -0,0 +1,142 @@
+package com.example.bwqueue.queue;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Runs the matchmaking pass when queue state changes instead of on a fixed poll.
+ *
+ * Signals arriving within the debounce window are coalesced into a single pass. Passes of one
+ * scheduler never overlap, even when several schedulers share a thread pool. A slow sweep still fires
+ * periodically as a safety net for state changes we are not told about (e.g. a player logging off the
+ * Minecraft server).
+ *
+ * The pass returns true when it formed a batch; in that case it is re-run immediately in case the
+ * queue holds enough players for another one, and the delay from the first signal to the match is recorded.
+ */
+public class MatchScheduler {
+
+    public enum Trigger { ENQUEUE, DEQUEUE, ARENA_FREED, BATCH_CANCELLED, SWEEP }
+
+    private final String name;
+    private final BooleanSupplier pass;
+    private final long debounceMillis;
+    private final Logger log;
+    private final ScheduledExecutorService exec;
+    private final boolean ownsExecutor;
+    private java.util.concurrent.ScheduledFuture<?> sweepTask;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicBoolean rerun = new AtomicBoolean(false);
+    // nanoTime of the first unserved state-change signal; 0 when none is outstanding
+    private final AtomicLong firstSignalNanos = new AtomicLong(0L);
+
+    private final AtomicLong passes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong latencySamples = new AtomicLong();
+    private final AtomicLong totalLatencyMicros = new AtomicLong();
+    private volatile long lastLatencyMicros;
+    private volatile long maxLatencyMicros;
+
+    public MatchScheduler(String name, BooleanSupplier pass, long debounceMillis, Logger log) {
+        this(name, pass, debounceMillis, log, Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        }), true);
+    }
+
+    /**
+     * Runs passes on a pool shared with other schedulers; {@link #shutdown()} leaves the pool running.
+     */
+    public MatchScheduler(String name, BooleanSupplier pass, long debounceMillis, Logger log, ScheduledExecutorService shared) {
+        this(name, pass, debounceMillis, log, shared, false);
+    }
+
+    private MatchScheduler(String name, BooleanSupplier pass, long debounceMillis, Logger log, ScheduledExecutorService exec, boolean ownsExecutor) {
+        this.name = name;
+        this.pass = pass;
+        this.debounceMillis = Math.max(0L, debounceMillis);
+        this.log = log;
+        this.exec = exec;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    public void start(long sweepSeconds) {
+        long sweep = Math.max(1L, sweepSeconds);
+        sweepTask = exec.scheduleWithFixedDelay(() -> signal(Trigger.SWEEP), sweep, sweep, TimeUnit.SECONDS);
+    }
+
+    public void signal(Trigger trigger) {
+        if (trigger != Trigger.SWEEP) firstSignalNanos.compareAndSet(0L, System.nanoTime());
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                exec.schedule(this::runPass, trigger == Trigger.SWEEP ? 0L : debounceMillis, TimeUnit.MILLISECONDS);
+            } catch (java.util.concurrent.RejectedExecutionException e) {
+                // shutting down
+            }
+        } else {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    private void runPass() {
+        // Clear the flag first so a signal arriving mid-pass schedules a follow-up pass
+        scheduled.set(false);
+        while (!running.compareAndSet(false, true)) {
+            // Another pool thread is mid-pass for us; it re-runs once done
+            rerun.set(true);
+            if (running.get()) return;
+            // It finished before seeing the flag; take over
+        }
+        rerun.set(false);
+        long since = firstSignalNanos.getAndSet(0L);
+        passes.incrementAndGet();
+        boolean matched = false;
+        try {
+            matched = pass.getAsBoolean();
+        } catch (Exception e) {
+            log.warning("[" + name + "] Matchmaking pass failed: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            running.set(false);
+            // After letting go, so a pass turned away from here on either sets the flag in time or runs itself
+            if (rerun.getAndSet(false)) signal(Trigger.SWEEP);
+        }
+        if (!matched) return;
+        matches.incrementAndGet();
+        if (since != 0L) {
+            long micros = (System.nanoTime() - since) / 1000L;
+            lastLatencyMicros = micros;
+            if (micros > maxLatencyMicros) maxLatencyMicros = micros;
+            totalLatencyMicros.addAndGet(micros);
+            latencySamples.incrementAndGet();
+        }
+        signal(Trigger.SWEEP);
+    }
+
+    public void shutdown() {
+        if (sweepTask != null) sweepTask.cancel(false);
+        if (ownsExecutor) exec.shutdownNow();
+    }
+
+    public String getName() { return name; }
+
+    public long getPasses() { return passes.get(); }
+    public long getCoalescedSignals() { return coalesced.get(); }
+    public long getMatches() { return matches.get(); }
+    public long getLastLatencyMicros() { return lastLatencyMicros; }
+    public long getMaxLatencyMicros() { return maxLatencyMicros; }
+
+    public long getAvgLatencyMicros() {
+        long n = latencySamples.get();
+        return n == 0 ? 0L : totalLatencyMicros.get() / n;
+    }
+}
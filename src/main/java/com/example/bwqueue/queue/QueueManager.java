@@ -4,25 +4,20 @@ import com.example.bwqueue.BWQueuePlugin;
 import com.example.bwqueue.config.PluginConfig;
 import com.example.bwqueue.db.Database;
 import com.example.bwqueue.discord.DiscordBot;
-import com.example.bwqueue.link.LinkingService;
+import com.example.bwqueue.elo.RatingStore;
 import com.example.bwqueue.party.PartyService;
+import com.example.bwqueue.presence.PresenceIndex;
 import com.example.bwqueue.bw.BedWarsService;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
-import net.dv8tion.jda.api.entities.channel.concrete.Category;
-import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
-import net.dv8tion.jda.api.entities.channel.concrete.VoiceChannel;
-import net.dv8tion.jda.api.requests.restaction.ChannelAction;
-import org.bukkit.Bukkit;
 
-import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
@@ -31,286 +26,296 @@ public class QueueManager {
     private final PluginConfig config;
     private final DiscordBot bot;
     private final Database db;
-    private final LinkingService linkingService;
+    private final RatingStore ratings;
+    private final PresenceIndex presence;
     private final Logger log;
 
     private final PartyService partyService;
     private final BedWarsService bedWars;
     private final com.example.bwqueue.session.SessionRegistry sessions;
-
-    private final Queue<QueueEntry> queue = new ConcurrentLinkedQueue<>();
-    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> new Thread(r, "BWQueue-Worker"));
+    private final com.example.bwqueue.session.SessionStatsAggregator stats;
+
+    private final List<QueueShard> shards = new ArrayList<>();
+    private final ScheduledExecutorService matchmakerPool;
+    // Timeouts and delayed deletes of running games; nothing that blocks runs on it
+    private final ScheduledExecutorService gameTimers = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "BWQueue-Games");
+        t.setDaemon(true);
+        return t;
+    });
+    // Session rows, ratings and stats of games. These wait on database commits, which all go through the
+    // single writer anyway, so one thread is enough and a slow commit never holds up a game's timers
+    private final ExecutorService gameStore = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "BWQueue-GameStore");
+        t.setDaemon(true);
+        return t;
+    });
+    // arena name -> running game, for routing BedWars1058 game-end events
+    private final Map<String, GameSession> runningByArena = new java.util.concurrent.ConcurrentHashMap<>();
+    private final Set<GameSession> games = java.util.concurrent.ConcurrentHashMap.newKeySet();
 
     private final AtomicInteger activeGames = new AtomicInteger(0);
 
-    public QueueManager(PluginConfig config, DiscordBot bot, Database db, LinkingService linkingService) {
+    private final TeamPartitioner partitioner;
+
+    public QueueManager(PluginConfig config, DiscordBot bot, Database db, RatingStore ratings, PresenceIndex presence) {
         this.config = config;
         this.bot = bot;
         this.db = db;
-        this.linkingService = linkingService;
+        this.ratings = ratings;
+        this.presence = presence;
         this.log = BWQueuePlugin.get().getLogger();
-        this.partyService = new PartyService(config);
+        this.partyService = new PartyService(config, bot.getRest());
         this.bedWars = new BedWarsService(config);
         this.sessions = new com.example.bwqueue.session.SessionRegistry();
-        startTick();
+        this.stats = new com.example.bwqueue.session.SessionStatsAggregator();
+        this.partitioner = new TeamPartitioner(config.getPartitionBudgetMicros());
+        // Each shard attempts to form games whenever its queue/arena state changes, plus a slow safety-net sweep
+        AtomicInteger threadId = new AtomicInteger();
+        this.matchmakerPool = Executors.newScheduledThreadPool(Math.max(1, config.getMatchmakerThreads()), r -> {
+            Thread t = new Thread(r, "BWQueue-Matchmaker-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (PluginConfig.ShardConfig sc : config.getShards()) {
+            QueueShard shard = new QueueShard(this, config, sc, presence, matchmakerPool, log);
+            shards.add(shard);
+            shard.start();
+            log.info("Queue shard " + shard.getName() + " (" + sc.teamSize + "v" + sc.teamSize + ") ready");
+        }
+        if (shards.isEmpty()) log.warning("No queue voice channel configured; queueing is disabled.");
+        bedWars.onGameEnd(this::onArenaGameEnd);
     }
 
-    private void startTick() {
-        // Periodically attempt to form games
-        Bukkit.getScheduler().runTaskTimerAsynchronously(BWQueuePlugin.get(), () -> {
-            try { tryStartGame(); } catch (Exception e) { e.printStackTrace(); }
-        }, 40L, 40L);
+    public void shutdown() {
+        for (QueueShard shard : shards) shard.shutdown();
+        matchmakerPool.shutdownNow();
+        gameTimers.shutdownNow();
+        gameStore.shutdown();
     }
 
-    public void enqueue(Member member, UUID uuid, String name, Guild guild) {
-        // Ensure not duplicated
-        boolean exists = queue.stream().anyMatch(q -> q.member.getIdLong() == member.getIdLong());
-        if (!exists) {
-            queue.add(new QueueEntry(member, uuid, name, guild, Instant.now().getEpochSecond()));
-            log.info("Enqueued " + name + " (" + uuid + ") from Discord " + member.getUser().getAsTag());
+    /**
+     * The shard fed by this voice channel, or null if it is not a queue channel.
+     */
+    public QueueShard getShardFor(String guildId, String voiceChannelId) {
+        for (QueueShard shard : shards) {
+            if (shard.accepts(guildId, voiceChannelId)) return shard;
         }
+        return null;
     }
 
-    private final List<PendingBatch> pendingBatches = new ArrayList<>();
-
-    public void handlePartyCommand(net.dv8tion.jda.api.events.message.MessageReceivedEvent event) {
-        if (partyService != null) partyService.handle(event);
+    public boolean isQueueChannel(String guildId, String voiceChannelId) {
+        return getShardFor(guildId, voiceChannelId) != null;
     }
 
-    private void tryStartGame() {
-        // First, try to allocate pending batches if any arena is available
-        Iterator<PendingBatch> it = pendingBatches.iterator();
-        while (it.hasNext()) {
-            PendingBatch pb = it.next();
-            if (activeGames.get() >= config.getMaxConcurrentGames()) break;
-            if (isBatchInvalid(pb)) {
-                pb.textChannel.sendMessage("Batch cancelled: someone left the queue or went offline.").queue();
-                cleanupBatchChannels(pb);
-                it.remove();
-                continue;
-            }
-            if (isArenaAvailable(getArenaGroupFromConfig())) {
-                it.remove();
-                activeGames.incrementAndGet();
-                worker.submit(() -> orchestrateGame(pb.entries));
-            }
-        }
+    public void enqueue(Member member, UUID uuid, String name, Guild guild, String queueVoiceId) {
+        QueueShard shard = getShardFor(guild.getId(), queueVoiceId);
+        if (shard == null || shard.isQueued(member.getIdLong())) return;
+        PartyService.Party party = config.isPartyEnabled() ? partyService.getPartyOf(guild.getIdLong(), member.getIdLong()) : null;
+        int elo = ratings.getRating(uuid);
+        shard.enqueue(member, uuid, name, guild, party, elo);
+    }
 
-        if (activeGames.get() >= config.getMaxConcurrentGames()) return;
-        int teamSize = getConfiguredTeamSize();
-        int min = Math.max(config.getMinPlayers(), teamSize * 2); // ensure two full teams
-        int maxPlayers = 2 * teamSize; // always 2 teams only
-
-        List<QueueEntry> candidates = new ArrayList<>();
-        while (candidates.size() < maxPlayers) {
-            QueueEntry e = queue.poll();
-            if (e == null) break;
-            // Verify still eligible (online, in queue VC)
-            org.bukkit.entity.Player p = Bukkit.getPlayer(e.uuid);
-            boolean online = p != null && p.isOnline();
-            boolean inQueueVc = e.member.getVoiceState() != null && e.member.getVoiceState().inAudioChannel() &&
-                    e.member.getVoiceState().getChannel().getId().equals(config.getQueueVoiceId());
-            if (!online || !inQueueVc) {
-                // skip
-                continue;
-            }
-            candidates.add(e);
-        }
+    public void dequeue(Guild guild, String queueVoiceId, long memberId) {
+        QueueShard shard = getShardFor(guild.getId(), queueVoiceId);
+        if (shard != null) shard.dequeue(memberId);
+    }
 
-        if (candidates.size() < min) {
-            // put back
-            for (QueueEntry e : candidates) queue.add(e);
-            return;
-        }
+    /**
+     * A player logged off the Minecraft server.
+     */
+    public void playerLeft(UUID uuid) {
+        for (QueueShard shard : shards) shard.playerLeft(uuid);
+    }
 
-        // Apply party grouping if enabled
-        List<QueueEntry> batch = buildTeamsRespectingParties(candidates, teamSize);
-        if (batch.size() < min) {
-            for (QueueEntry e : candidates) queue.add(e);
-            return;
+    /**
+     * 1-based position in whichever queue the member is in, or -1 if not queued.
+     */
+    public int getQueuePosition(long memberId) {
+        for (QueueShard shard : shards) {
+            int pos = shard.getQueuePosition(memberId);
+            if (pos > 0) return pos;
         }
+        return -1;
+    }
 
-        // If arena available, start immediately; else keep as pending batch; do NOT move people to waiting room.
-        if (isArenaAvailable(getArenaGroupFromConfig())) {
-            activeGames.incrementAndGet();
-            worker.submit(() -> orchestrateGame(batch));
-            // return leftovers to queue
-            Set<Long> used = new HashSet<>();
-            for (QueueEntry e : batch) used.add(e.member.getIdLong());
-            for (QueueEntry e : candidates) if (!used.contains(e.member.getIdLong())) queue.add(e);
-        } else {
-            // create a temporary text channel for status and keep in pending list
-            Guild guild = batch.get(0).guild;
-            Category cat = bot.getGamesCategory(guild);
-            if (cat == null) cat = guild.createCategory("bw-pending-" + System.currentTimeMillis()/1000L).complete();
-            TextChannel text = guild.createTextChannel("bw-pending", cat).complete();
-            text.sendMessage("No arenas free for group '" + getArenaGroupFromConfig() + "'. Your game will start automatically as soon as one is free. If someone leaves the queue VC or goes offline, batch will cancel.").queue();
-            pendingBatches.add(new PendingBatch(batch, text, cat));
-            // return leftovers to queue
-            Set<Long> used = new HashSet<>();
-            for (QueueEntry e : batch) used.add(e.member.getIdLong());
-            for (QueueEntry e : candidates) if (!used.contains(e.member.getIdLong())) queue.add(e);
-        }
+    public void handlePartyCommand(net.dv8tion.jda.api.events.message.MessageReceivedEvent event) {
+        if (partyService != null) partyService.handle(event);
     }
 
-    private void orchestrateGame(List<QueueEntry> batch) {
-        // Always 2 teams: Red and Green
-        int teamSize = getConfiguredTeamSize();
-        List<List<QueueEntry>> teams = new ArrayList<>();
-        teams.add(new ArrayList<>()); // Red
-        teams.add(new ArrayList<>()); // Green
+    boolean hasGameCapacity() {
+        return activeGames.get() < config.getMaxConcurrentGames();
+    }
 
-        // If parties are enabled, try to keep party members on same team
-        List<QueueEntry> arranged = buildTeamsRespectingParties(batch, teamSize);
-        for (int i = 0; i < arranged.size(); i++) {
-            teams.get(i % 2).add(arranged.get(i));
+    /**
+     * Claims one of the maxConcurrentGames slots; shards race for them from different threads.
+     */
+    boolean tryAcquireGameSlot() {
+        while (true) {
+            int n = activeGames.get();
+            if (n >= config.getMaxConcurrentGames()) return false;
+            if (activeGames.compareAndSet(n, n + 1)) return true;
         }
+    }
 
-        Guild guild = batch.get(0).guild;
-        Category cat = bot.getGamesCategory(guild);
-        String arenaGroup = getArenaGroupFromConfig();
+    /**
+     * Starts the game lifecycle for a packed batch; the caller already holds a game slot and an arena lease.
+     */
+    void launchGame(QueueShard shard, GroupPacker.Packing<QueueGroup> packing, BedWarsService.ArenaLease lease) {
+        // Always 2 teams: Red and Green. Balanced by ELO; parties stay on the same team
+        List<List<QueueEntry>> teams = splitTeams(packing, shard.getTeamSize());
+        GameSession game = new GameSession(this, config, gameTimers, gameStore, shard, teams.get(0), teams.get(1), lease, log);
+        games.add(game);
+        game.start();
+    }
 
-        // Create a category per game if none specified
-        if (cat == null) {
-            cat = guild.createCategory("bw-game-" + System.currentTimeMillis()/1000L).complete();
-        }
+    void registerRunning(GameSession game) {
+        if (game.getArenaName() != null) runningByArena.put(game.getArenaName(), game);
+    }
 
-        TextChannel text = guild.createTextChannel("bw-game-chat", cat).complete();
-        VoiceChannel redVc = guild.createVoiceChannel("team-1-red", cat).complete();
-        VoiceChannel greenVc = guild.createVoiceChannel("team-2-green", cat).complete();
+    void gameFinished(GameSession game) {
+        if (!games.remove(game)) return;
+        if (game.getArenaName() != null) runningByArena.remove(game.getArenaName(), game);
+        bedWars.release(game.getLease());
+        activeGames.decrementAndGet();
+        // A game slot (and possibly an arena) freed up: every shard may be able to start now
+        for (QueueShard s : shards) s.signal(MatchScheduler.Trigger.ARENA_FREED);
+    }
 
-        // Move users and announce
-        text.sendMessage("Spinning up a BedWars game for group '" + arenaGroup + "' with " + batch.size() + " players. Teams of size " + teamSize + ".").queue();
-        for (QueueEntry qe : teams.get(0)) {
-            safeMove(guild, qe.member, redVc);
-        }
-        for (QueueEntry qe : teams.get(1)) {
-            safeMove(guild, qe.member, greenVc);
-        }
+    // BedWars1058 GameEndEvent, on the main thread
+    private void onArenaGameEnd(String arenaName, List<UUID> winners) {
+        GameSession game = arenaName != null ? runningByArena.get(arenaName) : null;
+        if (game != null) game.end(winners);
+    }
 
-        long sessionId = recordSessionStart(arenaGroup);
-        try {
-            text.sendMessage("[Stub] Starting game on available arena from group '" + arenaGroup + "'...").queue();
-            // TODO: Select an arena, add players to teams, start arena via BW1058 API.
-
-            // Wait for game to end - placeholder sleep or hook into events
-            try { Thread.sleep(15000L); } catch (InterruptedException ignored) {}
-
-            String winner = "Red"; // Placeholder
-            recordSessionEnd(sessionId, winner);
-
-            // Build scorecard (placeholder)
-            StringBuilder sb = new StringBuilder();
-            sb.append("Winner: ").append(winner).append("\n");
-            sb.append("Players:\n");
-            sb.append("Red: "); for (QueueEntry qe : teams.get(0)) sb.append(qe.name).append(", "); if (sb.length()>6) sb.setLength(sb.length()-2); sb.append("\n");
-            sb.append("Green: "); for (QueueEntry qe : teams.get(1)) sb.append(qe.name).append(", "); if (sb.length()>8) sb.setLength(sb.length()-2); sb.append("\n");
-            text.sendMessage("Game summary:\n" + sb).queue();
-        } finally {
-            // Cleanup channels
-            try {
-                if (config.isDeleteTeamVoiceAtEnd()) {
-                    redVc.delete().queue();
-                    greenVc.delete().queue();
-                }
-            } catch (Exception ignored) {}
-            int ttl = config.getTextChannelTtlSeconds();
-            if (ttl <= 0) {
-                try { text.delete().queue(); } catch (Exception ignored) {}
-            } else {
-                Bukkit.getScheduler().runTaskLaterAsynchronously(BWQueuePlugin.get(), () -> {
-                    try { text.delete().queue(); } catch (Exception ignored) {}
-                }, ttl * 20L);
-            }
-            activeGames.decrementAndGet();
-        }
+    DiscordBot getBot() {
+        return bot;
     }
 
-    private void safeMove(Guild guild, Member m, VoiceChannel vc) {
-        try { guild.moveVoiceMember(m, vc).queue(); } catch (Exception ex) { log.warning("Failed to move " + m.getUser().getAsTag() + ": " + ex.getMessage()); }
+    BedWarsService getBedWars() {
+        return bedWars;
     }
 
-    private boolean isArenaAvailable(String group) {
-        try {
-            return bedWars.isArenaAvailable(group);
-        } catch (Exception e) {
-            return true; // be optimistic
-        }
+    public com.example.bwqueue.session.SessionRegistry getSessions() {
+        return sessions;
+    }
+
+    public com.example.bwqueue.session.SessionStatsAggregator getStats() {
+        return stats;
     }
 
-    private String getArenaGroupFromConfig() {
-        String type = config.getQueueType();
-        return "3".equals(type) ? config.getGroupFor3() : config.getGroupFor4();
+    static int playerCount(List<QueueGroup> groups) {
+        int n = 0;
+        for (QueueGroup g : groups) n += g.size();
+        return n;
     }
 
-    private int getConfiguredTeamSize() {
-        String type = config.getQueueType();
-        if ("3".equals(type)) return 3;
-        if ("4".equals(type)) return 4;
-        return Math.max(1, config.getTeamSize());
+    static List<QueueEntry> members(List<QueueGroup> groups) {
+        List<QueueEntry> out = new ArrayList<>();
+        for (QueueGroup g : groups) out.addAll(g.members);
+        return out;
     }
 
-    private boolean isBatchInvalid(PendingBatch pb) {
-        for (QueueEntry e : pb.entries) {
-            org.bukkit.entity.Player p = Bukkit.getPlayer(e.uuid);
-            boolean online = p != null && p.isOnline();
-            boolean inQueueVc = e.member.getVoiceState() != null && e.member.getVoiceState().inAudioChannel() &&
-                    e.member.getVoiceState().getChannel().getId().equals(config.getQueueVoiceId());
-            if (!online || !inQueueVc) return true;
+    BedWarsService.ArenaLease reserveArena(String group) {
+        try {
+            return bedWars.reserveArena(group, config.getArenaLeaseSeconds() * 1000L);
+        } catch (Exception e) {
+            log.warning("Arena reservation failed for group " + group + ": " + e.getMessage());
+            return null;
         }
-        return false;
     }
 
-    private void cleanupBatchChannels(PendingBatch pb) {
-        try { pb.textChannel.delete().queue(); } catch (Exception ignored) {}
-        try { if (pb.categoryCreated) pb.category.delete().queue(); } catch (Exception ignored) {}
+    /**
+     * Red at index 0, Green at index 1. Minimizes the ELO sum difference without splitting groups;
+     * if the partitioner finds no split in time, the packer's own assignment is kept.
+     */
+    private List<List<QueueEntry>> splitTeams(GroupPacker.Packing<QueueGroup> packing, int teamSize) {
+        List<QueueGroup> groups = packing.all();
+        // Works on a copy of each group's members, so sizes, ratings and teams all agree
+        List<List<QueueEntry>> members = new ArrayList<>(groups.size());
+        int[] sizes = new int[groups.size()];
+        int[] ratings = new int[groups.size()];
+        for (int i = 0; i < groups.size(); i++) {
+            List<QueueEntry> copy = new ArrayList<>(groups.get(i).members);
+            members.add(copy);
+            sizes[i] = copy.size();
+            for (QueueEntry e : copy) ratings[i] += e.elo;
+        }
+        boolean[] red = partitioner.partition(sizes, ratings, teamSize);
+        List<List<QueueEntry>> teams = new ArrayList<>();
+        teams.add(new ArrayList<>()); // Red
+        teams.add(new ArrayList<>()); // Green
+        for (int i = 0; i < groups.size(); i++) {
+            boolean toRed = red != null ? red[i] : i < packing.red.size();
+            teams.get(toRed ? 0 : 1).addAll(members.get(i));
+        }
+        if (config.isDebug()) {
+            log.info("Team split took " + (partitioner.getLastNanos() / 1000L) + "us over " + groups.size() + " groups");
+        }
+        return teams;
     }
 
-    private List<QueueEntry> buildTeamsRespectingParties(List<QueueEntry> candidates, int teamSize) {
-        if (!config.isPartyEnabled()) return new ArrayList<>(candidates);
-        // Very simple: try to keep members of the same party together by grouping by party leader
-        Map<Long, List<QueueEntry>> byLeader = new LinkedHashMap<>();
-        for (QueueEntry e : candidates) {
-            long gid = e.guild.getIdLong();
-            // We cannot access PartyService here for membership without exposing it; for now, return as-is.
-            // TODO: Integrate PartyService lookup to group members by party.
+    long recordSessionStart(String group) {
+        try {
+            return db.writeAndWait(sql -> {
+                PreparedStatement ps = sql.prepareReturningKeys("INSERT INTO sessions(arena, group_name, started_at) VALUES(?,?,?)");
+                ps.setString(1, "TBD");
+                ps.setString(2, group);
+                ps.setLong(3, Instant.now().getEpochSecond());
+                ps.executeUpdate();
+                try (java.sql.ResultSet rs = ps.getGeneratedKeys()) {
+                    return rs.next() ? rs.getLong(1) : -1L;
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
-        return new ArrayList<>(candidates);
+        return -1L;
     }
 
-    static class PendingBatch {
-        final List<QueueEntry> entries;
-        final TextChannel textChannel;
-        final Category category;
-        final boolean categoryCreated;
-        PendingBatch(List<QueueEntry> entries, TextChannel textChannel, Category category) {
-            this.entries = entries; this.textChannel = textChannel; this.category = category; this.categoryCreated = false;
+    void recordSessionStats(long sessionId) {
+        try {
+            stats.flush(db, sessionId);
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
     }
 
-    private long recordSessionStart(String group) {
-        try (Connection c = db.getConnection();
-             PreparedStatement ps = c.prepareStatement("INSERT INTO sessions(arena, group_name, started_at) VALUES(?,?,?)")) {
-            ps.setString(1, "TBD");
-            ps.setString(2, group);
-            ps.setLong(3, Instant.now().getEpochSecond());
-            ps.executeUpdate();
-            try (java.sql.ResultSet rs = c.createStatement().executeQuery("SELECT last_insert_rowid()")) {
-                if (rs.next()) return rs.getLong(1);
-            }
+    /**
+     * Settles the ratings of a decided game; the winner with the most kills is its MVP. Call before
+     * {@link #recordSessionStats}, which drops the game's counters.
+     */
+    List<RatingStore.Change> settleRatings(long sessionId, List<UUID> winners, List<UUID> losers) {
+        if (sessionId < 0 || winners.isEmpty()) return Collections.emptyList();
+        try {
+            return ratings.settle(sessionId, winners, losers, stats.mvp(sessionId, winners));
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return -1L;
+        return Collections.emptyList();
     }
 
-    private void recordSessionEnd(long sessionId, String winnerTeam) {
-        try (Connection c = db.getConnection();
-             PreparedStatement ps = c.prepareStatement("UPDATE sessions SET ended_at=?, winner_team=? WHERE id=?")) {
-            ps.setLong(1, Instant.now().getEpochSecond());
-            ps.setString(2, winnerTeam);
-            ps.setLong(3, sessionId);
-            ps.executeUpdate();
+    void recordSessionEnd(long sessionId, String winnerTeam) {
+        recordSessionEnd(sessionId, winnerTeam, false);
+    }
+
+    /**
+     * Closes a game that failed before or while starting: no winner, marked failed.
+     */
+    void recordSessionFailed(long sessionId) {
+        recordSessionEnd(sessionId, null, true);
+    }
+
+    private void recordSessionEnd(long sessionId, String winnerTeam, boolean failed) {
+        try {
+            db.writeAndWait(sql -> {
+                PreparedStatement ps = sql.prepare("UPDATE sessions SET ended_at=?, winner_team=?, failed=? WHERE id=?");
+                ps.setLong(1, Instant.now().getEpochSecond());
+                ps.setString(2, winnerTeam);
+                ps.setInt(3, failed ? 1 : 0);
+                ps.setLong(4, sessionId);
+                return ps.executeUpdate();
+            });
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -321,17 +326,63 @@ public class QueueManager {
         final UUID uuid;
         final String name;
         final Guild guild;
+        final int elo;
         final long enqueuedAt;
-        QueueEntry(Member member, UUID uuid, String name, Guild guild, long enqueuedAt) {
-            this.member = member; this.uuid = uuid; this.name = name; this.guild = guild; this.enqueuedAt = enqueuedAt;
+        QueueEntry(Member member, UUID uuid, String name, Guild guild, int elo, long enqueuedAt) {
+            this.member = member; this.uuid = uuid; this.name = name; this.guild = guild; this.elo = elo; this.enqueuedAt = enqueuedAt;
         }
     }
 
+    /**
+     * A solo player or a whole party, queued and matched as one unit.
+     */
+    static class QueueGroup {
+        final long key; // party leader id, or the member id for solos
+        final PartyService.Party party; // null for solos
+        final long enqueuedAt;
+        final List<QueueEntry> members = new java.util.concurrent.CopyOnWriteArrayList<>();
+        // Spread and queue version at which this group last failed to anchor a batch; matchmaker only, under the queue lock
+        int triedSpread = -1;
+        long triedVersion = -1L;
+        QueueGroup(long key, PartyService.Party party, long enqueuedAt) {
+            this.key = key; this.party = party; this.enqueuedAt = enqueuedAt;
+        }
+        void add(QueueEntry e) { members.add(e); }
+        QueueEntry remove(long memberId) {
+            for (QueueEntry e : members) {
+                if (e.member.getIdLong() == memberId) { members.remove(e); return e; }
+            }
+            return null;
+        }
+        int size() { return members.size(); }
+        int eloSum() { int sum = 0; for (QueueEntry e : members) sum += e.elo; return sum; }
+        int avgElo() { int n = members.size(); return n == 0 ? 0 : eloSum() / n; }
+        boolean isComplete() { return party == null || members.size() >= party.members.size(); }
+    }
+
     public int getQueuedCount() {
-        return queue.size();
+        int n = 0;
+        for (QueueShard shard : shards) n += shard.getQueuedCount();
+        return n;
+    }
+
+    public List<QueueShard> getShards() {
+        return Collections.unmodifiableList(shards);
     }
 
     public int getActiveGames() {
         return activeGames.get();
     }
+
+    public int getLeasedArenas() {
+        return bedWars.getLeaseCount();
+    }
+
+    public Collection<GameSession> getGames() {
+        return Collections.unmodifiableSet(games);
+    }
+
+    public TeamPartitioner getPartitioner() {
+        return partitioner;
+    }
 }
@@ -0,0 +1,408 @@
+package com.example.bwqueue.queue;
+
+import com.example.bwqueue.bw.BedWarsService;
+import com.example.bwqueue.config.PluginConfig;
+import com.example.bwqueue.discord.RestScheduler;
+import com.example.bwqueue.party.PartyService;
+import com.example.bwqueue.presence.PresenceIndex;
+import com.example.bwqueue.queue.QueueManager.QueueEntry;
+import com.example.bwqueue.queue.QueueManager.QueueGroup;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.channel.concrete.Category;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Logger;
+
+/**
+ * One independent queue, keyed by (guild, queue voice channel, arena group).
+ *
+ * Each shard owns its queued groups, rating index, pending batches and matchmaker. Shards share the
+ * matchmaking thread pool but their passes are independent, so a busy 4v4 queue never delays 3v3.
+ * Game orchestration and the global concurrent-game limit stay in {@link QueueManager}.
+ */
+public class QueueShard {
+
+    // Rating passes give up after this many anchors that could not be served
+    private static final int MAX_ANCHORS_PER_PASS = 16;
+
+    private final QueueManager manager;
+    private final PluginConfig config;
+    private final PluginConfig.ShardConfig shard;
+    private final Logger log;
+    private final String name;
+    private final PresenceIndex presence;
+    private final long queueVoiceId;
+
+    // Queue of groups keyed by group key, plus member id -> group. Compound updates lock on the queue.
+    private final IndexedQueue<QueueGroup> queue = new IndexedQueue<>();
+    private final Map<Long, QueueGroup> byMember = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> memberByUuid = new ConcurrentHashMap<>();
+    private final RatingIndex<QueueGroup> byRating = new RatingIndex<>(QueueGroup::avgElo, g -> g.key);
+    // Bumped on every join and leave, under the queue lock
+    private long queueVersion;
+
+    // Only touched from this shard's matchmaking passes
+    private final List<PendingBatch> pendingBatches = new ArrayList<>();
+
+    private final MatchScheduler matchScheduler;
+
+    QueueShard(QueueManager manager, PluginConfig config, PluginConfig.ShardConfig shard, PresenceIndex presence,
+               ScheduledExecutorService pool, Logger log) {
+        this.manager = manager;
+        this.config = config;
+        this.shard = shard;
+        this.presence = presence;
+        this.queueVoiceId = parseId(shard.queueVoiceId);
+        this.log = log;
+        this.name = "queue-" + shard.queueVoiceId + "/" + shard.arenaGroup;
+        this.matchScheduler = new MatchScheduler("BWQueue-" + name, this::tryStartGame, config.getMatchDebounceMillis(), log, pool);
+    }
+
+    void start() {
+        matchScheduler.start(config.getSweepIntervalSeconds());
+    }
+
+    void shutdown() {
+        matchScheduler.shutdown();
+    }
+
+    public boolean accepts(String guildId, String voiceChannelId) {
+        return shard.queueVoiceId.equals(voiceChannelId) && (shard.guildId.isEmpty() || shard.guildId.equals(guildId));
+    }
+
+    void enqueue(Member member, UUID uuid, String name, Guild guild, PartyService.Party party, int elo) {
+        long memberId = member.getIdLong();
+        synchronized (queue) {
+            // Ensure not duplicated; a rejoin keeps the original position
+            if (byMember.containsKey(memberId)) return;
+            long now = Instant.now().getEpochSecond();
+            QueueEntry entry = new QueueEntry(member, uuid, name, guild, elo, now);
+            // Party members share one queue group, which holds the position of whoever joined first
+            long key = party != null ? party.leaderId : memberId;
+            QueueGroup group = queue.get(key);
+            if (group == null) {
+                group = new QueueGroup(key, party, now);
+                group.add(entry);
+                queue.add(key, group);
+            } else {
+                byRating.remove(group);
+                group.add(entry);
+            }
+            byRating.add(group);
+            byMember.put(memberId, group);
+            queueVersion++;
+            memberByUuid.put(uuid, memberId);
+            log.info("[" + this.name + "] Enqueued " + name + " (" + uuid + ", elo " + elo + ") from Discord " + member.getUser().getAsTag()
+                    + (party != null ? " with party of " + party.members.size() : ""));
+        }
+        matchScheduler.signal(MatchScheduler.Trigger.ENQUEUE);
+    }
+
+    boolean isQueued(long memberId) {
+        return byMember.containsKey(memberId);
+    }
+
+    void dequeue(long memberId) {
+        QueueEntry e = removeQueued(memberId);
+        if (e != null && config.isDebug()) log.info("[" + name + "] Dequeued " + e.name + " (left queue VC)");
+        // Also re-checks pending batches, which may have just lost a member
+        matchScheduler.signal(MatchScheduler.Trigger.DEQUEUE);
+    }
+
+    /**
+     * The player logged off: drop them from the queue now; a pending batch holding them is cancelled
+     * by the pass this triggers.
+     */
+    void playerLeft(UUID uuid) {
+        Long memberId = memberByUuid.get(uuid);
+        if (memberId != null) {
+            QueueEntry e = removeQueued(memberId);
+            if (e != null && config.isDebug()) log.info("[" + name + "] Dequeued " + e.name + " (logged off)");
+        }
+        matchScheduler.signal(MatchScheduler.Trigger.DEQUEUE);
+    }
+
+    void signal(MatchScheduler.Trigger trigger) {
+        matchScheduler.signal(trigger);
+    }
+
+    private QueueEntry removeQueued(long memberId) {
+        synchronized (queue) {
+            QueueGroup group = byMember.remove(memberId);
+            if (group == null) return null;
+            queueVersion++;
+            byRating.remove(group);
+            QueueEntry removed = group.remove(memberId);
+            if (removed != null) memberByUuid.remove(removed.uuid, memberId);
+            if (group.members.isEmpty()) queue.remove(group.key);
+            else byRating.add(group);
+            return removed;
+        }
+    }
+
+    // Caller holds the queue lock
+    private boolean removeGroup(QueueGroup group) {
+        if (queue.get(group.key) != group) return false;
+        queue.remove(group.key);
+        queueVersion++;
+        byRating.remove(group);
+        for (QueueEntry e : group.members) {
+            byMember.remove(e.member.getIdLong());
+            memberByUuid.remove(e.uuid, e.member.getIdLong());
+        }
+        return true;
+    }
+
+    /**
+     * Takes a packed batch out of the queue, in the same locked section that packed it. Checks that
+     * every group is still queued and still ready and that both teams are full; if not, nothing is
+     * removed and the batch is dropped.
+     */
+    private boolean takeBatch(GroupPacker.Packing<QueueGroup> batch, int teamSize) {
+        if (QueueManager.playerCount(batch.red) != teamSize || QueueManager.playerCount(batch.green) != teamSize) return false;
+        for (QueueGroup g : batch.all()) {
+            if (queue.get(g.key) != g || !isGroupReady(g)) return false;
+        }
+        for (QueueGroup g : batch.all()) {
+            if (!removeGroup(g)) throw new IllegalStateException("group " + g.key + " left the queue during removal");
+        }
+        return true;
+    }
+
+    /**
+     * 1-based position of the member's group in this queue, or -1 if the member is not queued here.
+     */
+    public int getQueuePosition(long memberId) {
+        synchronized (queue) {
+            QueueGroup group = byMember.get(memberId);
+            return group == null ? -1 : queue.positionOf(group.key);
+        }
+    }
+
+    /**
+     * One matchmaking pass. Returns true if a batch was started or parked as pending.
+     */
+    private boolean tryStartGame() {
+        boolean matched = false;
+        // First, try to allocate pending batches if any arena is available
+        Iterator<PendingBatch> it = pendingBatches.iterator();
+        while (it.hasNext()) {
+            PendingBatch pb = it.next();
+            if (!manager.hasGameCapacity()) break;
+            if (isBatchInvalid(pb)) {
+                pb.say("Batch cancelled: someone left the queue or went offline.");
+                cleanupBatchChannels(pb);
+                it.remove();
+                matchScheduler.signal(MatchScheduler.Trigger.BATCH_CANCELLED);
+                continue;
+            }
+            BedWarsService.ArenaLease lease = manager.reserveArena(shard.arenaGroup);
+            if (lease == null) break; // same group for every pending batch here
+            if (!manager.tryAcquireGameSlot()) {
+                manager.getBedWars().release(lease);
+                break;
+            }
+            it.remove();
+            cleanupBatchChannels(pb);
+            manager.launchGame(this, pb.packing, lease);
+            matched = true;
+        }
+
+        if (!manager.hasGameCapacity()) return matched;
+        int teamSize = shard.teamSize;
+        int min = Math.max(config.getMinPlayers(), teamSize * 2); // ensure two full teams
+
+        GroupPacker.Packing<QueueGroup> batch;
+        // Packing and removal under one lock: nobody can join or leave a group in between
+        synchronized (queue) {
+            batch = config.isEloMatchmaking() ? packByRating(teamSize) : packInJoinOrder(teamSize);
+            if (batch == null || QueueManager.playerCount(batch.all()) < min) return matched;
+            if (!takeBatch(batch, teamSize)) {
+                log.warning("[" + name + "] Packed batch changed before it was taken; dropped it");
+                matchScheduler.signal(MatchScheduler.Trigger.BATCH_CANCELLED);
+                return matched;
+            }
+        }
+
+        // If an arena can be leased, start immediately; else keep as pending batch; do NOT move people to waiting room.
+        BedWarsService.ArenaLease lease = manager.reserveArena(shard.arenaGroup);
+        // An arena is free but another shard took the last game slot since the capacity check above
+        boolean atGameLimit = false;
+        if (lease != null && !manager.tryAcquireGameSlot()) {
+            manager.getBedWars().release(lease);
+            lease = null;
+            atGameLimit = true;
+        }
+        if (lease != null) {
+            manager.launchGame(this, batch, lease);
+        } else {
+            // create a temporary text channel for status and keep in pending list; the pass doesn't wait for Discord
+            Guild guild = batch.red.get(0).members.get(0).guild;
+            RestScheduler rest = manager.getBot().getRest();
+            Category configured = manager.getBot().getGamesCategory(guild);
+            CompletableFuture<Category> cat = configured != null ? CompletableFuture.completedFuture(configured)
+                    : rest.submit(RestScheduler.Lane.CHANNEL, guild.createCategory("bw-pending-" + System.currentTimeMillis()/1000L));
+            PendingBatch pb = new PendingBatch(batch, rest, cat, configured == null,
+                    cat.thenCompose(c -> rest.submit(RestScheduler.Lane.CHANNEL, guild.createTextChannel("bw-pending", c))));
+            String reason = atGameLimit
+                    ? "All " + config.getMaxConcurrentGames() + " game slots are in use."
+                    : "No arenas free for group '" + shard.arenaGroup + "'.";
+            pb.say(reason + " Your game will start automatically as soon as one is free. If someone leaves the queue VC or goes offline, batch will cancel.");
+            pendingBatches.add(pb);
+        }
+        return true;
+    }
+
+    /**
+     * Offers groups oldest first to the packer. Groups that do not fit, or parties still waiting
+     * for members, are skipped but keep their position; members no longer eligible are dropped.
+     * The queue is walked in place and only as far as it takes to fill both teams. Caller holds the queue lock.
+     */
+    private GroupPacker.Packing<QueueGroup> packInJoinOrder(int teamSize) {
+        return GroupPacker.pack(readyInJoinOrder(), QueueGroup::size, teamSize);
+    }
+
+    // Ready groups oldest first, checked one at a time as the packer asks for them. Caller holds the queue lock.
+    private Iterable<QueueGroup> readyInJoinOrder() {
+        return () -> new Iterator<QueueGroup>() {
+            private final Iterator<QueueGroup> groups = queue.iterator();
+            private QueueGroup next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && groups.hasNext()) {
+                    QueueGroup g = groups.next();
+                    // May remove g from the queue, which the walk allows
+                    pruneIneligible(g);
+                    if (isGroupReady(g)) next = g;
+                }
+                return next != null;
+            }
+
+            @Override
+            public QueueGroup next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                QueueGroup g = next;
+                next = null;
+                return g;
+            }
+        };
+    }
+
+    /**
+     * Rating-aware selection: walk anchor groups oldest first and pack the groups closest in average ELO
+     * to each, within a spread that widens the longer the anchor has waited. Each anchor costs O(log n + k).
+     *
+     * The queue is walked in place. An anchor that failed before is skipped until its spread widens or
+     * someone joins or leaves, and the pass stops after {@link #MAX_ANCHORS_PER_PASS} anchors that could
+     * not be served, so a pass that forms no batch does not rescan the whole queue. Caller holds the
+     * queue lock.
+     */
+    private GroupPacker.Packing<QueueGroup> packByRating(int teamSize) {
+        long now = Instant.now().getEpochSecond();
+        int maxGroups = 2 * teamSize;
+        List<QueueGroup> rejected = new ArrayList<>();
+        int failed = 0;
+        try {
+            Iterator<QueueGroup> anchors = queue.iterator();
+            while (failed < MAX_ANCHORS_PER_PASS && anchors.hasNext()) {
+                QueueGroup anchor = anchors.next();
+                // May remove the anchor, which the walk allows
+                pruneIneligible(anchor);
+                if (!isGroupReady(anchor)) continue;
+                int spread = allowedSpread(anchor, now);
+                if (anchor.triedSpread == spread && anchor.triedVersion == queueVersion) continue;
+                List<QueueGroup> window = byRating.closest(anchor, maxGroups, spread, this::isGroupReady, rejected);
+                GroupPacker.Packing<QueueGroup> p = GroupPacker.pack(window, QueueGroup::size, teamSize);
+                if (p != null) return p;
+                anchor.triedSpread = spread;
+                anchor.triedVersion = queueVersion;
+                failed++;
+            }
+            return null;
+        } finally {
+            // Dropped after the walk: removing a group other than the current one would cut it short
+            for (QueueGroup g : rejected) pruneIneligible(g);
+        }
+    }
+
+    // A group can be packed once the whole party is queued and every member is still eligible.
+    // Must not touch the queue: it also runs under the rating index lock.
+    private boolean isGroupReady(QueueGroup g) {
+        if (g.members.isEmpty() || !g.isComplete()) return false;
+        for (QueueEntry e : g.members) {
+            if (!isEligible(e)) return false;
+        }
+        return true;
+    }
+
+    private void pruneIneligible(QueueGroup g) {
+        for (QueueEntry e : g.members) {
+            if (!isEligible(e)) removeQueued(e.member.getIdLong());
+        }
+    }
+
+    private int allowedSpread(QueueGroup g, long now) {
+        long waited = Math.max(0L, now - g.enqueuedAt);
+        long spread = config.getEloBaseSpread() + waited * config.getEloSpreadPerSecond();
+        return (int) Math.min(spread, config.getEloMaxSpread());
+    }
+
+    private boolean isBatchInvalid(PendingBatch pb) {
+        for (QueueEntry e : QueueManager.members(pb.packing.all())) {
+            if (!isEligible(e)) return true;
+        }
+        return false;
+    }
+
+    // Verify still eligible (online, in this shard's queue VC); two map reads, safe off the main thread
+    private boolean isEligible(QueueEntry e) {
+        return presence.isOnline(e.uuid) && presence.isInVoice(e.member.getIdLong(), queueVoiceId);
+    }
+
+    private static long parseId(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    private void cleanupBatchChannels(PendingBatch pb) {
+        pb.textChannel.thenAccept(pb.rest::delete);
+        if (pb.categoryCreated) pb.category.thenAccept(pb.rest::delete);
+    }
+
+    static class PendingBatch {
+        final GroupPacker.Packing<QueueGroup> packing;
+        final RestScheduler rest;
+        final CompletableFuture<Category> category;
+        final boolean categoryCreated;
+        final CompletableFuture<TextChannel> textChannel;
+        PendingBatch(GroupPacker.Packing<QueueGroup> packing, RestScheduler rest, CompletableFuture<Category> category,
+                     boolean categoryCreated, CompletableFuture<TextChannel> textChannel) {
+            this.packing = packing; this.rest = rest; this.category = category; this.categoryCreated = categoryCreated; this.textChannel = textChannel;
+        }
+
+        void say(String message) {
+            textChannel.thenAccept(t -> rest.submit(RestScheduler.Lane.GAME_MESSAGE, t.sendMessage(message)));
+        }
+    }
+
+    public String getName() { return name; }
+    public String getArenaGroup() { return shard.arenaGroup; }
+    public int getTeamSize() { return shard.teamSize; }
+    public int getQueuedCount() { return byMember.size(); }
+    public MatchScheduler getMatchScheduler() { return matchScheduler; }
+}
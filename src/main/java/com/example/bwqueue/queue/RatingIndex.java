@@ -0,0 +1,80 @@
+package com.example.bwqueue.queue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Queued entries ordered by rating (ties broken by id) so the matchmaker can find the
+ * rating-closest players around an anchor in O(log n + k) instead of rescanning the queue.
+ */
+public class RatingIndex<T> {
+
+    private final ToIntFunction<T> rating;
+    private final TreeSet<T> byRating;
+
+    public RatingIndex(ToIntFunction<T> rating, ToLongFunction<T> id) {
+        this.rating = rating;
+        Comparator<T> cmp = Comparator.comparingInt(rating);
+        this.byRating = new TreeSet<>(cmp.thenComparingLong(id));
+    }
+
+    public synchronized void add(T value) {
+        byRating.add(value);
+    }
+
+    public synchronized void remove(T value) {
+        byRating.remove(value);
+    }
+
+    public synchronized int size() {
+        return byRating.size();
+    }
+
+    public synchronized void clear() {
+        byRating.clear();
+    }
+
+    /**
+     * Collects the anchor plus the {@code count - 1} entries closest in rating to it, never further
+     * than {@code spread} away. Entries failing {@code eligible} are skipped and added to {@code rejected}
+     * so the caller can drop them from the queue. Returns fewer than {@code count} entries if the window
+     * does not hold enough players.
+     */
+    public synchronized List<T> closest(T anchor, int count, int spread, Predicate<T> eligible, List<T> rejected) {
+        List<T> out = new ArrayList<>(count);
+        if (!byRating.contains(anchor)) return out;
+        out.add(anchor);
+        int center = rating.applyAsInt(anchor);
+        Iterator<T> down = byRating.headSet(anchor, false).descendingIterator();
+        Iterator<T> up = byRating.tailSet(anchor, false).iterator();
+        T lo = nextEligible(down, center, spread, eligible, rejected);
+        T hi = nextEligible(up, center, spread, eligible, rejected);
+        while (out.size() < count && (lo != null || hi != null)) {
+            boolean takeLo = hi == null || (lo != null && center - rating.applyAsInt(lo) <= rating.applyAsInt(hi) - center);
+            if (takeLo) {
+                out.add(lo);
+                lo = nextEligible(down, center, spread, eligible, rejected);
+            } else {
+                out.add(hi);
+                hi = nextEligible(up, center, spread, eligible, rejected);
+            }
+        }
+        return out;
+    }
+
+    private T nextEligible(Iterator<T> it, int center, int spread, Predicate<T> eligible, List<T> rejected) {
+        while (it.hasNext()) {
+            T v = it.next();
+            if (Math.abs(rating.applyAsInt(v) - center) > spread) return null;
+            if (eligible.test(v)) return v;
+            rejected.add(v);
+        }
+        return null;
+    }
+}
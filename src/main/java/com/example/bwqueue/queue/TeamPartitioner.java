@@ -0,0 +1,128 @@
+package com.example.bwqueue.queue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Splits groups (solo players or parties) into Red and Green so that both teams have exactly
+ * {@code teamSize} players and the difference between their ELO sums is as small as possible.
+ * Groups are never split.
+ *
+ * Up to {@link #EXACT_MAX_GROUPS} groups every assignment is enumerated; beyond that a greedy start
+ * is refined by swapping same-sized groups. Both stop when the time budget runs out and return the
+ * best split found so far.
+ */
+public class TeamPartitioner {
+
+    public static final int EXACT_MAX_GROUPS = 12;
+
+    private final long budgetNanos;
+
+    private volatile long lastNanos;
+    private volatile long maxNanos;
+
+    public TeamPartitioner(long budgetMicros) {
+        this.budgetNanos = Math.max(1L, budgetMicros) * 1000L;
+    }
+
+    /**
+     * @param sizes   players per group
+     * @param ratings ELO sum per group
+     * @return {@code red[i]} true if group i goes to Red, or null if no split gives two teams of {@code teamSize}
+     */
+    public boolean[] partition(int[] sizes, int[] ratings, int teamSize) {
+        long start = System.nanoTime();
+        try {
+            int g = sizes.length;
+            if (g == 0) return null;
+            long deadline = start + budgetNanos;
+            return g <= EXACT_MAX_GROUPS
+                    ? exact(sizes, ratings, teamSize, deadline)
+                    : heuristic(sizes, ratings, teamSize, deadline);
+        } finally {
+            long took = System.nanoTime() - start;
+            lastNanos = took;
+            if (took > maxNanos) maxNanos = took;
+        }
+    }
+
+    private boolean[] exact(int[] sizes, int[] ratings, int teamSize, long deadline) {
+        int g = sizes.length;
+        int total = 0;
+        for (int r : ratings) total += r;
+        long bestDiff = Long.MAX_VALUE;
+        int bestMask = -1;
+        // Group 0 always goes to Red; the mirrored assignments have the same difference
+        int limit = 1 << (g - 1);
+        for (int rest = 0; rest < limit; rest++) {
+            if ((rest & 255) == 255 && System.nanoTime() > deadline) break;
+            int mask = (rest << 1) | 1;
+            int size = 0;
+            int red = 0;
+            for (int i = 0; i < g; i++) {
+                if ((mask & (1 << i)) != 0) {
+                    size += sizes[i];
+                    red += ratings[i];
+                }
+            }
+            if (size != teamSize) continue;
+            long diff = Math.abs(2L * red - total);
+            if (diff < bestDiff) {
+                bestDiff = diff;
+                bestMask = mask;
+                if (diff == 0) break;
+            }
+        }
+        if (bestMask < 0) return null;
+        boolean[] out = new boolean[g];
+        for (int i = 0; i < g; i++) out[i] = (bestMask & (1 << i)) != 0;
+        return out;
+    }
+
+    private boolean[] heuristic(int[] sizes, int[] ratings, int teamSize, long deadline) {
+        int g = sizes.length;
+        // Greedy: biggest groups first, highest rated first, onto the lighter team that still has room
+        Integer[] order = new Integer[g];
+        for (int i = 0; i < g; i++) order[i] = i;
+        Arrays.sort(order, Comparator.<Integer>comparingInt(i -> -sizes[i]).thenComparingInt(i -> -ratings[i]));
+        boolean[] red = new boolean[g];
+        int redSize = 0, greenSize = 0;
+        long redSum = 0, greenSum = 0;
+        for (int i : order) {
+            boolean fitsRed = redSize + sizes[i] <= teamSize;
+            boolean fitsGreen = greenSize + sizes[i] <= teamSize;
+            if (!fitsRed && !fitsGreen) return null;
+            boolean toRed = fitsRed && (!fitsGreen || redSum <= greenSum);
+            red[i] = toRed;
+            if (toRed) { redSize += sizes[i]; redSum += ratings[i]; }
+            else { greenSize += sizes[i]; greenSum += ratings[i]; }
+        }
+        if (redSize != teamSize || greenSize != teamSize) return null;
+
+        // Local search: swap same-sized groups across teams while it narrows the gap
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = false;
+            long diff = redSum - greenSum;
+            for (int a = 0; a < g && !improved; a++) {
+                if (!red[a]) continue;
+                for (int b = 0; b < g; b++) {
+                    if (red[b] || sizes[a] != sizes[b]) continue;
+                    long delta = ratings[a] - ratings[b];
+                    if (Math.abs(diff - 2 * delta) < Math.abs(diff)) {
+                        red[a] = false;
+                        red[b] = true;
+                        redSum -= delta;
+                        greenSum += delta;
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return red;
+    }
+
+    public long getLastNanos() { return lastNanos; }
+    public long getMaxNanos() { return maxNanos; }
+}
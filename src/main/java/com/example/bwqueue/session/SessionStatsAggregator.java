@@ -0,0 +1,185 @@
+package com.example.bwqueue.session;
+
+import com.example.bwqueue.db.Database;
+import com.example.bwqueue.db.EventType;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live per-player counters for running games, written to {@code session_players} (one row per player,
+ * counters in {@code stats_json}) when the game ends, so stats never have to be rebuilt from raw events.
+ *
+ * Counters are plain ints, bumped from the listeners on the server thread; the per-session lock is
+ * uncontended until the game-end flush takes its snapshot from another thread.
+ */
+public class SessionStatsAggregator {
+
+    private static final int BLOCKS_PLACED = 0;
+    private static final int BLOCKS_BROKEN = 1;
+    private static final int KILLS = 2;
+    private static final int DEATHS = 3;
+    private static final int IRON = 4;
+    private static final int GOLD = 5;
+    private static final int DIAMOND = 6;
+    private static final int EMERALD = 7;
+
+    // stats_json keys, by counter index
+    private static final String[] KEYS = {"blocksPlaced", "blocksBroken", "kills", "deaths", "iron", "gold", "diamond", "emerald"};
+
+    private static final String[] KEY_COLUMNS = {"session_id", "uuid"};
+    private static final String[] COLUMNS = {"session_id", "uuid", "name", "team", "stats_json"};
+
+    private static final class PlayerStats {
+        final String name;
+        final String team;
+        final int[] counters = new int[KEYS.length];
+        PlayerStats(String name, String team) { this.name = name; this.team = team; }
+    }
+
+    private static final class SessionStats {
+        final Map<UUID, PlayerStats> players = new HashMap<>();
+    }
+
+    private final Map<Long, SessionStats> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Starts counting for a game; events for players not added here are ignored.
+     */
+    public void begin(long sessionId, Map<UUID, String> names, Map<UUID, String> teams) {
+        SessionStats s = new SessionStats();
+        for (Map.Entry<UUID, String> e : names.entrySet()) {
+            s.players.put(e.getKey(), new PlayerStats(e.getValue(), teams.get(e.getKey())));
+        }
+        sessions.put(sessionId, s);
+    }
+
+    public void record(long sessionId, EventType type, UUID player, UUID target, String material, int amount) {
+        SessionStats s = sessions.get(sessionId);
+        if (s == null) return;
+        synchronized (s) {
+            switch (type) {
+                case BLOCK_PLACE:
+                    add(s, player, BLOCKS_PLACED, 1);
+                    break;
+                case BLOCK_BREAK:
+                    add(s, player, BLOCKS_BROKEN, 1);
+                    break;
+                case PICKUP:
+                    int resource = resource(material);
+                    if (resource >= 0) add(s, player, resource, amount);
+                    break;
+                case KILL:
+                    add(s, player, KILLS, 1);
+                    add(s, target, DEATHS, 1);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void add(SessionStats s, UUID player, int counter, int n) {
+        if (player == null) return;
+        PlayerStats p = s.players.get(player);
+        if (p != null) p.counters[counter] += n;
+    }
+
+    // Only the generator drops count; picked-up gear such as IRON_SWORD or DIAMOND_HELMET does not
+    private static int resource(String material) {
+        if (material == null) return -1;
+        switch (material) {
+            case "IRON_INGOT": return IRON;
+            case "GOLD_INGOT": return GOLD;
+            case "DIAMOND": return DIAMOND;
+            case "EMERALD": return EMERALD;
+            default: return -1;
+        }
+    }
+
+    /**
+     * The candidate with the most kills (fewest deaths breaks ties), or null if none of them has a kill.
+     * Call before {@link #flush}.
+     */
+    public UUID mvp(long sessionId, Collection<UUID> candidates) {
+        SessionStats s = sessions.get(sessionId);
+        if (s == null) return null;
+        UUID best = null;
+        int bestKills = 0;
+        int bestDeaths = 0;
+        synchronized (s) {
+            for (UUID u : candidates) {
+                PlayerStats p = s.players.get(u);
+                if (p == null) continue;
+                int kills = p.counters[KILLS];
+                int deaths = p.counters[DEATHS];
+                if (kills > bestKills || (kills == bestKills && best != null && deaths < bestDeaths)) {
+                    best = u;
+                    bestKills = kills;
+                    bestDeaths = deaths;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stops counting for the game and writes every player's row in one batch. Blocks until committed;
+     * not for the server thread.
+     */
+    public void flush(Database db, long sessionId) throws SQLException {
+        SessionStats s = sessions.remove(sessionId);
+        if (s == null || sessionId < 0) return;
+        final List<Object[]> rows = new ArrayList<>();
+        synchronized (s) {
+            for (Map.Entry<UUID, PlayerStats> e : s.players.entrySet()) {
+                PlayerStats p = e.getValue();
+                rows.add(new Object[]{e.getKey().toString(), p.name, p.team, toJson(p.counters)});
+            }
+        }
+        if (rows.isEmpty()) return;
+        final int perStatement = Math.max(1, db.getDialect().maxBindParameters() / COLUMNS.length);
+        db.writeAndWait(sql -> {
+            for (int from = 0; from < rows.size(); from += perStatement) {
+                int n = Math.min(perStatement, rows.size() - from);
+                PreparedStatement ps = sql.prepare(db.getDialect().upsert("session_players", KEY_COLUMNS, COLUMNS, n));
+                int i = 1;
+                for (int r = from; r < from + n; r++) {
+                    Object[] row = rows.get(r);
+                    ps.setLong(i++, sessionId);
+                    ps.setString(i++, (String) row[0]);
+                    ps.setString(i++, (String) row[1]);
+                    ps.setString(i++, (String) row[2]);
+                    ps.setString(i++, (String) row[3]);
+                }
+                ps.executeUpdate();
+            }
+            return rows.size();
+        });
+    }
+
+    /**
+     * Drops the counters of a game that never finished.
+     */
+    public void discard(long sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public int getTrackedSessions() { return sessions.size(); }
+
+    static String toJson(int[] counters) {
+        StringBuilder sb = new StringBuilder(128).append('{');
+        for (int i = 0; i < KEYS.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(KEYS[i]).append("\":").append(counters[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
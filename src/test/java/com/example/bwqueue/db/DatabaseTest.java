@@ -0,0 +1,75 @@
+package com.example.bwqueue.db;
+
+import com.example.bwqueue.config.PluginConfig;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DatabaseTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Database db;
+
+    @Before
+    public void setUp() throws Exception {
+        YamlConfiguration cfg = new YamlConfiguration();
+        cfg.set("storage.sqliteFile", tmp.newFile("bwqueue.db").getPath());
+        cfg.set("storage.maxPoolSize", 1);
+        cfg.set("storage.connectionTimeoutMillis", 100);
+        db = new Database(new PluginConfig(cfg), Logger.getLogger("test"));
+        db.init();
+    }
+
+    @After
+    public void tearDown() {
+        db.shutdown();
+    }
+
+    @Test
+    public void readFailsWhenNoConnectionFreesUp() throws Exception {
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        CompletableFuture<Integer> holder = CompletableFuture.supplyAsync(() -> {
+            try {
+                return db.read(sql -> {
+                    held.countDown();
+                    try {
+                        done.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1;
+                });
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(held.await(5, TimeUnit.SECONDS));
+        try {
+            db.read(sql -> 2);
+            fail("read should time out while the only connection is in use");
+        } catch (SQLException expected) {
+            assertTrue(expected.getMessage().contains("No free database connection"));
+        } finally {
+            done.countDown();
+        }
+        assertEquals(1, (int) holder.get(5, TimeUnit.SECONDS));
+        // The connection went back to the pool
+        assertEquals(2, (int) db.read(sql -> 2));
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.bwqueue.db;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Migrations and the SQL each {@link Dialect} generates, run against every backend: SQLite itself, and
+ * H2 in MySQL, MariaDB and PostgreSQL compatibility mode for the networked ones.
+ */
+@RunWith(Parameterized.class)
+public class DialectTest {
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> backends() {
+        return Arrays.asList(new Object[][] {
+                {"sqlite", new SqliteDialect(), null},
+                {"mysql", new MySqlDialect(false), "MySQL"},
+                {"mariadb", new MySqlDialect(true), "MariaDB"},
+                {"postgresql", new PostgresDialect(), "PostgreSQL"},
+        });
+    }
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Dialect dialect;
+    private final String h2Mode;
+    private Connection c;
+
+    public DialectTest(String name, Dialect dialect, String h2Mode) {
+        this.dialect = dialect;
+        this.h2Mode = h2Mode;
+    }
+
+    @Before
+    public void open() throws Exception {
+        if (h2Mode == null) {
+            c = DriverManager.getConnection("jdbc:sqlite:" + tmp.newFile("test.db").getPath());
+        } else {
+            // VALUE is reserved in H2 but not in MySQL or PostgreSQL, and the legacy events table has a column of that name
+            c = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID() + ";MODE=" + h2Mode
+                    + ";DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=VALUE");
+        }
+    }
+
+    @After
+    public void close() throws SQLException {
+        c.close();
+    }
+
+    private void migrate() throws SQLException {
+        Migrations.migrate(c, dialect, Logger.getLogger("test"));
+    }
+
+    @Test
+    public void ddlPlaceholders() {
+        String ddl = dialect.ddl("CREATE TABLE t (id {id}, k {key}, n {long})");
+        assertFalse(ddl, ddl.contains("{"));
+        assertTrue(ddl, ddl.contains(dialect.autoIncrementPrimaryKey()));
+        assertTrue(ddl, ddl.contains("k " + dialect.keyType()));
+        assertTrue(ddl, ddl.contains("n " + dialect.longType()));
+    }
+
+    @Test
+    public void migratesFreshDatabase() throws SQLException {
+        migrate();
+        assertEquals(Migrations.latestVersion(), Migrations.currentVersion(c));
+        assertTrue(Migrations.hasColumn(c, "users", "elo"));
+        assertTrue(Migrations.hasColumn(c, "events", "player_id"));
+        assertFalse(Migrations.hasColumn(c, "events", "player_uuid"));
+        assertTrue(Migrations.hasColumn(c, "sessions", "failed"));
+        assertFalse(Migrations.hasColumn(c, "users", "no_such_column"));
+        assertTrue(Migrations.hasIndex(c, "users", "idx_users_uuid"));
+        assertTrue(Migrations.hasIndex(c, "events", "idx_events_player_type"));
+        assertFalse(Migrations.hasIndex(c, "users", "idx_no_such_index"));
+        for (String table : new String[] {"sessions", "session_players", "event_players", "event_materials", "event_rollups", "elo_settlements"}) {
+            assertTrue(table, Migrations.hasColumn(c, table, "session_id") || Migrations.hasColumn(c, table, "id"));
+        }
+        // Up to date: nothing to do the second time
+        assertEquals(0, Migrations.migrate(c, dialect, Logger.getLogger("test")));
+    }
+
+    @Test
+    public void convertsTextEvents() throws SQLException {
+        UUID player = UUID.randomUUID();
+        UUID victim = UUID.randomUUID();
+        // A database at version 2, from before the compact encoding
+        try (Statement st = c.createStatement()) {
+            st.execute("CREATE TABLE schema_version (version INTEGER PRIMARY KEY, description TEXT, applied_at INTEGER)");
+            st.execute(dialect.ddl("CREATE TABLE users (discord_id {key} PRIMARY KEY, uuid {key}, name {key}, linked_at {long}, elo INTEGER DEFAULT 0)"));
+            st.execute(dialect.ddl("CREATE TABLE sessions (id {id}, arena {key}, group_name {key}, started_at {long}, ended_at {long}, winner_team {key})"));
+            st.execute(dialect.ddl("CREATE TABLE session_players (session_id {long}, uuid {key}, name {key}, team {key}, stats_json TEXT, PRIMARY KEY(session_id, uuid))"));
+            st.execute(dialect.ddl("CREATE TABLE events (id {id}, session_id {long}, type {key}, player_uuid {key}, value TEXT, ts {long})"));
+            st.execute("INSERT INTO schema_version(version, description, applied_at) VALUES(1, 'base tables', 0)");
+            st.execute("INSERT INTO schema_version(version, description, applied_at) VALUES(2, 'indexes', 0)");
+        }
+        try (PreparedStatement ps = c.prepareStatement("INSERT INTO events(session_id, type, player_uuid, value, ts) VALUES(?,?,?,?,?)")) {
+            Object[][] rows = {
+                    {"PICKUP", player.toString(), "IRON_INGOT:4"},
+                    {"KILL", player.toString(), "victim=" + victim},
+                    {"BLOCK_PLACE", player.toString(), "WOOL"},
+                    {"PICKUP", "not-a-uuid", "DIAMOND"},
+            };
+            for (int i = 0; i < rows.length; i++) {
+                ps.setLong(1, 9);
+                ps.setString(2, (String) rows[i][0]);
+                ps.setString(3, (String) rows[i][1]);
+                ps.setString(4, (String) rows[i][2]);
+                ps.setLong(5, 100 + i);
+                ps.executeUpdate();
+            }
+        }
+        migrate();
+        assertEquals(Migrations.latestVersion(), Migrations.currentVersion(c));
+
+        String q = "SELECT e.type, p.uuid, t.uuid, m.name, e.amount FROM events e" +
+                " LEFT JOIN event_players p ON p.id = e.player_id" +
+                " LEFT JOIN event_players t ON t.id = e.target_id" +
+                " LEFT JOIN event_materials m ON m.id = e.material_id ORDER BY e.ts";
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(q)) {
+            assertTrue(rs.next());
+            assertEquals(EventType.PICKUP.getCode(), rs.getInt(1));
+            assertEquals(player.toString(), rs.getString(2));
+            assertEquals("IRON_INGOT", rs.getString(4));
+            assertEquals(4, rs.getInt(5));
+            assertTrue(rs.next());
+            assertEquals(EventType.KILL.getCode(), rs.getInt(1));
+            assertEquals(victim.toString(), rs.getString(3));
+            assertTrue(rs.next());
+            assertEquals(EventType.BLOCK_PLACE.getCode(), rs.getInt(1));
+            assertEquals("WOOL", rs.getString(4));
+            assertTrue(rs.next());
+            assertEquals(null, rs.getString(2));
+            assertEquals("DIAMOND", rs.getString(4));
+            assertFalse(rs.next());
+        }
+        assertTrue(Migrations.hasIndex(c, "events", "idx_events_session"));
+    }
+
+    @Test
+    public void batchedUpsertInsertsThenUpdates() throws SQLException {
+        assumeFalse(dialect instanceof PostgresDialect);
+        migrate();
+        assertBatchedUpsert(c, dialect);
+    }
+
+    @Test
+    public void postgresUpsertRunsOnSqlite() throws Exception {
+        // H2 has no ON CONFLICT ... DO UPDATE and there is no embedded PostgreSQL. SQLite took that clause,
+        // EXCLUDED included, from PostgreSQL, so the PostgreSQL statement is executed there instead
+        assumeTrue(dialect instanceof PostgresDialect);
+        try (Connection sqlite = DriverManager.getConnection("jdbc:sqlite:" + tmp.newFile("pg.db").getPath())) {
+            Migrations.migrate(sqlite, new SqliteDialect(), Logger.getLogger("test"));
+            assertBatchedUpsert(sqlite, dialect);
+        }
+    }
+
+    private static void assertBatchedUpsert(Connection c, Dialect dialect) throws SQLException {
+        String[] keys = {"session_id", "uuid"};
+        String[] columns = {"session_id", "uuid", "name", "team", "stats_json"};
+        int rows = 3;
+        try (PreparedStatement ps = c.prepareStatement(dialect.upsert("session_players", keys, columns, rows))) {
+            for (int round = 0; round < 2; round++) {
+                // Second round: rows 0-2 exist, so they are updated in place
+                int p = 1;
+                for (int r = 0; r < rows; r++) {
+                    ps.setLong(p++, 5);
+                    ps.setString(p++, "player-" + r);
+                    ps.setString(p++, "name-" + r);
+                    ps.setString(p++, "RED");
+                    ps.setString(p++, "{\"round\":" + round + "}");
+                }
+                ps.addBatch();
+                ps.executeBatch();
+            }
+        }
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*), MIN(stats_json), MAX(stats_json) FROM session_players WHERE session_id = 5")) {
+            assertTrue(rs.next());
+            assertEquals(rows, rs.getInt(1));
+            assertEquals("{\"round\":1}", rs.getString(2));
+            assertEquals("{\"round\":1}", rs.getString(3));
+        }
+    }
+
+    @Test
+    public void upsertLeavesKeyColumnsAlone() {
+        String sql = dialect.upsert("users", new String[] {"discord_id"}, new String[] {"discord_id", "uuid", "name"}, 2);
+        assertTrue(sql, sql.startsWith("INSERT INTO users(discord_id, uuid, name) VALUES (?,?,?),(?,?,?) "));
+        String update = sql.substring(sql.indexOf("UPDATE"));
+        assertFalse(update, update.contains("discord_id"));
+        assertTrue(update, update.contains("uuid") && update.contains("name"));
+    }
+
+    @Test
+    public void generatedKeys() throws SQLException {
+        migrate();
+        Sql sql = new Sql(c, 4);
+        try {
+            long first = insertSession(sql);
+            long second = insertSession(sql);
+            assertTrue(first > 0);
+            assertNotEquals(first, second);
+            EventDictionary dictionary = new EventDictionary();
+            UUID player = UUID.randomUUID();
+            Integer id = dictionary.playerId(sql, player);
+            assertTrue(id != null && id > 0);
+            dictionary.commit();
+            // Found by the lookup this time, not inserted again
+            assertEquals(id, new EventDictionary().playerId(sql, player));
+        } finally {
+            sql.releaseStatements();
+        }
+    }
+
+    private static long insertSession(Sql sql) throws SQLException {
+        PreparedStatement ps = sql.prepareReturningKeys("INSERT INTO sessions(arena, group_name, started_at) VALUES(?,?,?)");
+        ps.setString(1, "arena");
+        ps.setString(2, "group");
+        ps.setLong(3, 1);
+        ps.executeUpdate();
+        try (ResultSet rs = ps.getGeneratedKeys()) {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        }
+    }
+
+    @Test
+    public void greatest() throws SQLException {
+        try (Statement st = c.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + dialect.greatest("0", "3 - 5") + ", " + dialect.greatest("0", "5 - 3"))) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+            assertEquals(2, rs.getInt(2));
+        }
+    }
+}
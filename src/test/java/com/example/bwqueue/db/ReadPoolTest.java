@@ -0,0 +1,124 @@
+package com.example.bwqueue.db;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReadPoolTest {
+
+    private final String url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+    private final Logger log = Logger.getLogger("test");
+    private final List<String> warnings = new ArrayList<>();
+    private final Handler capture = new Handler() {
+        @Override public void publish(LogRecord r) { warnings.add(r.getMessage()); }
+        @Override public void flush() {}
+        @Override public void close() {}
+    };
+    private ReadPool pool;
+
+    private ReadPool pool(int max, int minIdle, long idleTimeout, long maxLifetime, long validateAfter, long leakDetection) {
+        log.addHandler(capture);
+        pool = new ReadPool(() -> new Sql(DriverManager.getConnection(url), 8), log, max, minIdle, idleTimeout,
+                maxLifetime, validateAfter, 50, leakDetection);
+        return pool;
+    }
+
+    @After
+    public void tearDown() {
+        log.removeHandler(capture);
+        if (pool != null) pool.close();
+    }
+
+    @Test
+    public void opensOnDemandUpToMaxSize() throws Exception {
+        ReadPool p = pool(2, 0, 60_000, 0, -1, 0);
+        p.fill();
+        assertEquals(0, p.getTotal());
+        Sql a = p.borrow();
+        Sql b = p.borrow();
+        assertEquals(2, p.getTotal());
+        try {
+            p.borrow();
+            fail("a third connection should not be opened");
+        } catch (SQLException expected) {
+            assertTrue(warnings.get(warnings.size() - 1).contains(Thread.currentThread().getName()));
+        }
+        p.giveBack(a);
+        // The most recently returned connection is handed out first
+        assertSame(a, p.borrow());
+        p.giveBack(a);
+        p.giveBack(b);
+        assertEquals(2, p.getOpened());
+    }
+
+    @Test
+    public void retiresConnectionsPastTheirLifetime() throws Exception {
+        ReadPool p = pool(1, 1, 60_000, 20, -1, 0);
+        p.fill();
+        Sql first = p.borrow();
+        Thread.sleep(40);
+        p.giveBack(first);
+        assertEquals(0, p.getTotal());
+        assertTrue(first.connection().isClosed());
+        Sql second = p.borrow();
+        assertNotSame(first, second);
+        p.giveBack(second);
+        assertEquals(1, p.getRetired());
+    }
+
+    @Test
+    public void evictsIdleConnectionsAboveMinIdle() throws Exception {
+        ReadPool p = pool(3, 1, 20, 0, -1, 0);
+        Sql a = p.borrow();
+        Sql b = p.borrow();
+        Sql c = p.borrow();
+        p.giveBack(a);
+        p.giveBack(b);
+        p.giveBack(c);
+        Thread.sleep(40);
+        Sql kept = p.borrow();
+        // Two were idle too long; one stays for minIdle
+        assertEquals(1, p.getTotal());
+        assertSame(c, kept);
+        assertTrue(a.connection().isClosed() && b.connection().isClosed());
+        p.giveBack(kept);
+    }
+
+    @Test
+    public void replacesConnectionsThatFailValidation() throws Exception {
+        ReadPool p = pool(1, 1, 60_000, 0, 0, 0);
+        p.fill();
+        Sql dead = p.borrow();
+        p.giveBack(dead);
+        dead.connection().close();
+        Sql fresh = p.borrow();
+        assertNotSame(dead, fresh);
+        assertTrue(fresh.connection().isValid(1));
+        p.giveBack(fresh);
+    }
+
+    @Test
+    public void logsReadsThatHoldTheirConnection() throws Exception {
+        ReadPool p = pool(1, 1, 60_000, 0, -1, 10);
+        p.fill();
+        Sql sql = p.borrow();
+        Thread.sleep(30);
+        p.giveBack(sql);
+        assertEquals(1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).contains("held its database connection"));
+    }
+}
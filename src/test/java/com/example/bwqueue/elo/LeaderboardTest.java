@@ -0,0 +1,121 @@
+package com.example.bwqueue.elo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LeaderboardTest {
+
+    // Board order: rating descending, ties by UUID
+    private static final Comparator<Map.Entry<UUID, Integer>> ORDER = (a, b) -> {
+        int c = Integer.compare(b.getValue(), a.getValue());
+        return c != 0 ? c : a.getKey().compareTo(b.getKey());
+    };
+
+    private static List<Map.Entry<UUID, Integer>> sorted(Map<UUID, Integer> ratings) {
+        List<Map.Entry<UUID, Integer>> out = new ArrayList<>(ratings.entrySet());
+        Collections.sort(out, ORDER);
+        return out;
+    }
+
+    private static void assertMatches(Leaderboard board, Map<UUID, Integer> ratings, Random random) {
+        List<Map.Entry<UUID, Integer>> expected = sorted(ratings);
+        assertEquals(expected.size(), board.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("rank of " + i, i + 1, board.rank(expected.get(i).getKey()));
+        }
+        // Whole board, then a few random slices
+        assertRange(expected, board.range(1, expected.size() + 5), 1);
+        for (int k = 0; k < 5 && !expected.isEmpty(); k++) {
+            int from = 1 + random.nextInt(expected.size());
+            int n = 1 + random.nextInt(10);
+            assertRange(expected, board.range(from, n), from);
+        }
+        if (!expected.isEmpty()) {
+            UUID u = expected.get(random.nextInt(expected.size())).getKey();
+            int rank = board.rank(u);
+            int radius = random.nextInt(4);
+            int from = Math.max(1, rank - radius);
+            List<Leaderboard.Entry> around = board.around(u, radius);
+            assertRange(expected, around, from);
+            assertEquals(Math.min(expected.size(), rank + radius) - from + 1, around.size());
+        }
+    }
+
+    private static void assertRange(List<Map.Entry<UUID, Integer>> expected, List<Leaderboard.Entry> actual, int from) {
+        assertTrue(actual.size() <= Math.max(0, expected.size() - from + 1));
+        for (int i = 0; i < actual.size(); i++) {
+            Leaderboard.Entry e = actual.get(i);
+            Map.Entry<UUID, Integer> want = expected.get(from - 1 + i);
+            assertEquals(from + i, e.rank);
+            assertEquals(want.getKey(), e.uuid);
+            assertEquals((int) want.getValue(), e.rating);
+        }
+    }
+
+    @Test
+    public void matchesSortedListAfterRandomChanges() {
+        Random random = new Random(11);
+        Leaderboard board = new Leaderboard();
+        Map<UUID, Integer> ratings = new HashMap<>();
+        List<UUID> players = new ArrayList<>();
+        for (int i = 0; i < 300; i++) players.add(UUID.randomUUID());
+        for (int step = 0; step < 5000; step++) {
+            UUID u = players.get(random.nextInt(players.size()));
+            if (random.nextInt(5) == 0) {
+                board.remove(u);
+                ratings.remove(u);
+            } else {
+                // Narrow range, so many players share a rating
+                int rating = 1000 + random.nextInt(20);
+                board.update(u, rating);
+                ratings.put(u, rating);
+            }
+            if (step % 250 == 0) assertMatches(board, ratings, random);
+        }
+        assertMatches(board, ratings, random);
+    }
+
+    @Test
+    public void repeatedUpdatesOfOnePlayer() {
+        Leaderboard board = new Leaderboard();
+        Map<UUID, Integer> ratings = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20; i++) {
+            UUID u = UUID.randomUUID();
+            board.update(u, 100);
+            ratings.put(u, 100);
+        }
+        UUID mover = UUID.randomUUID();
+        for (int rating : new int[] {100, 100, 150, 50, 100, 100, 0, 200, 100}) {
+            board.update(mover, rating);
+            ratings.put(mover, rating);
+            assertMatches(board, ratings, random);
+        }
+    }
+
+    @Test
+    public void missingPlayers() {
+        Leaderboard board = new Leaderboard();
+        UUID u = UUID.randomUUID();
+        assertEquals(0, board.rank(u));
+        assertTrue(board.around(u, 3).isEmpty());
+        assertTrue(board.top(5).isEmpty());
+        board.update(u, 10);
+        board.remove(u);
+        board.remove(u);
+        assertEquals(0, board.size());
+        assertEquals(0, board.rank(u));
+        assertTrue(board.range(1, 5).isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.bwqueue.elo;
+
+import com.example.bwqueue.config.PluginConfig;
+import com.example.bwqueue.db.Database;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RatingStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private final Logger log = Logger.getLogger("test");
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+    private Database first;
+    private Database second;
+    private EloService elo;
+
+    @Before
+    public void setUp() throws Exception {
+        YamlConfiguration cfg = new YamlConfiguration();
+        cfg.set("storage.sqliteFile", tmp.newFile("bwqueue.db").getPath());
+        PluginConfig config = new PluginConfig(cfg);
+        elo = new EloService(cfg);
+        // Two servers sharing one database
+        first = new Database(config, log);
+        first.init();
+        second = new Database(config, log);
+        second.init();
+        first.writeAndWait(sql -> {
+            PreparedStatement ps = sql.prepare("INSERT INTO users(discord_id, uuid, name, elo) VALUES(?,?,?,?)");
+            int id = 1;
+            for (UUID u : new UUID[] {alice, bob}) {
+                ps.setString(1, String.valueOf(id++));
+                ps.setString(2, u.toString());
+                ps.setString(3, "p" + id);
+                ps.setInt(4, 100);
+                ps.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    public void settlementsOnTwoServersBothApply() throws Exception {
+        RatingStore a = new RatingStore(first, elo, log);
+        RatingStore b = new RatingStore(second, elo, log);
+        a.load();
+        b.load();
+
+        // Default tier: +10 a win, -5 a loss; b has not seen a's game when it settles its own
+        a.settle(1, Collections.singleton(alice), Collections.singleton(bob), null);
+        List<RatingStore.Change> changes = b.settle(2, Collections.singleton(alice), Collections.singleton(bob), null);
+
+        assertEquals(120, stored(alice));
+        assertEquals(90, stored(bob));
+        assertEquals(120, b.getRating(alice));
+        assertEquals(90, b.getRating(bob));
+        assertEquals(110, changes.get(0).before);
+        assertEquals(120, changes.get(0).after);
+    }
+
+    @Test
+    public void sessionIsSettledOnce() throws Exception {
+        RatingStore a = new RatingStore(first, elo, log);
+        RatingStore b = new RatingStore(second, elo, log);
+        a.load();
+        b.load();
+        assertEquals(2, a.settle(7, Collections.singleton(alice), Collections.singleton(bob), null).size());
+        assertTrue(b.settle(7, Collections.singleton(alice), Collections.singleton(bob), null).isEmpty());
+        assertEquals(110, stored(alice));
+    }
+
+    @Test
+    public void ratingDoesNotGoBelowZero() throws Exception {
+        first.writeAndWait(sql -> sql.prepare("UPDATE users SET elo=3").executeUpdate());
+        RatingStore a = new RatingStore(first, elo, log);
+        a.load();
+        List<RatingStore.Change> changes = a.settle(3, Collections.singleton(alice), Collections.singleton(bob), null);
+        assertEquals(0, stored(bob));
+        assertEquals(0, changes.get(1).after);
+        assertEquals(0, a.getRating(bob));
+    }
+
+    private int stored(UUID uuid) throws Exception {
+        return first.read(sql -> {
+            PreparedStatement ps = sql.prepare("SELECT elo FROM users WHERE uuid=?");
+            ps.setString(1, uuid.toString());
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        });
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.bwqueue.eventlog;
+
+import com.example.bwqueue.config.PluginConfig;
+import com.example.bwqueue.db.EventType;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentEventLogTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final String[] MATERIALS = {"IRON_INGOT", "GOLD_INGOT", "DIAMOND", "EMERALD", null};
+
+    private SegmentEventLog open(File root) {
+        YamlConfiguration cfg = new YamlConfiguration();
+        cfg.set("storage.events.segments.directory", root.getPath());
+        // The smallest segment, so the test rolls over a few times
+        cfg.set("storage.events.segments.segmentSizeKb", 64);
+        return new SegmentEventLog(new PluginConfig(cfg), Logger.getLogger("test"));
+    }
+
+    // A burst far faster than a game produces; lets the I/O thread catch up before the held events fill up
+    private static boolean record(SegmentEventLog log, long session, UUID player, String material, int amount, long ts) throws InterruptedException {
+        while (log.getPending() > 1000) Thread.sleep(1);
+        return log.record(session, EventType.PICKUP, player, null, material, amount, ts);
+    }
+
+    @Test
+    public void eventsSurviveRollsAndReopening() throws Exception {
+        File root = tmp.newFolder();
+        UUID player = UUID.randomUUID();
+        int events = 5000;
+        SegmentEventLog first = open(root);
+        for (int i = 0; i < events; i++) {
+            assertTrue(record(first, 7, player, MATERIALS[i % MATERIALS.length], i, 1000 + i));
+        }
+        first.shutdown();
+        // Sealed session appended to again by a later run
+        SegmentEventLog second = open(root);
+        for (int i = events; i < events + 10; i++) {
+            assertTrue(record(second, 7, player, MATERIALS[i % MATERIALS.length], i, 1000 + i));
+        }
+        second.shutdown();
+        assertEquals(0, first.getDropped() + first.getFailed() + second.getDropped() + second.getFailed());
+
+        int n = 0;
+        try (EventLogReader r = EventLogReader.open(root, 7)) {
+            while (r.next()) {
+                assertEquals(n, r.getAmount());
+                assertEquals(1000 + n, r.getTimestamp());
+                assertEquals(player, r.getPlayer());
+                assertEquals(MATERIALS[n % MATERIALS.length], r.getMaterial());
+                n++;
+            }
+        }
+        assertEquals(events + 10, n);
+        // Segments mapped ahead but never written are removed
+        for (int segment : SegmentFormat.segments(SegmentFormat.sessionDir(root, 7))) {
+            assertTrue(SegmentFormat.indexFile(SegmentFormat.sessionDir(root, 7), segment).isFile());
+        }
+    }
+
+    @Test
+    public void readerSkipsToTimestamp() throws Exception {
+        File root = tmp.newFolder();
+        SegmentEventLog log = open(root);
+        for (int i = 0; i < 4000; i++) assertTrue(record(log, 3, null, null, i, i));
+        log.shutdown();
+        try (EventLogReader r = EventLogReader.open(root, 3).from(3500)) {
+            assertTrue(r.next());
+            assertEquals(3500, r.getTimestamp());
+        }
+        try (EventLogReader r = EventLogReader.open(root, 3).from(10000)) {
+            assertFalse(r.next());
+        }
+    }
+
+    @Test
+    public void shortSessionMapsOnlyOneSegment() throws Exception {
+        File root = tmp.newFolder();
+        SegmentEventLog log = open(root);
+        for (int i = 0; i < 100; i++) assertTrue(record(log, 5, null, null, i, i));
+        log.shutdown();
+        assertArrayEquals(new int[] {0}, SegmentFormat.segments(SegmentFormat.sessionDir(root, 5)));
+    }
+
+    @Test
+    public void reusesAnUnusedSegmentLeftBehind() throws Exception {
+        File root = tmp.newFolder();
+        File dir = SegmentFormat.sessionDir(root, 9);
+        assertTrue(dir.mkdirs());
+        // What a discard that could not delete its file leaves: a header, no records, no index
+        try (RandomAccessFile f = new RandomAccessFile(SegmentFormat.segmentFile(dir, 0), "rw")) {
+            f.setLength(64 * 1024);
+            f.writeInt(SegmentFormat.MAGIC);
+        }
+        SegmentEventLog log = open(root);
+        for (int i = 0; i < 10; i++) assertTrue(record(log, 9, null, null, i, i));
+        log.shutdown();
+        assertArrayEquals(new int[] {0}, SegmentFormat.segments(dir));
+        int n = 0;
+        try (EventLogReader r = EventLogReader.open(root, 9)) {
+            while (r.next()) assertEquals(n++, r.getAmount());
+        }
+        assertEquals(10, n);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.bwqueue.link;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpiryWheelTest {
+
+    private static final long TICK = 1000L;
+
+    // Turns the wheel in small steps and returns when the item came out, or -1
+    private static long expiryTime(ExpiryWheel<String> wheel, long from, long until) {
+        List<String> out = new ArrayList<>();
+        for (long now = from; now <= until; now += 10) {
+            wheel.advance(now, out::add);
+            if (!out.isEmpty()) return now;
+        }
+        return -1;
+    }
+
+    @Test
+    public void expiresWithinOneTickOfDeadline() {
+        int window = 10;
+        // Scheduled part-way through a tick, with a deadline part-way through another
+        for (long offset = 0; offset < TICK; offset += 125) {
+            long start = 1_000_000L + offset;
+            ExpiryWheel<String> wheel = new ExpiryWheel<>(TICK, window + 1, start);
+            long deadline = start + window * TICK + 333;
+            wheel.schedule("a", deadline);
+            long expired = expiryTime(wheel, start, deadline + 3 * window * TICK);
+            assertTrue("expired at " + expired + ", deadline " + deadline, expired >= deadline);
+            assertTrue("expired at " + expired + ", deadline " + deadline, expired < deadline + TICK);
+            assertEquals(0, wheel.size());
+        }
+    }
+
+    @Test
+    public void deadlineOnTickBoundaryIsNotLate() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(TICK, 11, 5_500L);
+        wheel.schedule("a", 9_000L);
+        assertEquals(9_000L, expiryTime(wheel, 5_500L, 40_000L));
+    }
+
+    @Test
+    public void itemsBeyondOneTurnGoRoundAgain() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(TICK, 4, 0L);
+        wheel.schedule("a", 9_500L);
+        long expired = expiryTime(wheel, 0L, 30_000L);
+        assertTrue(expired >= 9_500L && expired < 9_500L + TICK);
+    }
+
+    @Test
+    public void pastDeadlineExpiresOnNextTick() {
+        ExpiryWheel<String> wheel = new ExpiryWheel<>(TICK, 11, 5_500L);
+        wheel.schedule("a", 1_000L);
+        assertEquals(6_000L, expiryTime(wheel, 5_500L, 40_000L));
+    }
+}
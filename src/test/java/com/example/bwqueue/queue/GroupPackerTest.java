@@ -0,0 +1,112 @@
+package com.example.bwqueue.queue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GroupPackerTest {
+
+    // Groups are their index into sizes, so equal sizes stay distinguishable
+    private static GroupPacker.Packing<Integer> pack(int teamSize, int... sizes) {
+        List<Integer> groups = new ArrayList<>();
+        for (int i = 0; i < sizes.length; i++) groups.add(i);
+        return GroupPacker.pack(groups, i -> sizes[i], teamSize);
+    }
+
+    private static void assertFull(GroupPacker.Packing<Integer> p, int teamSize, int... sizes) {
+        assertNotNull("no packing for " + Arrays.toString(sizes), p);
+        assertEquals(teamSize, players(p.red, sizes));
+        assertEquals(teamSize, players(p.green, sizes));
+        Set<Integer> seen = new HashSet<>();
+        for (Integer g : p.all()) assertTrue("group " + g + " used twice", seen.add(g));
+    }
+
+    private static int players(List<Integer> team, int[] sizes) {
+        int n = 0;
+        for (int g : team) n += sizes[g];
+        return n;
+    }
+
+    @Test
+    public void solosFirstThenPairs() {
+        // Best-fit put both solos on one team and left a pair with nowhere to go
+        int[] sizes = {1, 1, 2, 2};
+        assertFull(pack(3, sizes), 3, sizes);
+    }
+
+    @Test
+    public void mixedParties() {
+        int[][] cases = {
+                {2, 1, 1, 3, 1},
+                {1, 3, 1, 2, 1},
+                {2, 2, 2, 1, 1},
+                {3, 1, 2, 2, 1, 1},
+                {1, 1, 1, 1, 2, 2},
+        };
+        for (int[] sizes : cases) assertFull(pack(4, sizes), 4, sizes);
+    }
+
+    @Test
+    public void noFillReturnsNull() {
+        assertNull(pack(3, 2, 2, 2));
+        assertNull(pack(4, 3, 3, 3, 3));
+        assertNull(pack(2, 1, 1, 1));
+        assertNull(pack(2, 3, 3, 1));
+    }
+
+    @Test
+    public void stopsAtTheFirstGroupThatCompletesAFill() {
+        // The trailing solos are not needed once the pairs fill both teams
+        int[] sizes = {2, 2, 2, 2, 1, 1};
+        GroupPacker.Packing<Integer> p = pack(4, sizes);
+        assertFull(p, 4, sizes);
+        assertTrue(p.all().containsAll(Arrays.asList(0, 1, 2, 3)));
+        assertEquals(4, p.all().size());
+    }
+
+    @Test
+    public void oversizedGroupsAreSkipped() {
+        int[] sizes = {3, 1, 1, 1, 1};
+        assertFull(pack(2, sizes), 2, sizes);
+        assertFalse(pack(2, sizes).all().contains(0));
+    }
+
+    @Test
+    public void findsAFillWheneverOneExists() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2000; round++) {
+            int teamSize = 1 + random.nextInt(6);
+            int[] sizes = new int[1 + random.nextInt(9)];
+            for (int i = 0; i < sizes.length; i++) sizes[i] = 1 + random.nextInt(teamSize);
+            GroupPacker.Packing<Integer> p = pack(teamSize, sizes);
+            if (fillExists(sizes, teamSize)) assertFull(p, teamSize, sizes);
+            else assertNull(p);
+        }
+    }
+
+    // Every assignment of each group to Red, Green or neither
+    private static boolean fillExists(int[] sizes, int teamSize) {
+        int states = 1;
+        for (int i = 0; i < sizes.length; i++) states *= 3;
+        for (int s = 0; s < states; s++) {
+            int red = 0, green = 0;
+            for (int i = 0, x = s; i < sizes.length; i++, x /= 3) {
+                if (x % 3 == 1) red += sizes[i];
+                else if (x % 3 == 2) green += sizes[i];
+            }
+            if (red == teamSize && green == teamSize) return true;
+        }
+        return false;
+    }
+}
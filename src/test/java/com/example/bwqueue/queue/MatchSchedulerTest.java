@@ -0,0 +1,59 @@
+package com.example.bwqueue.queue;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MatchSchedulerTest {
+
+    private final ScheduledExecutorService pool = Executors.newScheduledThreadPool(2);
+    private final Logger log = Logger.getLogger("test");
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void signalDuringFailingPassStillGetsAPass() throws Exception {
+        log.setLevel(Level.OFF);
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch secondRan = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        MatchScheduler scheduler = new MatchScheduler("test", () -> {
+            if (calls.incrementAndGet() == 1) {
+                firstStarted.countDown();
+                try {
+                    releaseFirst.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("pass failed");
+            }
+            secondRan.countDown();
+            return false;
+        }, 0L, log, pool);
+
+        scheduler.signal(MatchScheduler.Trigger.ENQUEUE);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        // Lands on the other pool thread while the first pass is still running
+        scheduler.signal(MatchScheduler.Trigger.ENQUEUE);
+        Thread.sleep(100);
+        assertEquals(1, calls.get());
+        releaseFirst.countDown();
+
+        assertTrue(secondRan.await(5, TimeUnit.SECONDS));
+        assertEquals(2, scheduler.getPasses());
+    }
+}